@@ -1,5 +1,9 @@
 package com.pharmacy;
 
+import com.pharmacy.dao.BillJournal;
+import com.pharmacy.dao.DictionaryCache;
+import com.pharmacy.dao.ProductCatalogCache;
+import com.pharmacy.dao.ProductNameIndex;
 import com.pharmacy.dao.SettingsDAO;
 import com.pharmacy.gui.MainWindow;
 import com.pharmacy.gui.ThemeManager;
@@ -11,6 +15,17 @@ public class PharmacyManagementSystem {
         // Apply persisted theme before creating any UI
         SettingsDAO settingsDAO = new SettingsDAO();
         ThemeManager.applyTheme(settingsDAO.getUiTheme());
+
+        // Warm the product cache and name index in the background so billing lookups stay in memory
+        Thread warmup = new Thread(() -> {
+            // Bills journaled but not yet recorded when the app last stopped are replayed first
+            BillJournal.getInstance().start();
+            ProductCatalogCache.getInstance().warm();
+            ProductNameIndex.getInstance().rebuild();
+            DictionaryCache.getInstance().reload();
+        }, "catalog-warmup");
+        warmup.setDaemon(true);
+        warmup.start();
         
         SwingUtilities.invokeLater(() -> {
             new MainWindow().setVisible(true);
@@ -0,0 +1,97 @@
+package com.pharmacy.analytics;
+
+import java.time.LocalDate;
+
+/**
+ * A sales breakdown: one grouping plus optional filters. Unset dates mean "from the first
+ * sale" / "to the last sale".
+ */
+public final class ReportQuery {
+    public enum GroupBy {
+        DAY("Day"),
+        MONTH("Month"),
+        PRODUCT("Product"),
+        COMPANY("Company"),
+        DISTRIBUTOR("Distributor");
+
+        private final String label;
+
+        GroupBy(String label) {
+            this.label = label;
+        }
+
+        public boolean isTime() {
+            return this == DAY || this == MONTH;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    private final GroupBy groupBy;
+    private LocalDate from;
+    private LocalDate to;
+    private int productSerial;
+    private String company;
+    private String distributor;
+
+    public ReportQuery(GroupBy groupBy) {
+        this.groupBy = groupBy;
+    }
+
+    public ReportQuery between(LocalDate from, LocalDate to) {
+        this.from = from;
+        this.to = to;
+        return this;
+    }
+
+    /**
+     * Only sales of this product; 0 for all products.
+     */
+    public ReportQuery forProduct(int productSerial) {
+        this.productSerial = productSerial;
+        return this;
+    }
+
+    /**
+     * Only products of this company; null for all.
+     */
+    public ReportQuery forCompany(String company) {
+        this.company = company;
+        return this;
+    }
+
+    /**
+     * Only products of this distributor; null for all.
+     */
+    public ReportQuery forDistributor(String distributor) {
+        this.distributor = distributor;
+        return this;
+    }
+
+    public GroupBy getGroupBy() {
+        return groupBy;
+    }
+
+    public LocalDate getFrom() {
+        return from;
+    }
+
+    public LocalDate getTo() {
+        return to;
+    }
+
+    public int getProductSerial() {
+        return productSerial;
+    }
+
+    public String getCompany() {
+        return company;
+    }
+
+    public String getDistributor() {
+        return distributor;
+    }
+}
@@ -0,0 +1,43 @@
+package com.pharmacy.analytics;
+
+/**
+ * One group of a {@link ReportQuery} result.
+ */
+public final class ReportRow {
+    private final String label;
+    private final int productSerial;
+    private final long quantity;
+    private final double amount;
+    private final int lineCount;
+
+    ReportRow(String label, int productSerial, long quantity, double amount, int lineCount) {
+        this.label = label;
+        this.productSerial = productSerial;
+        this.quantity = quantity;
+        this.amount = amount;
+        this.lineCount = lineCount;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * @return the product's serial when grouped by product, otherwise 0
+     */
+    public int getProductSerial() {
+        return productSerial;
+    }
+
+    public long getQuantity() {
+        return quantity;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+
+    public int getLineCount() {
+        return lineCount;
+    }
+}
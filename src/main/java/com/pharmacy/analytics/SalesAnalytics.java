@@ -0,0 +1,298 @@
+package com.pharmacy.analytics;
+
+import com.pharmacy.dao.ProductDAO;
+import com.pharmacy.dao.SaleDAO;
+import com.pharmacy.model.Product;
+import com.pharmacy.util.DateUtil;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Revenue and unit breakdowns over a {@link SalesSnapshot}.
+ *
+ * {@link #refresh()} appends sales recorded since the last snapshot (by sale id) and applies
+ * product edits from the product change feed, then publishes a new snapshot; queries on an
+ * older snapshot are unaffected. A query is one pass over the columns, split across the
+ * common fork-join pool; each part sums into dense per-group arrays that are then added up.
+ *
+ * Company and distributor are the product's current values, not the ones at sale time.
+ */
+public final class SalesAnalytics {
+    private static final SalesAnalytics INSTANCE = new SalesAnalytics();
+    private static final DateTimeFormatter MONTH_FORMATTER = DateTimeFormatter.ofPattern("MMM uuuu");
+    // Below this many lines a part is summed without splitting further
+    private static final int MIN_SPLIT = 1 << 15;
+
+    private SalesColumns columns = new SalesColumns();
+    private volatile SalesSnapshot snapshot = new SalesSnapshot(columns);
+
+    private SalesAnalytics() {
+    }
+
+    public static SalesAnalytics getInstance() {
+        return INSTANCE;
+    }
+
+    public SalesSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Brings the snapshot up to date. Reads only sales newer than the current snapshot and
+     * products changed since it was taken.
+     */
+    public synchronized SalesSnapshot refresh() {
+        ProductDAO productDAO = new ProductDAO();
+        SalesColumns c = columns;
+        if (c.productVersion < 0) {
+            // Products are read as they are first sold; later edits come from the feed
+            c.productVersion = productDAO.getChangeVersion();
+        } else {
+            ProductDAO.ChangeSet changes = productDAO.getProductsChangedSince(c.productVersion);
+            for (Product p : changes.getChanged()) {
+                int code = c.productCode(p.getSerial());
+                if (code >= 0) c.updateProduct(code, p.getName(), p.getCompany(), p.getDistributor());
+            }
+            c.productVersion = Math.max(c.productVersion, changes.getVersion());
+        }
+
+        String[] lastDate = {null};
+        int[] lastDay = {0};
+        int firstNewProduct = c.productCount;
+        new SaleDAO().forEachSaleSince(c.lastSaleId, (id, saleDate, serial, name, quantity, amount) -> {
+            // Consecutive sales mostly share a date; parse each distinct run once
+            if (!saleDate.equals(lastDate[0])) {
+                lastDate[0] = saleDate;
+                lastDay[0] = (int) LocalDate.parse(saleDate).toEpochDay();
+            }
+            int code = c.productCode(serial);
+            if (code < 0) code = c.addProduct(serial, name, null, null);
+            c.addSale(id, lastDay[0], code, quantity, amount);
+        });
+        // Attributes of newly sold products are looked up after the scan has released its connection
+        for (int code = firstNewProduct; code < c.productCount; code++) {
+            Product p = productDAO.getProductBySerial(c.productSerials[code]);
+            if (p != null) c.updateProduct(code, p.getName(), p.getCompany(), p.getDistributor());
+        }
+
+        snapshot = new SalesSnapshot(c);
+        return snapshot;
+    }
+
+    /**
+     * Drops the snapshot and reloads every sale.
+     */
+    public synchronized SalesSnapshot rebuild() {
+        columns = new SalesColumns();
+        return refresh();
+    }
+
+    /**
+     * Runs {@code query} on the current snapshot. Time groupings come back in date order,
+     * the others by amount, highest first.
+     */
+    public List<ReportRow> query(ReportQuery query) {
+        return query(snapshot, query);
+    }
+
+    public static List<ReportRow> query(SalesSnapshot s, ReportQuery query) {
+        List<ReportRow> rows = new ArrayList<>();
+        if (s.size == 0) return rows;
+        int fromDay = query.getFrom() == null ? s.minDay : Math.max(s.minDay, (int) query.getFrom().toEpochDay());
+        int toDay = query.getTo() == null ? s.maxDay : Math.min(s.maxDay, (int) query.getTo().toEpochDay());
+        if (fromDay > toDay) return rows;
+
+        ReportQuery.GroupBy groupBy = query.getGroupBy();
+        int[] productGroups = productGroups(s, query);
+        if (productGroups == null) return rows;
+        int[] dayGroups = null;
+        int groupCount;
+        if (groupBy == ReportQuery.GroupBy.DAY) {
+            dayGroups = new int[toDay - fromDay + 1];
+            for (int d = 0; d < dayGroups.length; d++) dayGroups[d] = d;
+            groupCount = dayGroups.length;
+        } else if (groupBy == ReportQuery.GroupBy.MONTH) {
+            dayGroups = new int[toDay - fromDay + 1];
+            int firstMonth = monthIndex(fromDay);
+            for (int d = 0; d < dayGroups.length; d++) dayGroups[d] = monthIndex(fromDay + d) - firstMonth;
+            groupCount = dayGroups[dayGroups.length - 1] + 1;
+        } else {
+            groupCount = switch (groupBy) {
+                case PRODUCT -> s.productCount;
+                case COMPANY -> s.companyCount;
+                default -> s.distributorCount;
+            };
+        }
+
+        Scan scan = new Scan(s, fromDay, toDay, productGroups, dayGroups, groupCount);
+        int parts = ForkJoinPool.getCommonPoolParallelism() * 4;
+        int threshold = Math.max(MIN_SPLIT, s.size / Math.max(1, parts));
+        Partial totals = ForkJoinPool.commonPool().invoke(new ScanTask(scan, 0, s.size, threshold));
+
+        for (int g = 0; g < groupCount; g++) {
+            if (totals.lines[g] == 0) continue;
+            rows.add(new ReportRow(label(s, groupBy, g, fromDay),
+                    groupBy == ReportQuery.GroupBy.PRODUCT ? s.productSerials[g] : 0,
+                    totals.quantities[g], totals.amounts[g], totals.lines[g]));
+        }
+        if (!groupBy.isTime()) {
+            rows.sort(Comparator.comparingDouble(ReportRow::getAmount).reversed());
+        }
+        return rows;
+    }
+
+    /**
+     * Group of each product code, with the product/company/distributor filters applied:
+     * -1 excludes the product. For time groupings an included product maps to 0.
+     *
+     * @return null if a filter matches nothing
+     */
+    private static int[] productGroups(SalesSnapshot s, ReportQuery query) {
+        int onlyProduct = -1;
+        if (query.getProductSerial() != 0) {
+            onlyProduct = s.productCode(query.getProductSerial());
+            if (onlyProduct < 0) return null;
+        }
+        int onlyCompany = -1;
+        if (query.getCompany() != null) {
+            onlyCompany = SalesSnapshot.find(s.companies, s.companyCount, query.getCompany());
+            if (onlyCompany < 0) return null;
+        }
+        int onlyDistributor = -1;
+        if (query.getDistributor() != null) {
+            onlyDistributor = SalesSnapshot.find(s.distributors, s.distributorCount, query.getDistributor());
+            if (onlyDistributor < 0) return null;
+        }
+
+        int[] groups = new int[s.productCount];
+        for (int code = 0; code < s.productCount; code++) {
+            boolean included = (onlyProduct < 0 || code == onlyProduct)
+                    && (onlyCompany < 0 || s.productCompanies[code] == onlyCompany)
+                    && (onlyDistributor < 0 || s.productDistributors[code] == onlyDistributor);
+            if (!included) {
+                groups[code] = -1;
+                continue;
+            }
+            groups[code] = switch (query.getGroupBy()) {
+                case PRODUCT -> code;
+                case COMPANY -> s.productCompanies[code];
+                case DISTRIBUTOR -> s.productDistributors[code];
+                default -> 0;
+            };
+        }
+        return groups;
+    }
+
+    private static int monthIndex(int epochDay) {
+        LocalDate date = LocalDate.ofEpochDay(epochDay);
+        return date.getYear() * 12 + date.getMonthValue() - 1;
+    }
+
+    private static String label(SalesSnapshot s, ReportQuery.GroupBy groupBy, int group, int fromDay) {
+        return switch (groupBy) {
+            case DAY -> DateUtil.formatDate(LocalDate.ofEpochDay(fromDay + group));
+            case MONTH -> YearMonth.from(LocalDate.ofEpochDay(fromDay)).plusMonths(group).format(MONTH_FORMATTER);
+            case PRODUCT -> s.productNames[group];
+            case COMPANY -> group == 0 ? "(none)" : s.companies[group];
+            case DISTRIBUTOR -> group == 0 ? "(none)" : s.distributors[group];
+        };
+    }
+
+    /**
+     * What one query reads; shared by all parts of the scan.
+     */
+    private static final class Scan {
+        final SalesSnapshot s;
+        final int fromDay;
+        final int toDay;
+        final int[] productGroups;
+        final int[] dayGroups;
+        final int groupCount;
+
+        Scan(SalesSnapshot s, int fromDay, int toDay, int[] productGroups, int[] dayGroups, int groupCount) {
+            this.s = s;
+            this.fromDay = fromDay;
+            this.toDay = toDay;
+            this.productGroups = productGroups;
+            this.dayGroups = dayGroups;
+            this.groupCount = groupCount;
+        }
+    }
+
+    private static final class Partial {
+        final long[] quantities;
+        final double[] amounts;
+        final int[] lines;
+
+        Partial(int groupCount) {
+            quantities = new long[groupCount];
+            amounts = new double[groupCount];
+            lines = new int[groupCount];
+        }
+
+        Partial add(Partial other) {
+            for (int g = 0; g < lines.length; g++) {
+                quantities[g] += other.quantities[g];
+                amounts[g] += other.amounts[g];
+                lines[g] += other.lines[g];
+            }
+            return this;
+        }
+    }
+
+    private static final class ScanTask extends RecursiveTask<Partial> {
+        private final Scan scan;
+        private final int from;
+        private final int to;
+        private final int threshold;
+
+        ScanTask(Scan scan, int from, int to, int threshold) {
+            this.scan = scan;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected Partial compute() {
+            if (to - from <= threshold) return sum();
+            int mid = (from + to) >>> 1;
+            ScanTask left = new ScanTask(scan, from, mid, threshold);
+            left.fork();
+            Partial right = new ScanTask(scan, mid, to, threshold).compute();
+            return left.join().add(right);
+        }
+
+        private Partial sum() {
+            SalesSnapshot s = scan.s;
+            int[] days = s.days;
+            int[] products = s.products;
+            int[] quantities = s.quantities;
+            double[] amounts = s.amounts;
+            int[] productGroups = scan.productGroups;
+            int[] dayGroups = scan.dayGroups;
+            int fromDay = scan.fromDay;
+            int span = scan.toDay - fromDay;
+
+            Partial p = new Partial(scan.groupCount);
+            for (int i = from; i < to; i++) {
+                int d = days[i] - fromDay;
+                if (d < 0 || d > span) continue;
+                int group = productGroups[products[i]];
+                if (group < 0) continue;
+                if (dayGroups != null) group = dayGroups[d];
+                p.quantities[group] += quantities[i];
+                p.amounts[group] += amounts[i];
+                p.lines[group]++;
+            }
+            return p;
+        }
+    }
+}
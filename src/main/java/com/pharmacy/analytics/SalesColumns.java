@@ -0,0 +1,109 @@
+package com.pharmacy.analytics;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Growable columns behind {@link SalesSnapshot}. Only {@link SalesAnalytics} writes here,
+ * under its lock.
+ *
+ * Sale columns and dictionaries are append-only: a snapshot keeps the arrays it was built
+ * from and reads only its own prefix, and growing reallocates, so later appends never
+ * touch what a snapshot can see. Product attributes can change, so snapshots copy them.
+ */
+final class SalesColumns {
+    int size;
+    int[] saleIds = new int[1024];
+    int[] days = new int[1024];
+    int[] products = new int[1024];
+    int[] quantities = new int[1024];
+    double[] amounts = new double[1024];
+    int minDay = Integer.MAX_VALUE;
+    int maxDay = Integer.MIN_VALUE;
+    int lastSaleId;
+    long productVersion = -1;
+
+    // Product dimension, indexed by product code (dense, in order of first sale)
+    int productCount;
+    int[] productSerials = new int[64];
+    String[] productNames = new String[64];
+    int[] productCompanies = new int[64];
+    int[] productDistributors = new int[64];
+    private final Map<Integer, Integer> productCodes = new HashMap<>();
+
+    final Dictionary companies = new Dictionary();
+    final Dictionary distributors = new Dictionary();
+
+    void addSale(int id, int day, int productCode, int quantity, double amount) {
+        if (size == saleIds.length) {
+            int capacity = size * 2;
+            saleIds = Arrays.copyOf(saleIds, capacity);
+            days = Arrays.copyOf(days, capacity);
+            products = Arrays.copyOf(products, capacity);
+            quantities = Arrays.copyOf(quantities, capacity);
+            amounts = Arrays.copyOf(amounts, capacity);
+        }
+        saleIds[size] = id;
+        days[size] = day;
+        products[size] = productCode;
+        quantities[size] = quantity;
+        amounts[size] = amount;
+        size++;
+        minDay = Math.min(minDay, day);
+        maxDay = Math.max(maxDay, day);
+        lastSaleId = Math.max(lastSaleId, id);
+    }
+
+    /**
+     * @return the code of {@code serial}, or -1 if it has not been sold yet
+     */
+    int productCode(int serial) {
+        Integer code = productCodes.get(serial);
+        return code == null ? -1 : code;
+    }
+
+    int addProduct(int serial, String name, String company, String distributor) {
+        if (productCount == productSerials.length) {
+            int capacity = productCount * 2;
+            productSerials = Arrays.copyOf(productSerials, capacity);
+            productNames = Arrays.copyOf(productNames, capacity);
+            productCompanies = Arrays.copyOf(productCompanies, capacity);
+            productDistributors = Arrays.copyOf(productDistributors, capacity);
+        }
+        int code = productCount++;
+        productSerials[code] = serial;
+        productCodes.put(serial, code);
+        updateProduct(code, name, company, distributor);
+        return code;
+    }
+
+    void updateProduct(int code, String name, String company, String distributor) {
+        productNames[code] = name;
+        productCompanies[code] = companies.code(company);
+        productDistributors[code] = distributors.code(distributor);
+    }
+
+    /**
+     * Append-only string dictionary. Code 0 is the empty value (no company/distributor).
+     */
+    static final class Dictionary {
+        String[] values = {""};
+        int count = 1;
+        private final Map<String, Integer> codes = new HashMap<>();
+
+        Dictionary() {
+            codes.put("", 0);
+        }
+
+        int code(String value) {
+            String key = value == null ? "" : value.trim();
+            Integer code = codes.get(key);
+            if (code != null) return code;
+            if (count == values.length) values = Arrays.copyOf(values, count * 2);
+            values[count] = key;
+            codes.put(key, count);
+            return count++;
+        }
+    }
+}
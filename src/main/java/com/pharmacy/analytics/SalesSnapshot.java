@@ -0,0 +1,122 @@
+package com.pharmacy.analytics;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable, column-oriented copy of the sales history joined with product attributes.
+ *
+ * Every sale line is a position in parallel primitive arrays (id, epoch day, product code,
+ * quantity, amount). Products are dictionary-encoded: a sale stores a dense product code,
+ * and the product's serial, name, company and distributor live in per-code arrays, with
+ * company and distributor names encoded again as codes. Group-by and filter queries scan
+ * these arrays instead of {@code Sale} objects; see {@link SalesAnalytics#query}.
+ */
+public final class SalesSnapshot {
+    final int size;
+    final int[] saleIds;
+    final int[] days;
+    final int[] products;
+    final int[] quantities;
+    final double[] amounts;
+    final int minDay;
+    final int maxDay;
+    final int lastSaleId;
+
+    final int productCount;
+    final int[] productSerials;
+    final String[] productNames;
+    final int[] productCompanies;
+    final int[] productDistributors;
+
+    final String[] companies;
+    final int companyCount;
+    final String[] distributors;
+    final int distributorCount;
+
+    SalesSnapshot(SalesColumns columns) {
+        size = columns.size;
+        saleIds = columns.saleIds;
+        days = columns.days;
+        products = columns.products;
+        quantities = columns.quantities;
+        amounts = columns.amounts;
+        minDay = columns.minDay;
+        maxDay = columns.maxDay;
+        lastSaleId = columns.lastSaleId;
+
+        productCount = columns.productCount;
+        productSerials = Arrays.copyOf(columns.productSerials, productCount);
+        productNames = Arrays.copyOf(columns.productNames, productCount);
+        productCompanies = Arrays.copyOf(columns.productCompanies, productCount);
+        productDistributors = Arrays.copyOf(columns.productDistributors, productCount);
+
+        companies = columns.companies.values;
+        companyCount = columns.companies.count;
+        distributors = columns.distributors.values;
+        distributorCount = columns.distributors.count;
+    }
+
+    /**
+     * @return number of sale lines
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Highest sale id included; the next refresh reads from here.
+     */
+    public int getLastSaleId() {
+        return lastSaleId;
+    }
+
+    /**
+     * @return the earliest sale date, or null if there are no sales
+     */
+    public LocalDate getFirstDate() {
+        return size == 0 ? null : LocalDate.ofEpochDay(minDay);
+    }
+
+    /**
+     * @return the latest sale date, or null if there are no sales
+     */
+    public LocalDate getLastDate() {
+        return size == 0 ? null : LocalDate.ofEpochDay(maxDay);
+    }
+
+    /**
+     * Companies of the products sold, in first-seen order.
+     */
+    public List<String> getCompanies() {
+        return names(companies, companyCount);
+    }
+
+    public List<String> getDistributors() {
+        return names(distributors, distributorCount);
+    }
+
+    int productCode(int serial) {
+        for (int code = 0; code < productCount; code++) {
+            if (productSerials[code] == serial) return code;
+        }
+        return -1;
+    }
+
+    static int find(String[] values, int count, String value) {
+        String key = value == null ? "" : value.trim();
+        for (int code = 0; code < count; code++) {
+            if (values[code].equals(key)) return code;
+        }
+        return -1;
+    }
+
+    private static List<String> names(String[] values, int count) {
+        List<String> names = new ArrayList<>(count - 1);
+        // Code 0 is the empty name
+        for (int code = 1; code < count; code++) names.add(values[code]);
+        return names;
+    }
+}
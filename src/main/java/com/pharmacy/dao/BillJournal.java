@@ -0,0 +1,625 @@
+package com.pharmacy.dao;
+
+import com.pharmacy.database.DatabaseManager;
+import com.pharmacy.model.Sale;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Write-behind journal for bills, so billing never waits on SQLite.
+ *
+ * {@link #submit} acknowledges a bill once it is on disk in the journal; a background
+ * applier then records it through {@link SaleDAO}. The journal is a directory of
+ * memory-mapped segment files next to the database. Every record carries its length, a
+ * CRC32 and a sequence number; bills that arrive while a flush is in progress are written
+ * together and made durable with one force().
+ *
+ * Each entry is applied at most once: its sequence number goes into {@code bill_journal}
+ * in the same transaction as the bill, and numbers already there are skipped. When a batch
+ * fails, its entries are retried one by one; an entry that keeps failing with the same
+ * error while the database is otherwise writable is recorded there as rejected, so it
+ * cannot hold back the bills behind it. On start the
+ * segments are scanned, a torn tail is cut off and every entry after the last applied one
+ * is replayed. A segment is deleted once all of its entries are applied.
+ *
+ * If the journal cannot be opened (another instance holds it, or the disk refuses), bills
+ * are recorded directly with {@link SaleDAO#recordBillAsync}.
+ */
+public final class BillJournal {
+    private static final BillJournal INSTANCE = new BillJournal();
+
+    private static final int MAGIC = 0x50424A31; // "PBJ1"
+    private static final int VERSION = 1;
+    // Magic, version, first sequence number
+    private static final int HEADER_SIZE = 16;
+    // Payload length and CRC32 ahead of every record; a zero length marks the end
+    private static final int FRAME_HEADER = 8;
+    private static final int SEGMENT_SIZE = Integer.getInteger("pharmacy.journal.segmentSize", 4 << 20);
+    private static final int MAX_APPEND_BATCH = 256;
+    private static final int APPLY_BATCH = 64;
+    private static final long MAX_RETRY_MILLIS = 5_000;
+    private static final int MAX_SAME_FAILURES = 3;
+
+    /**
+     * A submitted bill: first durable, then applied.
+     */
+    public static final class Ticket {
+        private final CompletableFuture<Long> durable;
+        private final CompletableFuture<SaleDAO.BillRecordResult> applied;
+
+        private Ticket(CompletableFuture<Long> durable, CompletableFuture<SaleDAO.BillRecordResult> applied) {
+            this.durable = durable;
+            this.applied = applied;
+        }
+
+        /**
+         * Completes with the journal sequence number once the bill cannot be lost (0 when it
+         * was recorded directly). Fails if the bill was not taken.
+         */
+        public CompletableFuture<Long> whenDurable() {
+            return durable;
+        }
+
+        /**
+         * Completes once the bill is in the database, or was rejected there (e.g. stock
+         * ran out in the meantime).
+         */
+        public CompletableFuture<SaleDAO.BillRecordResult> whenApplied() {
+            return applied;
+        }
+    }
+
+    private static final class Entry {
+        final LocalDate saleDate;
+        final List<Sale> lines;
+        final CompletableFuture<Long> durable = new CompletableFuture<>();
+        final CompletableFuture<SaleDAO.BillRecordResult> applied = new CompletableFuture<>();
+        long seq;
+
+        Entry(LocalDate saleDate, List<Sale> lines) {
+            this.saleDate = saleDate;
+            this.lines = lines;
+        }
+    }
+
+    private final SaleDAO saleDAO = new SaleDAO();
+    private final BlockingQueue<Entry> toWrite = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Entry> toApply = new LinkedBlockingQueue<>();
+    // Units in bills taken but not applied yet, per product serial
+    private final Map<Integer, Integer> pendingQuantities = new ConcurrentHashMap<>();
+    // Full segments, oldest first: the writer thread adds, the applier deletes
+    private final Deque<Segment> sealed = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger pendingBills = new AtomicInteger();
+
+    private Path dir;
+    // Held open for the life of the process; its lock keeps a second instance out
+    private FileChannel lockChannel;
+    // Owned by the writer thread once started
+    private Segment active;
+    private long nextSeq;
+    private boolean started;
+    private volatile boolean available;
+
+    private BillJournal() {
+    }
+
+    public static BillJournal getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Opens the journal and replays whatever was not applied before the last shutdown or
+     * crash. Runs once; later calls return at once.
+     */
+    public synchronized void start() {
+        if (started) return;
+        started = true;
+        List<Entry> replay;
+        try {
+            replay = open();
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Bill journal unavailable, recording bills directly: " + e.getMessage());
+            e.printStackTrace();
+            return;
+        }
+        for (Entry e : replay) reserve(e);
+        toApply.addAll(replay);
+        available = true;
+        startThread(this::writeLoop, "bill-journal");
+        startThread(this::applyLoop, "bill-journal-applier");
+    }
+
+    /**
+     * Takes a bill. Lines for the same product are merged when the bill is applied.
+     */
+    public Ticket submit(LocalDate saleDate, List<Sale> salesLines) {
+        start();
+        if (salesLines == null || salesLines.isEmpty()) {
+            return new Ticket(CompletableFuture.failedFuture(new IllegalArgumentException("Bill is empty.")),
+                    CompletableFuture.completedFuture(SaleDAO.BillRecordResult.error("Bill is empty.")));
+        }
+        if (!available) {
+            CompletableFuture<SaleDAO.BillRecordResult> applied = saleDAO.recordBillAsync(saleDate, salesLines);
+            // Recorded directly: durable when committed, and a rejected bill was not taken
+            return new Ticket(applied.thenCompose(r -> r.isSuccess()
+                    ? CompletableFuture.completedFuture(0L)
+                    : CompletableFuture.failedFuture(new IllegalStateException(r.getErrorMessage()))), applied);
+        }
+
+        List<Sale> lines = new ArrayList<>(salesLines.size());
+        for (Sale line : salesLines) {
+            lines.add(new Sale(saleDate, line.getProductSerial(), line.getProductName(),
+                    line.getQuantity(), line.getAmount()));
+        }
+        Entry entry = new Entry(saleDate, lines);
+        reserve(entry);
+        toWrite.add(entry);
+        return new Ticket(entry.durable, entry.applied);
+    }
+
+    /**
+     * Units of {@code serial} in bills that were taken but are not in the database yet.
+     * Stock checks subtract these so a busy database cannot cause overselling.
+     */
+    public int getPendingQuantity(int serial) {
+        return pendingQuantities.getOrDefault(serial, 0);
+    }
+
+    /**
+     * Bills taken but not applied yet.
+     */
+    public int getPendingCount() {
+        return pendingBills.get();
+    }
+
+    private void reserve(Entry e) {
+        pendingBills.incrementAndGet();
+        for (Sale line : e.lines) pendingQuantities.merge(line.getProductSerial(), line.getQuantity(), Integer::sum);
+    }
+
+    private void release(Entry e) {
+        pendingBills.decrementAndGet();
+        for (Sale line : e.lines) {
+            pendingQuantities.computeIfPresent(line.getProductSerial(),
+                    (serial, qty) -> qty - line.getQuantity() <= 0 ? null : qty - line.getQuantity());
+        }
+    }
+
+    private static void startThread(Runnable loop, String name) {
+        Thread t = new Thread(loop, name);
+        t.setDaemon(true);
+        t.start();
+    }
+
+    // ---- Recovery -------------------------------------------------------------------
+
+    private List<Entry> open() throws IOException {
+        String configured = System.getProperty("pharmacy.journal.dir");
+        dir = configured != null ? Paths.get(configured)
+                : Paths.get(DatabaseManager.getInstance().getDatabasePath()).resolveSibling("bill-journal");
+        Files.createDirectories(dir);
+        lockChannel = FileChannel.open(dir.resolve("journal.lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (lockChannel.tryLock() == null) {
+            lockChannel.close();
+            throw new IOException("Bill journal " + dir + " is in use by another instance.");
+        }
+
+        // Unreadable database: replay everything; entries already applied are skipped there
+        long applied = Math.max(0, saleDAO.getAppliedJournalSequence());
+        List<Path> files = listSegments();
+        List<Entry> replay = new ArrayList<>();
+        long lastSeq = applied;
+        for (int i = 0; i < files.size(); i++) {
+            Path file = files.get(i);
+            // Everything in it is applied if the next segment starts at or before the applied mark
+            if (i + 1 < files.size() && firstSeqOf(files.get(i + 1)) - 1 <= applied) {
+                Files.deleteIfExists(file);
+                continue;
+            }
+            Segment segment = Segment.open(file);
+            if (segment == null) {
+                System.err.println("Bill journal: skipping unreadable segment " + file.getFileName());
+                Files.move(file, file.resolveSibling(file.getFileName() + ".bad"), StandardCopyOption.REPLACE_EXISTING);
+                continue;
+            }
+            for (Entry e : segment.scan()) {
+                if (e.seq > applied) replay.add(e);
+            }
+            lastSeq = Math.max(lastSeq, segment.lastSeq);
+            if (active != null) sealed.add(active);
+            active = segment;
+        }
+
+        // Numbers keep rising past the applied mark even if the journal directory was cleared
+        nextSeq = lastSeq + 1;
+        if (active == null) {
+            active = Segment.create(dir, nextSeq, SEGMENT_SIZE);
+        } else {
+            active.truncateTail();
+        }
+        return replay;
+    }
+
+    private List<Path> listSegments() throws IOException {
+        try (Stream<Path> s = Files.list(dir)) {
+            return s.filter(p -> p.getFileName().toString().endsWith(".seg"))
+                    .sorted((a, b) -> Long.compare(firstSeqOf(a), firstSeqOf(b)))
+                    .toList();
+        }
+    }
+
+    private static long firstSeqOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - ".seg".length()));
+    }
+
+    // ---- Writing --------------------------------------------------------------------
+
+    private void writeLoop() {
+        List<Entry> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(toWrite.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            // Whatever queued up during the last flush goes out with this one
+            toWrite.drainTo(batch, MAX_APPEND_BATCH - 1);
+            Map<Entry, Throwable> failed = new HashMap<>();
+            Throwable stopped = null;
+            try {
+                append(batch, failed);
+            } catch (Throwable t) {
+                // The entries written so far are durable; the rest fail, the thread lives on
+                t.printStackTrace();
+                stopped = t;
+            }
+            for (Entry e : batch) {
+                if (e.seq != 0) {
+                    toApply.add(e);
+                    e.durable.complete(e.seq);
+                } else {
+                    release(e);
+                    IOException failure = new IOException("Could not write the bill journal.",
+                            failed.getOrDefault(e, stopped));
+                    e.durable.completeExceptionally(failure);
+                    e.applied.completeExceptionally(failure);
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Writes {@code batch} and forces it to disk. Written entries get their sequence number;
+     * an entry that cannot be encoded is put in {@code failed} and skipped.
+     *
+     * @throws IOException if no new segment could be created; later entries stay unwritten
+     */
+    private void append(List<Entry> batch, Map<Entry, Throwable> failed) throws IOException {
+        int from = active.position;
+        try {
+            for (Entry e : batch) {
+                byte[] frame;
+                try {
+                    frame = encode(nextSeq, e);
+                } catch (RuntimeException ex) {
+                    // e.g. a product name too long for writeUTF; only this bill is refused
+                    failed.put(e, ex);
+                    continue;
+                }
+                if (!active.fits(frame.length)) {
+                    active.force(from);
+                    Segment next = Segment.create(dir, nextSeq, Math.max(SEGMENT_SIZE, HEADER_SIZE + frame.length + 4));
+                    sealed.add(active);
+                    active = next;
+                    from = active.position;
+                }
+                active.put(frame, nextSeq);
+                e.seq = nextSeq++;
+            }
+        } finally {
+            try {
+                active.force(from);
+            } catch (UncheckedIOException e) {
+                // The records are in the mapping and are applied as usual; only the crash guarantee is lost
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static byte[] encode(long seq, Entry e) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + e.lines.size() * 48);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(0);
+            out.writeInt(0);
+            out.writeLong(seq);
+            out.writeLong(e.saleDate.toEpochDay());
+            out.writeInt(e.lines.size());
+            for (Sale line : e.lines) {
+                out.writeInt(line.getProductSerial());
+                out.writeInt(line.getQuantity());
+                out.writeDouble(line.getAmount());
+                out.writeUTF(line.getProductName() == null ? "" : line.getProductName());
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        byte[] frame = bytes.toByteArray();
+        int length = frame.length - FRAME_HEADER;
+        CRC32 crc = new CRC32();
+        crc.update(frame, FRAME_HEADER, length);
+        putInt(frame, 0, length);
+        putInt(frame, 4, (int) crc.getValue());
+        return frame;
+    }
+
+    private static Entry decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        long seq = in.readLong();
+        LocalDate saleDate = LocalDate.ofEpochDay(in.readLong());
+        int count = in.readInt();
+        List<Sale> lines = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int serial = in.readInt();
+            int quantity = in.readInt();
+            double amount = in.readDouble();
+            lines.add(new Sale(saleDate, serial, in.readUTF(), quantity, amount));
+        }
+        Entry e = new Entry(saleDate, lines);
+        e.seq = seq;
+        return e;
+    }
+
+    private static void putInt(byte[] b, int at, int v) {
+        b[at] = (byte) (v >>> 24);
+        b[at + 1] = (byte) (v >>> 16);
+        b[at + 2] = (byte) (v >>> 8);
+        b[at + 3] = (byte) v;
+    }
+
+    // ---- Applying -------------------------------------------------------------------
+
+    private void applyLoop() {
+        List<Entry> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(toApply.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            toApply.drainTo(batch, APPLY_BATCH - 1);
+
+            try {
+                // One transaction for the batch; each bill still succeeds or fails on its own
+                List<SaleDAO.BillRecordResult> results = DatabaseManager.getInstance().write(conn -> {
+                    List<SaleDAO.BillRecordResult> applied = new ArrayList<>(batch.size());
+                    for (Entry e : batch) {
+                        applied.add(saleDAO.applyJournaled(conn, e.seq, e.saleDate, e.lines));
+                    }
+                    return applied;
+                });
+                for (int i = 0; i < batch.size(); i++) finish(batch.get(i), results.get(i));
+            } catch (SQLException e) {
+                System.err.println("Bill journal: batch of " + batch.size() + " failed, applying one by one: "
+                        + e.getMessage());
+                try {
+                    for (Entry entry : batch) finish(entry, applyAlone(entry));
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+            deleteAppliedSegments(batch.get(batch.size() - 1).seq);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Applies one entry in its own transaction, retrying while the database is busy or
+     * unreachable (the bill is safe in the journal meanwhile). After
+     * {@value #MAX_SAME_FAILURES} identical failures that are not lock contention, the
+     * entry is recorded as rejected with that error.
+     */
+    private SaleDAO.BillRecordResult applyAlone(Entry e) throws InterruptedException {
+        long retryMillis = 100;
+        String lastError = null;
+        int sameFailures = 0;
+        while (true) {
+            try {
+                return DatabaseManager.getInstance().write(
+                        conn -> saleDAO.applyJournaled(conn, e.seq, e.saleDate, e.lines));
+            } catch (SQLException ex) {
+                String error = ex.getMessage() == null ? ex.getClass().getSimpleName() : ex.getMessage();
+                sameFailures = error.equals(lastError) ? sameFailures + 1 : 1;
+                lastError = error;
+                if (sameFailures >= MAX_SAME_FAILURES && !isLockContention(error)) {
+                    try {
+                        return DatabaseManager.getInstance().write(conn -> saleDAO.rejectJournaled(conn, e.seq, error));
+                    } catch (SQLException rejectFailed) {
+                        // The database itself is failing, not this entry; keep retrying
+                    }
+                }
+                System.err.println("Bill journal: entry " + e.seq + " failed, retrying in " + retryMillis
+                        + " ms: " + error);
+                Thread.sleep(retryMillis);
+                retryMillis = Math.min(MAX_RETRY_MILLIS, retryMillis * 2);
+            }
+        }
+    }
+
+    private static boolean isLockContention(String error) {
+        String msg = error.toLowerCase();
+        return msg.contains("busy") || msg.contains("locked");
+    }
+
+    private void finish(Entry e, SaleDAO.BillRecordResult result) {
+        release(e);
+        if (!result.isSuccess()) {
+            System.err.println("Bill journal: entry " + e.seq + " rejected: " + result.getErrorMessage());
+        }
+        e.applied.complete(result);
+    }
+
+    private void deleteAppliedSegments(long appliedSeq) {
+        Segment oldest;
+        while ((oldest = sealed.peekFirst()) != null && oldest.lastSeq <= appliedSeq) {
+            sealed.pollFirst();
+            try {
+                oldest.channel.close();
+                Files.deleteIfExists(oldest.file);
+            } catch (IOException e) {
+                // Still mapped on some platforms; it is removed at the next start
+                System.err.println("Bill journal: could not delete " + oldest.file.getFileName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // ---- Segment files --------------------------------------------------------------
+
+    /**
+     * One journal file, mapped in full. Records follow the header back to back.
+     */
+    private static final class Segment {
+        final Path file;
+        final FileChannel channel;
+        final MappedByteBuffer map;
+        int position = HEADER_SIZE;
+        long lastSeq;
+
+        private Segment(Path file, FileChannel channel, MappedByteBuffer map) {
+            this.file = file;
+            this.channel = channel;
+            this.map = map;
+        }
+
+        static Segment create(Path dir, long firstSeq, int size) throws IOException {
+            Path file = dir.resolve(String.format("%020d.seg", firstSeq));
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            // Mapping past the end grows the file; the new space reads as zeros, i.e. no records
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            map.putInt(0, MAGIC);
+            map.putInt(4, VERSION);
+            map.putLong(8, firstSeq);
+            map.force(0, HEADER_SIZE);
+            syncDirectory(dir);
+            Segment segment = new Segment(file, channel, map);
+            segment.lastSeq = firstSeq - 1;
+            return segment;
+        }
+
+        /**
+         * @return the segment, or null if its header is not a journal header
+         */
+        static Segment open(Path file) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                channel.close();
+                return null;
+            }
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION) {
+                channel.close();
+                return null;
+            }
+            Segment segment = new Segment(file, channel, map);
+            segment.lastSeq = map.getLong(8) - 1;
+            return segment;
+        }
+
+        /**
+         * Reads records up to the first one that is missing, torn or out of sequence, and
+         * leaves {@link #position} there.
+         */
+        List<Entry> scan() {
+            List<Entry> entries = new ArrayList<>();
+            int pos = HEADER_SIZE;
+            while (pos + FRAME_HEADER <= map.capacity()) {
+                int length = map.getInt(pos);
+                if (length <= 0 || length > map.capacity() - pos - FRAME_HEADER) break;
+                byte[] payload = new byte[length];
+                map.get(pos + FRAME_HEADER, payload);
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != map.getInt(pos + 4)) break;
+                Entry e;
+                try {
+                    e = decode(payload);
+                } catch (IOException ex) {
+                    break;
+                }
+                if (e.seq != lastSeq + 1) break;
+                entries.add(e);
+                lastSeq = e.seq;
+                pos += FRAME_HEADER + length;
+            }
+            position = pos;
+            return entries;
+        }
+
+        /**
+         * Zeroes everything after the last good record, so bytes of a torn write can never
+         * be read back as a record once new ones are written over them.
+         */
+        void truncateTail() {
+            byte[] zeros = new byte[8192];
+            for (int pos = position; pos < map.capacity(); pos += zeros.length) {
+                map.put(pos, zeros, 0, Math.min(zeros.length, map.capacity() - pos));
+            }
+            map.force(position, map.capacity() - position);
+        }
+
+        // Leaves room for the zero length that ends the records
+        boolean fits(int frameLength) {
+            return position + frameLength + 4 <= map.capacity();
+        }
+
+        void put(byte[] frame, long seq) {
+            map.put(position, frame);
+            position += frame.length;
+            lastSeq = seq;
+        }
+
+        void force(int from) {
+            int to = Math.min(map.capacity(), position + 4);
+            if (to > from) map.force(from, to - from);
+        }
+
+        private static void syncDirectory(Path dir) {
+            // Makes the new file's name durable; not supported on every platform
+            try (FileChannel d = FileChannel.open(dir, StandardOpenOption.READ)) {
+                d.force(true);
+            } catch (IOException ignored) {
+                // Directory entries are flushed by the file system in time
+            }
+        }
+    }
+}
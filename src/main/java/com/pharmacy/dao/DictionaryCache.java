@@ -0,0 +1,189 @@
+package com.pharmacy.dao;
+
+import com.pharmacy.database.DatabaseManager;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory copy of the {@code companies} and {@code distributors} dictionary tables.
+ *
+ * Serves the filter combos and the autocomplete in the product dialogs without a query.
+ * Product counts come from the tables (kept by triggers) when {@link #reload()} runs;
+ * after that {@link ProductDAO} moves each committed write's count from the old name to
+ * the new one, so new names show up and unused ones disappear immediately.
+ * Company/distributor strings read from products are interned here, so a large catalog
+ * holds one String per distinct name instead of one per row.
+ */
+public final class DictionaryCache {
+    public enum Kind {
+        COMPANY("companies"),
+        DISTRIBUTOR("distributors");
+
+        private final String table;
+
+        Kind(String table) {
+            this.table = table;
+        }
+    }
+
+    private static final DictionaryCache INSTANCE = new DictionaryCache();
+
+    private final Map<Kind, TreeMap<String, Integer>> counts = new EnumMap<>(Kind.class);
+    private final Map<Kind, TreeMap<String, String>> byLowerName = new EnumMap<>(Kind.class);
+    private final ConcurrentHashMap<String, String> interned = new ConcurrentHashMap<>();
+    private boolean loaded;
+
+    private DictionaryCache() {
+        for (Kind kind : Kind.values()) {
+            counts.put(kind, new TreeMap<>());
+            byLowerName.put(kind, new TreeMap<>());
+        }
+    }
+
+    public static DictionaryCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Reloads names and product counts. Both tables are small, so this is cheap.
+     */
+    public void reload() {
+        Map<Kind, TreeMap<String, Integer>> fresh = new EnumMap<>(Kind.class);
+        try (Connection conn = DatabaseManager.getInstance().getReadConnection();
+             Statement stmt = conn.createStatement()) {
+            for (Kind kind : Kind.values()) {
+                TreeMap<String, Integer> names = new TreeMap<>();
+                try (ResultSet rs = stmt.executeQuery("SELECT name, product_count FROM " + kind.table)) {
+                    while (rs.next()) {
+                        names.put(intern(rs.getString("name")), rs.getInt("product_count"));
+                    }
+                }
+                fresh.put(kind, names);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        synchronized (this) {
+            for (Kind kind : Kind.values()) {
+                TreeMap<String, Integer> names = fresh.get(kind);
+                TreeMap<String, String> lower = new TreeMap<>();
+                for (String name : names.keySet()) lower.putIfAbsent(name.toLowerCase(Locale.ROOT), name);
+                counts.put(kind, names);
+                byLowerName.put(kind, lower);
+            }
+            loaded = true;
+        }
+    }
+
+    /**
+     * Names that are used by at least one product, in the same order as {@code ORDER BY name}.
+     */
+    public List<String> getNames(Kind kind) {
+        ensureLoaded();
+        synchronized (this) {
+            List<String> names = new ArrayList<>();
+            for (Map.Entry<String, Integer> e : counts.get(kind).entrySet()) {
+                if (e.getValue() > 0) names.add(e.getKey());
+            }
+            return names;
+        }
+    }
+
+    public int getProductCount(Kind kind, String name) {
+        ensureLoaded();
+        synchronized (this) {
+            Integer count = name == null ? null : counts.get(kind).get(name.trim());
+            return count == null ? 0 : count;
+        }
+    }
+
+    /**
+     * @return the first used name starting with {@code prefix} (case-insensitive), or null
+     */
+    public String complete(Kind kind, String prefix) {
+        if (prefix == null || prefix.isEmpty()) return null;
+        ensureLoaded();
+        String key = prefix.toLowerCase(Locale.ROOT);
+        synchronized (this) {
+            for (Map.Entry<String, String> e : byLowerName.get(kind).tailMap(key, true).entrySet()) {
+                if (!e.getKey().startsWith(key)) return null;
+                Integer count = counts.get(kind).get(e.getValue());
+                if (count != null && count > 0) return e.getValue();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Records a committed product insert/update that changed a product's name of this kind
+     * from {@code oldName} (null for an insert) to {@code newName}. A name whose count
+     * drops to zero is removed.
+     */
+    public synchronized void replace(Kind kind, String oldName, String newName) {
+        if (!loaded) return;
+        String from = normalize(oldName);
+        String to = normalize(newName);
+        if (from != null && from.equals(to)) return;
+        if (from != null) decrement(kind, from);
+        if (to != null) {
+            String name = intern(to);
+            counts.get(kind).merge(name, 1, Integer::sum);
+            byLowerName.get(kind).putIfAbsent(name.toLowerCase(Locale.ROOT), name);
+        }
+    }
+
+    private void decrement(Kind kind, String name) {
+        Integer count = counts.get(kind).get(name);
+        if (count == null) return;
+        if (count > 1) {
+            counts.get(kind).put(name, count - 1);
+            return;
+        }
+        counts.get(kind).remove(name);
+        String lower = name.toLowerCase(Locale.ROOT);
+        if (name.equals(byLowerName.get(kind).get(lower))) {
+            byLowerName.get(kind).remove(lower);
+            // Another spelling differing only in case may still be in use.
+            for (String other : counts.get(kind).keySet()) {
+                if (other.toLowerCase(Locale.ROOT).equals(lower)) {
+                    byLowerName.get(kind).put(lower, other);
+                    break;
+                }
+            }
+        }
+    }
+
+    private static String normalize(String name) {
+        if (name == null || name.trim().isEmpty()) return null;
+        return name.trim();
+    }
+
+    /**
+     * @return a canonical instance equal to {@code value}
+     */
+    public String intern(String value) {
+        if (value == null) return null;
+        String existing = interned.putIfAbsent(value, value);
+        return existing != null ? existing : value;
+    }
+
+    private void ensureLoaded() {
+        boolean needsLoad;
+        synchronized (this) {
+            needsLoad = !loaded;
+        }
+        if (needsLoad) reload();
+    }
+}
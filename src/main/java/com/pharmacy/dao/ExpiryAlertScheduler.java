@@ -0,0 +1,121 @@
+package com.pharmacy.dao;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically checks the {@link ExpiryIndex} and reports products that crossed an expiry
+ * threshold since the previous check (expired, or now within 30/90/180 days).
+ *
+ * The last checked day is kept in settings, so crossings that happened while the app was
+ * closed are reported at the next start. Listeners are called on the scheduler thread.
+ */
+public final class ExpiryAlertScheduler implements AutoCloseable {
+    public static final int[] THRESHOLD_DAYS = {0, 30, 90, 180};
+    private static final String KEY_LAST_CHECKED_DAY = "expiry_alert_last_day";
+    private static final long CHECK_INTERVAL_MINUTES = 60;
+
+    public interface AlertListener {
+        void onExpiryAlert(ExpiryAlert alert);
+    }
+
+    public static final class ExpiryAlert {
+        private final int thresholdDays;
+        private final int[] serials;
+        private final LocalDate checkedOn;
+
+        private ExpiryAlert(int thresholdDays, int[] serials, LocalDate checkedOn) {
+            this.thresholdDays = thresholdDays;
+            this.serials = serials;
+            this.checkedOn = checkedOn;
+        }
+
+        /**
+         * @return 0 for "expired", otherwise the "expires within N days" window entered
+         */
+        public int getThresholdDays() {
+            return thresholdDays;
+        }
+
+        public int[] getSerials() {
+            return serials;
+        }
+
+        public LocalDate getCheckedOn() {
+            return checkedOn;
+        }
+
+        public String describe() {
+            String items = serials.length == 1 ? "1 product" : serials.length + " products";
+            return thresholdDays == 0
+                    ? items + " expired"
+                    : items + " now expire within " + thresholdDays + " days";
+        }
+    }
+
+    private final ExpiryIndex index = ExpiryIndex.getInstance();
+    private final SettingsDAO settingsDAO = new SettingsDAO();
+    private final List<AlertListener> listeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "expiry-alerts");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public void addListener(AlertListener listener) {
+        listeners.add(listener);
+    }
+
+    public void start() {
+        executor.scheduleWithFixedDelay(this::checkSafely, 0, CHECK_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private void checkSafely() {
+        try {
+            check(LocalDate.now());
+        } catch (RuntimeException e) {
+            // Keep the schedule alive; the next run retries.
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Reports every product whose expiry entered a threshold window after the last checked
+     * day, up to and including {@code today}. The first run ever only records the day.
+     */
+    void check(LocalDate today) {
+        index.sync();
+        String stored = settingsDAO.getSetting(KEY_LAST_CHECKED_DAY, null);
+        long todayDay = today.toEpochDay();
+        if (stored != null) {
+            long lastDay;
+            try {
+                lastDay = Long.parseLong(stored);
+            } catch (NumberFormatException e) {
+                lastDay = todayDay;
+            }
+            if (lastDay >= todayDay) return;
+
+            // A product is inside window T on day d when exp < d + T. It crossed between
+            // the last check and today when lastDay + T <= exp < today + T.
+            for (int threshold : THRESHOLD_DAYS) {
+                LocalDate from = LocalDate.ofEpochDay(lastDay + threshold);
+                LocalDate to = LocalDate.ofEpochDay(todayDay + threshold);
+                int[] crossed = index.getSerialsExpiringBetween(from, to);
+                if (crossed.length == 0) continue;
+                ExpiryAlert alert = new ExpiryAlert(threshold, crossed, today);
+                for (AlertListener listener : listeners) listener.onExpiryAlert(alert);
+            }
+        }
+        settingsDAO.setSetting(KEY_LAST_CHECKED_DAY, Long.toString(todayDay));
+    }
+}
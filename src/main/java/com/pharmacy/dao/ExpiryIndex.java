@@ -0,0 +1,399 @@
+package com.pharmacy.dao;
+
+import com.pharmacy.model.Product;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Products bucketed by expiry day.
+ *
+ * A sorted map from epoch day to the serials expiring that day answers "expired",
+ * "expiring within N days" and histogram questions by walking day buckets instead of
+ * products. {@link ProductDAO} updates it after writes commit, and {@link #sync()} pulls
+ * changes made by other processes from the product change feed.
+ *
+ * "Near expiry" uses the same window as {@code DateUtil.isNearExpiry}: not yet expired and
+ * less than seven calendar months away.
+ */
+public final class ExpiryIndex {
+    private static final ExpiryIndex INSTANCE = new ExpiryIndex();
+    private static final int NEAR_EXPIRY_MONTHS = 7;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private TreeMap<Integer, IntIntMap> serialsByDay = new TreeMap<>();
+    private IntIntMap dayBySerial = new IntIntMap();
+    private long version = -1;
+    // Non-null while rebuild() scans: products written meanwhile (null value = removed)
+    private Map<Integer, Product> writtenDuringRebuild;
+
+    private ExpiryIndex() {
+    }
+
+    public static ExpiryIndex getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Reloads the index from the catalog. The scan fills new maps without the lock, so
+     * readers keep using the current index until the swap; products written during the
+     * scan are replayed onto the new maps first.
+     */
+    public synchronized void rebuild() {
+        ProductDAO dao = new ProductDAO();
+        lock.writeLock().lock();
+        try {
+            writtenDuringRebuild = new HashMap<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        TreeMap<Integer, IntIntMap> freshDays = new TreeMap<>();
+        IntIntMap freshSerials = new IntIntMap();
+        // Read the version first: changes committed during the scan are applied again by sync()
+        long scannedFrom = dao.getChangeVersion();
+        try {
+            dao.forEachProduct(p -> put(freshDays, freshSerials, p));
+        } finally {
+            lock.writeLock().lock();
+            try {
+                for (Map.Entry<Integer, Product> e : writtenDuringRebuild.entrySet()) {
+                    if (e.getValue() != null) put(freshDays, freshSerials, e.getValue());
+                    else remove(freshDays, freshSerials, e.getKey());
+                }
+                writtenDuringRebuild = null;
+                serialsByDay = freshDays;
+                dayBySerial = freshSerials;
+                version = scannedFrom;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    public void ensureBuilt() {
+        if (isBuilt()) return;
+        synchronized (this) {
+            // Another thread may have built it while this one waited
+            if (!isBuilt()) rebuild();
+        }
+    }
+
+    private boolean isBuilt() {
+        lock.readLock().lock();
+        try {
+            return version >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Applies products changed since the last rebuild/sync. Costs one indexed query when
+     * nothing changed.
+     */
+    public void sync() {
+        ensureBuilt();
+        long since;
+        lock.readLock().lock();
+        try {
+            since = version;
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        ProductDAO.ChangeSet changes = new ProductDAO().getProductsChangedSince(since);
+        if (changes.isEmpty()) return;
+        lock.writeLock().lock();
+        try {
+            for (Product p : changes.getChanged()) putLocked(p);
+            for (int serial : changes.getRemovedSerials()) removeLocked(serial);
+            version = Math.max(version, changes.getVersion());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void put(Product product) {
+        if (product == null) return;
+        lock.writeLock().lock();
+        try {
+            putLocked(product);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int serial) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(serial);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return dayBySerial.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int countExpired(LocalDate today) {
+        return count(Integer.MIN_VALUE, (int) today.toEpochDay());
+    }
+
+    /**
+     * Products expiring from {@code today} (inclusive) up to {@code days} days later (exclusive).
+     */
+    public int countExpiringWithin(LocalDate today, int days) {
+        int from = (int) today.toEpochDay();
+        return count(from, from + Math.max(0, days));
+    }
+
+    public int countNearExpiry(LocalDate today) {
+        return count((int) today.toEpochDay(), nearExpiryEnd(today));
+    }
+
+    public int[] getExpiredSerials(LocalDate today) {
+        return serials(Integer.MIN_VALUE, (int) today.toEpochDay());
+    }
+
+    public int[] getExpiringWithinSerials(LocalDate today, int days) {
+        int from = (int) today.toEpochDay();
+        return serials(from, from + Math.max(0, days));
+    }
+
+    /**
+     * Expired and near-expiry serials together, in serial order.
+     */
+    public int[] getExpiredOrNearSerials(LocalDate today) {
+        int[] serials = serials(Integer.MIN_VALUE, nearExpiryEnd(today));
+        Arrays.sort(serials);
+        return serials;
+    }
+
+    /**
+     * Products whose expiry falls on or after {@code from} and before {@code to}, in
+     * day order.
+     */
+    public int[] getSerialsExpiringBetween(LocalDate from, LocalDate to) {
+        return serials((int) from.toEpochDay(), (int) to.toEpochDay());
+    }
+
+    /**
+     * Days-to-expiry histogram. For bounds {30, 90, 180} the buckets are: expired,
+     * [0, 30), [30, 90), [90, 180) and 180 or more days.
+     *
+     * @param upperBoundsDays ascending, positive
+     */
+    public int[] histogram(LocalDate today, int... upperBoundsDays) {
+        int base = (int) today.toEpochDay();
+        int[] counts = new int[upperBoundsDays.length + 2];
+        counts[0] = count(Integer.MIN_VALUE, base);
+        int from = base;
+        for (int i = 0; i < upperBoundsDays.length; i++) {
+            int to = base + upperBoundsDays[i];
+            counts[i + 1] = count(from, to);
+            from = to;
+        }
+        counts[counts.length - 1] = count(from, Integer.MAX_VALUE);
+        return counts;
+    }
+
+    /**
+     * @return the expiry day of {@code serial}, or null if it is not indexed
+     */
+    public LocalDate getExpiry(int serial) {
+        lock.readLock().lock();
+        try {
+            int day = dayBySerial.get(serial, Integer.MIN_VALUE);
+            return day == Integer.MIN_VALUE ? null : LocalDate.ofEpochDay(day);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static int nearExpiryEnd(LocalDate today) {
+        return (int) today.plusMonths(NEAR_EXPIRY_MONTHS).toEpochDay();
+    }
+
+    private int count(int fromDay, int toDay) {
+        if (fromDay >= toDay) return 0;
+        lock.readLock().lock();
+        try {
+            int total = 0;
+            for (IntIntMap bucket : serialsByDay.subMap(fromDay, true, toDay, false).values()) {
+                total += bucket.size();
+            }
+            return total;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int[] serials(int fromDay, int toDay) {
+        if (fromDay >= toDay) return new int[0];
+        lock.readLock().lock();
+        try {
+            NavigableMap<Integer, IntIntMap> range = serialsByDay.subMap(fromDay, true, toDay, false);
+            int total = 0;
+            for (IntIntMap bucket : range.values()) total += bucket.size();
+            int[] out = new int[total];
+            int n = 0;
+            for (Map.Entry<Integer, IntIntMap> e : range.entrySet()) {
+                n = e.getValue().copyKeys(out, n);
+            }
+            return out;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Caller holds the write lock. Before the first build only a running rebuild cares.
+    private void putLocked(Product product) {
+        if (version >= 0) put(serialsByDay, dayBySerial, product);
+        if (writtenDuringRebuild != null) writtenDuringRebuild.put(product.getSerial(), product);
+    }
+
+    private void removeLocked(int serial) {
+        remove(serialsByDay, dayBySerial, serial);
+        if (writtenDuringRebuild != null) writtenDuringRebuild.put(serial, null);
+    }
+
+    private static void put(TreeMap<Integer, IntIntMap> serialsByDay, IntIntMap dayBySerial, Product product) {
+        if (product.getExpDate() == null) {
+            remove(serialsByDay, dayBySerial, product.getSerial());
+            return;
+        }
+        int serial = product.getSerial();
+        int day = (int) product.getExpDate().toEpochDay();
+        int previous = dayBySerial.get(serial, Integer.MIN_VALUE);
+        if (previous == day) return;
+        if (previous != Integer.MIN_VALUE) removeFromBucket(serialsByDay, previous, serial);
+        dayBySerial.put(serial, day);
+        serialsByDay.computeIfAbsent(day, d -> new IntIntMap()).put(serial, 0);
+    }
+
+    private static void remove(TreeMap<Integer, IntIntMap> serialsByDay, IntIntMap dayBySerial, int serial) {
+        int previous = dayBySerial.get(serial, Integer.MIN_VALUE);
+        if (previous == Integer.MIN_VALUE) return;
+        dayBySerial.remove(serial);
+        removeFromBucket(serialsByDay, previous, serial);
+    }
+
+    private static void removeFromBucket(TreeMap<Integer, IntIntMap> serialsByDay, int day, int serial) {
+        IntIntMap bucket = serialsByDay.get(day);
+        if (bucket == null) return;
+        bucket.remove(serial);
+        if (bucket.size() == 0) serialsByDay.remove(day);
+    }
+
+    /**
+     * Linear-probing int -> int map; also used as an int set (values ignored).
+     */
+    private static final class IntIntMap {
+        private static final int EMPTY = Integer.MIN_VALUE;
+
+        private int[] keys;
+        private int[] values;
+        private int size;
+
+        IntIntMap() {
+            allocate(8);
+        }
+
+        int size() {
+            return size;
+        }
+
+        int get(int key, int missing) {
+            int mask = keys.length - 1;
+            for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+                if (keys[i] == key) return values[i];
+                if (keys[i] == EMPTY) return missing;
+            }
+        }
+
+        void put(int key, int value) {
+            if ((size + 1) * 4 > keys.length * 3) resize(keys.length * 2);
+            int mask = keys.length - 1;
+            for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    values[i] = value;
+                    return;
+                }
+                if (keys[i] == EMPTY) {
+                    keys[i] = key;
+                    values[i] = value;
+                    size++;
+                    return;
+                }
+            }
+        }
+
+        void remove(int key) {
+            int mask = keys.length - 1;
+            for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+                if (keys[i] == EMPTY) return;
+                if (keys[i] == key) {
+                    deleteSlot(i);
+                    return;
+                }
+            }
+        }
+
+        int copyKeys(int[] out, int offset) {
+            for (int k : keys) {
+                if (k != EMPTY) out[offset++] = k;
+            }
+            return offset;
+        }
+
+        private void deleteSlot(int slot) {
+            // Backward-shift deletion, as in ProductCatalogCache
+            int mask = keys.length - 1;
+            int gap = slot;
+            for (int i = (slot + 1) & mask; keys[i] != EMPTY; i = (i + 1) & mask) {
+                int home = mix(keys[i]) & mask;
+                boolean movable = gap <= i ? (home <= gap || home > i) : (home <= gap && home > i);
+                if (movable) {
+                    keys[gap] = keys[i];
+                    values[gap] = values[i];
+                    gap = i;
+                }
+            }
+            keys[gap] = EMPTY;
+            size--;
+        }
+
+        private void resize(int capacity) {
+            int[] oldKeys = keys;
+            int[] oldValues = values;
+            allocate(capacity);
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) put(oldKeys[i], oldValues[i]);
+            }
+        }
+
+        private void allocate(int capacity) {
+            keys = new int[capacity];
+            Arrays.fill(keys, EMPTY);
+            values = new int[capacity];
+        }
+
+        private static int mix(int key) {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
@@ -0,0 +1,405 @@
+package com.pharmacy.dao;
+
+import com.pharmacy.model.Product;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory copy of the product catalog keyed by serial.
+ *
+ * Entries live in an open-addressing int-keyed table (no boxing). The cache is
+ * write-through: {@link ProductDAO} and {@link SaleDAO} update it after their writes
+ * commit. When the catalog outgrows {@code maxEntries}, a CLOCK sweep evicts entries
+ * that were not read recently; evicted products are simply reloaded on the next miss.
+ * Callers always receive copies, so editing a returned product never changes the cache.
+ */
+public final class ProductCatalogCache {
+    private static final int DEFAULT_MAX_ENTRIES = Integer.getInteger("pharmacy.cache.maxProducts", 200_000);
+    private static final ProductCatalogCache INSTANCE = new ProductCatalogCache(DEFAULT_MAX_ENTRIES);
+
+    private final int maxEntries;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final SerialTable table = new SerialTable();
+    // Serials written while warm() or verifyAgainstDatabase() scans; their cached entries
+    // are newer than the scan's
+    private Set<Integer> writtenDuringScan;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public static final class ConsistencyReport {
+        private final int checked;
+        private final List<Integer> mismatchedSerials;
+
+        private ConsistencyReport(int checked, List<Integer> mismatchedSerials) {
+            this.checked = checked;
+            this.mismatchedSerials = mismatchedSerials;
+        }
+
+        public int getChecked() {
+            return checked;
+        }
+
+        /**
+         * Serials whose cached copy differed from the database (or no longer exist there).
+         * They have already been repaired or dropped.
+         */
+        public List<Integer> getMismatchedSerials() {
+            return mismatchedSerials;
+        }
+
+        public boolean isConsistent() {
+            return mismatchedSerials.isEmpty();
+        }
+    }
+
+    ProductCatalogCache(int maxEntries) {
+        this.maxEntries = Math.max(16, maxEntries);
+    }
+
+    public static ProductCatalogCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Loads the catalog (up to the size bound). Safe to call again to reload. The scan
+     * runs without the lock; entries written through while it runs are kept over the
+     * scanned rows, which may predate those writes.
+     */
+    public synchronized void warm() {
+        lock.writeLock().lock();
+        try {
+            writtenDuringScan = new HashSet<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        SerialTable loaded = new SerialTable();
+        try {
+            new ProductDAO().forEachProduct(p -> {
+                if (loaded.size() < maxEntries) loaded.put(p.getSerial(), p);
+            });
+        } finally {
+            lock.writeLock().lock();
+            try {
+                for (int serial : writtenDuringScan) {
+                    Product current = table.get(serial);
+                    if (current != null) loaded.put(serial, current);
+                    else loaded.remove(serial);
+                }
+                writtenDuringScan = null;
+                table.replaceWith(loaded);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    // Caller holds the write lock
+    private void written(int serial) {
+        if (writtenDuringScan != null) writtenDuringScan.add(serial);
+    }
+
+    /**
+     * @return a copy of the cached product, or null on a miss
+     */
+    public Product get(int serial) {
+        lock.readLock().lock();
+        try {
+            Product p = table.get(serial);
+            if (p == null) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return new Product(p);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void put(Product product) {
+        if (product == null) return;
+        Product copy = new Product(product);
+        lock.writeLock().lock();
+        try {
+            if (table.get(copy.getSerial()) == null) {
+                while (table.size() >= maxEntries) {
+                    table.evictOne();
+                    evictions.increment();
+                }
+            }
+            table.put(copy.getSerial(), copy);
+            written(copy.getSerial());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void updateQuantity(int serial, int quantity) {
+        lock.writeLock().lock();
+        try {
+            Product p = table.get(serial);
+            if (p != null) {
+                Product copy = new Product(p);
+                copy.setQuantity(quantity);
+                table.put(serial, copy);
+            }
+            written(serial);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void invalidate(int serial) {
+        lock.writeLock().lock();
+        try {
+            table.remove(serial);
+            written(serial);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Compares every cached entry with the database, repairing any that drifted
+     * (e.g. rows changed by the tools/ scripts or another app instance). The scan only
+     * takes the read lock per row; repairs are applied under the write lock at the end,
+     * skipping entries written through meanwhile.
+     */
+    public synchronized ConsistencyReport verifyAgainstDatabase() {
+        lock.writeLock().lock();
+        try {
+            writtenDuringScan = new HashSet<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Map<Integer, Product> drifted = new HashMap<>();
+        BitSet seen = new BitSet();
+        ConsistencyReport report;
+        try {
+            new ProductDAO().forEachProduct(db -> {
+                if (db.getSerial() >= 0) seen.set(db.getSerial());
+                lock.readLock().lock();
+                try {
+                    Product cached = table.get(db.getSerial());
+                    if (cached != null && !sameContent(cached, db)) drifted.put(db.getSerial(), db);
+                } finally {
+                    lock.readLock().unlock();
+                }
+            });
+        } finally {
+            lock.writeLock().lock();
+            try {
+                Set<Integer> written = writtenDuringScan;
+                writtenDuringScan = null;
+                List<Integer> mismatched = new ArrayList<>();
+                for (Map.Entry<Integer, Product> e : drifted.entrySet()) {
+                    if (written.contains(e.getKey()) || table.get(e.getKey()) == null) continue;
+                    mismatched.add(e.getKey());
+                    table.put(e.getKey(), e.getValue());
+                }
+                for (int serial : table.keys()) {
+                    if (written.contains(serial) || (serial >= 0 && seen.get(serial))) continue;
+                    mismatched.add(serial);
+                    table.remove(serial);
+                }
+                report = new ConsistencyReport(table.size(), mismatched);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        return report;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return table.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    static boolean sameContent(Product a, Product b) {
+        return a.getSerial() == b.getSerial()
+                && Objects.equals(a.getName(), b.getName())
+                && Objects.equals(a.getSalt(), b.getSalt())
+                && Objects.equals(a.getCompany(), b.getCompany())
+                && Objects.equals(a.getDistributor(), b.getDistributor())
+                && Objects.equals(a.getBatch(), b.getBatch())
+                && Objects.equals(a.getPurchaseDate(), b.getPurchaseDate())
+                && Objects.equals(a.getMfgDate(), b.getMfgDate())
+                && Objects.equals(a.getExpDate(), b.getExpDate())
+                && Double.compare(a.getPrice(), b.getPrice()) == 0
+                && a.getQuantity() == b.getQuantity();
+    }
+
+    /**
+     * Linear-probing int -> Product table with a CLOCK reference bit per slot.
+     * Not thread-safe; guarded by the cache lock (reference bits are a benign race).
+     */
+    private static final class SerialTable {
+        private static final int EMPTY = Integer.MIN_VALUE;
+
+        private int[] keys;
+        private Product[] values;
+        private boolean[] referenced;
+        private int size;
+        private int hand;
+
+        SerialTable() {
+            allocate(64);
+        }
+
+        int size() {
+            return size;
+        }
+
+        void replaceWith(SerialTable other) {
+            keys = other.keys;
+            values = other.values;
+            referenced = other.referenced;
+            size = other.size;
+            hand = 0;
+        }
+
+        Product get(int key) {
+            int mask = keys.length - 1;
+            for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+                int k = keys[i];
+                if (k == key) {
+                    referenced[i] = true;
+                    return values[i];
+                }
+                if (k == EMPTY) return null;
+            }
+        }
+
+        void put(int key, Product value) {
+            if ((size + 1) * 4 > keys.length * 3) resize(keys.length * 2);
+            int mask = keys.length - 1;
+            for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+                int k = keys[i];
+                if (k == key) {
+                    values[i] = value;
+                    referenced[i] = true;
+                    return;
+                }
+                if (k == EMPTY) {
+                    keys[i] = key;
+                    values[i] = value;
+                    referenced[i] = true;
+                    size++;
+                    return;
+                }
+            }
+        }
+
+        void remove(int key) {
+            int mask = keys.length - 1;
+            for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+                int k = keys[i];
+                if (k == EMPTY) return;
+                if (k == key) {
+                    deleteSlot(i);
+                    return;
+                }
+            }
+        }
+
+        void evictOne() {
+            if (size == 0) return;
+            int mask = keys.length - 1;
+            while (true) {
+                hand = (hand + 1) & mask;
+                if (keys[hand] == EMPTY) continue;
+                if (referenced[hand]) {
+                    referenced[hand] = false;
+                } else {
+                    deleteSlot(hand);
+                    return;
+                }
+            }
+        }
+
+        int[] keys() {
+            int[] out = new int[size];
+            int n = 0;
+            for (int k : keys) {
+                if (k != EMPTY) out[n++] = k;
+            }
+            return out;
+        }
+
+        private void deleteSlot(int slot) {
+            // Backward-shift deletion keeps probe chains intact without tombstones.
+            int mask = keys.length - 1;
+            int gap = slot;
+            for (int i = (slot + 1) & mask; keys[i] != EMPTY; i = (i + 1) & mask) {
+                int home = mix(keys[i]) & mask;
+                boolean movable = gap <= i ? (home <= gap || home > i) : (home <= gap && home > i);
+                if (movable) {
+                    keys[gap] = keys[i];
+                    values[gap] = values[i];
+                    referenced[gap] = referenced[i];
+                    gap = i;
+                }
+            }
+            keys[gap] = EMPTY;
+            values[gap] = null;
+            referenced[gap] = false;
+            size--;
+        }
+
+        private void resize(int capacity) {
+            int[] oldKeys = keys;
+            Product[] oldValues = values;
+            allocate(capacity);
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) put(oldKeys[i], oldValues[i]);
+            }
+        }
+
+        private void allocate(int capacity) {
+            keys = new int[capacity];
+            Arrays.fill(keys, EMPTY);
+            values = new Product[capacity];
+            referenced = new boolean[capacity];
+        }
+
+        private static int mix(int key) {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.pharmacy.dao;
 
+import com.pharmacy.database.CommitQueue;
 import com.pharmacy.database.DatabaseManager;
 import com.pharmacy.model.Product;
 
@@ -7,12 +8,32 @@ import java.sql.*;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class ProductDAO {
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE;
+    private static final int FETCH_SIZE = 500;
+
+    private static volatile Boolean ftsAvailable;
+
+    private final ProductCatalogCache catalogCache = ProductCatalogCache.getInstance();
+    private final ProductNameIndex nameIndex = ProductNameIndex.getInstance();
+    private final DictionaryCache dictionary = DictionaryCache.getInstance();
+    private final ExpiryIndex expiryIndex = ExpiryIndex.getInstance();
 
     public static class OperationResult {
         private final boolean success;
@@ -39,61 +60,107 @@ public class ProductDAO {
             return errorMessage;
         }
     }
-    
-    public int getNextSerial() {
-        String selectSql = "SELECT counter FROM serial_counter WHERE id = 1";
-        String updateSql = "UPDATE serial_counter SET counter = ? WHERE id = 1";
-        
-        try (Connection conn = DatabaseManager.getInstance().getConnection()) {
-            // Use single connection for both select and update to avoid locking
-            conn.setAutoCommit(false);
-            
-            // Select current counter
-            int counter = 1000;
-            try (Statement stmt = conn.createStatement();
-                 ResultSet rs = stmt.executeQuery(selectSql)) {
-                if (rs.next()) {
-                    counter = rs.getInt("counter");
-                }
-            }
-            
-            // Update counter atomically
-            int nextSerial = counter + 1;
-            try (PreparedStatement pstmt = conn.prepareStatement(updateSql)) {
-                pstmt.setInt(1, nextSerial);
-                pstmt.executeUpdate();
-            }
-            
-            conn.commit();
-            conn.setAutoCommit(true);
-            return nextSerial;
-            
-        } catch (SQLException e) {
-            e.printStackTrace();
+
+    /**
+     * Outcome of one input row of {@link #addProducts} / {@link #upsertProducts}.
+     */
+    public static class BulkRowResult {
+        public enum Status { INSERTED, UPDATED, DUPLICATE, FAILED }
+
+        private final Status status;
+        private final int serial;
+        private final String errorMessage;
+
+        private BulkRowResult(Status status, int serial, String errorMessage) {
+            this.status = status;
+            this.serial = serial;
+            this.errorMessage = errorMessage;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * Serial the row was written to; for {@code DUPLICATE} the serial of the existing product.
+         * 0 when the row failed before a serial was known.
+         */
+        public int getSerial() {
+            return serial;
+        }
+
+        public String getErrorMessage() {
+            return errorMessage;
+        }
+
+        public boolean isSuccess() {
+            return status == Status.INSERTED || status == Status.UPDATED;
         }
-        return 1000;
+    }
+
+    /**
+     * Products changed since some version, see {@link #getProductsChangedSince}.
+     */
+    public static class ChangeSet {
+        private final long version;
+        private final List<Product> changed;
+        private final List<Integer> removedSerials;
+
+        private ChangeSet(long version, List<Product> changed, List<Integer> removedSerials) {
+            this.version = version;
+            this.changed = changed;
+            this.removedSerials = removedSerials;
+        }
+
+        /**
+         * @return the version to pass next time
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * Inserted or updated products, current state.
+         */
+        public List<Product> getChanged() {
+            return changed;
+        }
+
+        public List<Integer> getRemovedSerials() {
+            return removedSerials;
+        }
+
+        public boolean isEmpty() {
+            return changed.isEmpty() && removedSerials.isEmpty();
+        }
+    }
+
+    @FunctionalInterface
+    private interface RowBinder {
+        void bind(PreparedStatement pstmt, Product product) throws SQLException;
+    }
+    
+    private static final String INSERT_PRODUCT_SQL =
+            "INSERT INTO products (serial, name, salt, company, distributor, batch, purchase_date, mfg_date, exp_date, price, quantity) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String UPDATE_PRODUCT_SQL =
+            "UPDATE products SET name = ?, salt = ?, company = ?, distributor = ?, " +
+            "batch = ?, purchase_date = ?, mfg_date = ?, exp_date = ?, price = ?, quantity = ? WHERE serial = ?";
+    // Stays well under SQLite's default limit of 999 bound parameters.
+    private static final int IN_CLAUSE_CHUNK = 500;
+
+    /**
+     * Next free product serial, issued from a block reserved by {@link SerialAllocator}.
+     *
+     * @throws SQLException if a new block could not be reserved; there is no safe fallback
+     */
+    public int getNextSerial() throws SQLException {
+        return SerialAllocator.getInstance().next();
     }
     
     public boolean addProduct(Product product) {
-        String sql = "INSERT INTO products (serial, name, salt, company, distributor, batch, purchase_date, mfg_date, exp_date, price, quantity) " +
-                     "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
-        
-        try (Connection conn = DatabaseManager.getInstance().getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            
-            pstmt.setInt(1, product.getSerial());
-            pstmt.setString(2, product.getName());
-            pstmt.setString(3, product.getSalt());
-            pstmt.setString(4, product.getCompany());
-            pstmt.setString(5, product.getDistributor());
-            pstmt.setString(6, product.getBatch());
-            pstmt.setString(7, product.getPurchaseDate().format(DATE_FORMATTER));
-            pstmt.setString(8, product.getMfgDate() != null ? product.getMfgDate().format(DATE_FORMATTER) : null);
-            pstmt.setString(9, product.getExpDate().format(DATE_FORMATTER));
-            pstmt.setDouble(10, product.getPrice());
-            pstmt.setInt(11, product.getQuantity());
-            
-            return pstmt.executeUpdate() > 0;
+        try {
+            return DatabaseManager.getInstance().write(conn -> insertProduct(conn, product));
         } catch (SQLException e) {
             e.printStackTrace();
             return false;
@@ -101,26 +168,9 @@ public class ProductDAO {
     }
 
     public OperationResult addProductDetailed(Product product) {
-        String sql = "INSERT INTO products (serial, name, salt, company, distributor, batch, purchase_date, mfg_date, exp_date, price, quantity) " +
-                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
-
-        try (Connection conn = DatabaseManager.getInstance().getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            pstmt.setInt(1, product.getSerial());
-            pstmt.setString(2, product.getName());
-            pstmt.setString(3, product.getSalt());
-            pstmt.setString(4, product.getCompany());
-            pstmt.setString(5, product.getDistributor());
-            pstmt.setString(6, product.getBatch());
-            pstmt.setString(7, product.getPurchaseDate().format(DATE_FORMATTER));
-            pstmt.setString(8, product.getMfgDate() != null ? product.getMfgDate().format(DATE_FORMATTER) : null);
-            pstmt.setString(9, product.getExpDate().format(DATE_FORMATTER));
-            pstmt.setDouble(10, product.getPrice());
-            pstmt.setInt(11, product.getQuantity());
-
-            int rows = pstmt.executeUpdate();
-            if (rows > 0) return OperationResult.ok();
+        try {
+            boolean inserted = DatabaseManager.getInstance().write(conn -> insertProduct(conn, product));
+            if (inserted) return OperationResult.ok();
             return OperationResult.error("Insert did not affect any rows.");
         } catch (SQLException e) {
             // Common SQLite errors we want to show clearly to the user
@@ -132,27 +182,360 @@ public class ProductDAO {
             return OperationResult.error(msg);
         }
     }
+
+    // Keeps the in-memory views of the catalog in step with a committed insert/update.
+    // previous is the row as it was before the write, or null for an insert.
+    private void publish(Product previous, Product product) {
+        catalogCache.put(product);
+        nameIndex.index(product);
+        expiryIndex.put(product);
+        dictionary.replace(DictionaryCache.Kind.COMPANY,
+                previous == null ? null : previous.getCompany(), product.getCompany());
+        dictionary.replace(DictionaryCache.Kind.DISTRIBUTOR,
+                previous == null ? null : previous.getDistributor(), product.getDistributor());
+    }
+
+    /**
+     * Re-reads a product whose row was rewritten by SQL (batch allocation, receiving stock)
+     * and publishes it like any other committed write.
+     */
+    void republish(int serial) {
+        Product product = loadFromDatabase(serial);
+        if (product != null) {
+            // Only quantities are rewritten this way; company and distributor stay put.
+            publish(product, product);
+        } else {
+            catalogCache.invalidate(serial);
+        }
+    }
+
+    private boolean insertProduct(Connection conn, Product product) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(INSERT_PRODUCT_SQL)) {
+            bindInsert(pstmt, product);
+            boolean inserted = pstmt.executeUpdate() > 0;
+            if (inserted) {
+                CommitQueue.afterCommit(() -> publish(null, product));
+            }
+            return inserted;
+        }
+    }
+
+    private static void bindInsert(PreparedStatement pstmt, Product product) throws SQLException {
+        pstmt.setInt(1, product.getSerial());
+        pstmt.setString(2, product.getName());
+        pstmt.setString(3, product.getSalt());
+        pstmt.setString(4, product.getCompany());
+        pstmt.setString(5, product.getDistributor());
+        pstmt.setString(6, product.getBatch());
+        pstmt.setString(7, product.getPurchaseDate().format(DATE_FORMATTER));
+        pstmt.setString(8, product.getMfgDate() != null ? product.getMfgDate().format(DATE_FORMATTER) : null);
+        pstmt.setString(9, product.getExpDate().format(DATE_FORMATTER));
+        pstmt.setDouble(10, product.getPrice());
+        pstmt.setInt(11, product.getQuantity());
+    }
+
+    private static void bindUpdate(PreparedStatement pstmt, Product product) throws SQLException {
+        pstmt.setString(1, product.getName());
+        pstmt.setString(2, product.getSalt());
+        pstmt.setString(3, product.getCompany());
+        pstmt.setString(4, product.getDistributor());
+        pstmt.setString(5, product.getBatch());
+        pstmt.setString(6, product.getPurchaseDate().format(DATE_FORMATTER));
+        pstmt.setString(7, product.getMfgDate() != null ? product.getMfgDate().format(DATE_FORMATTER) : null);
+        pstmt.setString(8, product.getExpDate().format(DATE_FORMATTER));
+        pstmt.setDouble(9, product.getPrice());
+        pstmt.setInt(10, product.getQuantity());
+        pstmt.setInt(11, product.getSerial());
+    }
+
+    /**
+     * Inserts all rows in one transaction using JDBC batches. Rows whose name and batch
+     * match an existing product, or an earlier row of the same list, are reported as
+     * {@code DUPLICATE} and skipped (same rule as {@link #findDuplicateProducts}).
+     * Rows without a serial get one from a single bulk reservation. A row with a serial
+     * names an existing product: it is {@code DUPLICATE} here and updates that product in
+     * {@link #upsertProducts}. Unknown serials, and a serial given twice in one list, are
+     * {@code FAILED}; new products always get their serial from {@link SerialAllocator}.
+     *
+     * @return one result per input row, in input order
+     */
+    public List<BulkRowResult> addProducts(List<Product> products) {
+        return writeBulk(products, false, false);
+    }
+
+    /**
+     * Like {@link #addProducts}, but a row matching an existing product by name and batch
+     * updates that product instead. With {@code addToQuantity} the row's quantity is added
+     * to the stock on hand (invoice intake) rather than replacing it.
+     */
+    public List<BulkRowResult> upsertProducts(List<Product> products, boolean addToQuantity) {
+        return writeBulk(products, true, addToQuantity);
+    }
+
+    /**
+     * {@link #upsertProducts} (or {@link #addProducts} when {@code upsert} is false) that also
+     * stores a checkpoint under {@code checkpointKey} in settings, in the same transaction.
+     * {@code checkpointValue} is given this batch's results, so the checkpoint can include
+     * them; a resumable job can then tell exactly which rows were committed.
+     *
+     * @throws SQLException if the transaction failed; nothing was written, including the checkpoint
+     */
+    public List<BulkRowResult> writeProductsWithCheckpoint(List<Product> products, boolean upsert, boolean addToQuantity,
+                                                           String checkpointKey,
+                                                           Function<List<BulkRowResult>, String> checkpointValue) throws SQLException {
+        return writeBulkOrThrow(products, upsert, addToQuantity, checkpointKey, checkpointValue);
+    }
+
+    private List<BulkRowResult> writeBulk(List<Product> products, boolean upsert, boolean addToQuantity) {
+        try {
+            return writeBulkOrThrow(products, upsert, addToQuantity, null, null);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            List<BulkRowResult> failed = new ArrayList<>();
+            for (int i = 0; i < products.size(); i++) {
+                failed.add(new BulkRowResult(BulkRowResult.Status.FAILED, 0, e.getMessage()));
+            }
+            return failed;
+        }
+    }
+
+    private List<BulkRowResult> writeBulkOrThrow(List<Product> products, boolean upsert, boolean addToQuantity,
+                                                 String checkpointKey,
+                                                 Function<List<BulkRowResult>, String> checkpointValue) throws SQLException {
+        if (products.isEmpty() && checkpointKey == null) return new ArrayList<>();
+
+        int needSerials = 0;
+        for (Product p : products) {
+            if (p != null && p.getSerial() <= 0) needSerials++;
+        }
+        int firstSerial = needSerials > 0 ? SerialAllocator.getInstance().nextRange(needSerials) : 0;
+        return DatabaseManager.getInstance().write(conn -> {
+            List<BulkRowResult> results = writeBulk(conn, products, upsert, addToQuantity, firstSerial);
+            if (checkpointKey != null) SettingsDAO.putSetting(conn, checkpointKey, checkpointValue.apply(results));
+            return results;
+        });
+    }
+
+    private List<BulkRowResult> writeBulk(Connection conn, List<Product> products, boolean upsert,
+                                          boolean addToQuantity, int firstSerial) throws SQLException {
+        BulkRowResult.Status[] statuses = new BulkRowResult.Status[products.size()];
+        int[] serials = new int[products.size()];
+        String[] errors = new String[products.size()];
+
+        // Resolve every row to its final target row in memory first, so the database sees
+        // one INSERT or UPDATE per product no matter how often it repeats in the list.
+        Map<String, Product> byKey = findByNameAndBatch(conn, products);
+        Map<Integer, Product> bySerial = findBySerial(conn, products);
+        Set<Integer> givenSerials = new HashSet<>();
+        Map<Integer, Product> inserts = new LinkedHashMap<>();
+        Map<Integer, Product> updates = new LinkedHashMap<>();
+        Map<Integer, Product> previous = new HashMap<>();
+        int nextSerial = firstSerial;
+
+        for (int i = 0; i < products.size(); i++) {
+            Product p = products.get(i);
+            String problem = validateForInsert(p);
+            if (problem != null) {
+                statuses[i] = BulkRowResult.Status.FAILED;
+                errors[i] = problem;
+                continue;
+            }
+
+            String key = duplicateKey(p.getName(), p.getBatch());
+            Product target;
+            if (p.getSerial() > 0) {
+                target = bySerial.get(p.getSerial());
+                if (target == null || !givenSerials.add(p.getSerial())) {
+                    statuses[i] = BulkRowResult.Status.FAILED;
+                    errors[i] = target == null
+                            ? "Serial " + p.getSerial() + " does not exist; leave it empty to add a new product."
+                            : "Serial " + p.getSerial() + " is given more than once.";
+                    continue;
+                }
+            } else {
+                target = key == null ? null : byKey.get(key);
+            }
+            // Earlier rows of this list may have updated the target already
+            if (target != null) target = updates.getOrDefault(target.getSerial(), target);
+
+            if (target == null) {
+                Product row = new Product(p);
+                row.setSerial(nextSerial++);
+                inserts.put(row.getSerial(), row);
+                if (key != null) byKey.put(key, row);
+                statuses[i] = BulkRowResult.Status.INSERTED;
+                serials[i] = row.getSerial();
+            } else if (!upsert) {
+                statuses[i] = BulkRowResult.Status.DUPLICATE;
+                serials[i] = target.getSerial();
+            } else {
+                Product row = new Product(p);
+                row.setSerial(target.getSerial());
+                row.setQuantity(addToQuantity ? target.getQuantity() + p.getQuantity() : p.getQuantity());
+                if (key != null) byKey.put(key, row);
+                if (inserts.containsKey(row.getSerial())) {
+                    inserts.put(row.getSerial(), row);
+                } else {
+                    updates.put(row.getSerial(), row);
+                    previous.putIfAbsent(row.getSerial(), target);
+                }
+                statuses[i] = BulkRowResult.Status.UPDATED;
+                serials[i] = row.getSerial();
+            }
+        }
+
+        Map<Integer, String> failed = new HashMap<>();
+        failed.putAll(executeBatch(conn, INSERT_PRODUCT_SQL, inserts.values(), ProductDAO::bindInsert));
+        failed.putAll(executeBatch(conn, UPDATE_PRODUCT_SQL, updates.values(), ProductDAO::bindUpdate));
+
+        List<BulkRowResult> results = new ArrayList<>(products.size());
+        for (int i = 0; i < products.size(); i++) {
+            String error = statuses[i] == BulkRowResult.Status.FAILED ? errors[i] : failed.get(serials[i]);
+            if (error != null && statuses[i] != BulkRowResult.Status.DUPLICATE) {
+                results.add(new BulkRowResult(BulkRowResult.Status.FAILED, serials[i], error));
+            } else {
+                results.add(new BulkRowResult(statuses[i], serials[i], null));
+            }
+        }
+
+        List<Product> written = new ArrayList<>();
+        for (Product row : inserts.values()) {
+            if (!failed.containsKey(row.getSerial())) written.add(row);
+        }
+        for (Product row : updates.values()) {
+            if (!failed.containsKey(row.getSerial())) written.add(row);
+        }
+        CommitQueue.afterCommit(() -> written.forEach(row -> publish(previous.get(row.getSerial()), row)));
+        return results;
+    }
+
+    /**
+     * Runs {@code rows} as one JDBC batch. If the batch fails, it is undone and the rows are
+     * replayed one by one, each in its own savepoint, so only the bad rows are lost.
+     *
+     * @return error message per serial that could not be written
+     */
+    private static Map<Integer, String> executeBatch(Connection conn, String sql, Collection<Product> rows,
+                                                     RowBinder binder) throws SQLException {
+        Map<Integer, String> failed = new HashMap<>();
+        if (rows.isEmpty()) return failed;
+
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            Savepoint batchStart = conn.setSavepoint();
+            try {
+                for (Product row : rows) {
+                    binder.bind(pstmt, row);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+                conn.releaseSavepoint(batchStart);
+                return failed;
+            } catch (SQLException e) {
+                pstmt.clearBatch();
+                conn.rollback(batchStart);
+                conn.releaseSavepoint(batchStart);
+            }
+
+            for (Product row : rows) {
+                Savepoint rowStart = conn.setSavepoint();
+                try {
+                    binder.bind(pstmt, row);
+                    if (pstmt.executeUpdate() == 0) failed.put(row.getSerial(), "No product with this serial.");
+                    conn.releaseSavepoint(rowStart);
+                } catch (SQLException e) {
+                    conn.rollback(rowStart);
+                    conn.releaseSavepoint(rowStart);
+                    failed.put(row.getSerial(), e.getMessage());
+                }
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Existing products keyed by {@link #duplicateKey}, looked up for all distinct names in
+     * {@code products} with a few IN queries instead of one query per row.
+     */
+    private Map<String, Product> findByNameAndBatch(Connection conn, List<Product> products) throws SQLException {
+        List<String> names = new ArrayList<>(new LinkedHashSet<>(products.stream()
+                .filter(p -> p != null && p.getName() != null && p.getBatch() != null)
+                .map(Product::getName)
+                .toList()));
+
+        Map<String, Product> byKey = new HashMap<>();
+        for (int from = 0; from < names.size(); from += IN_CLAUSE_CHUNK) {
+            List<String> chunk = names.subList(from, Math.min(names.size(), from + IN_CLAUSE_CHUNK));
+            String sql = "SELECT * FROM products WHERE name IN (" +
+                    String.join(", ", Collections.nCopies(chunk.size(), "?")) + ") ORDER BY serial";
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    pstmt.setString(i + 1, chunk.get(i));
+                }
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        Product existing = mapResultSetToProduct(rs);
+                        String key = duplicateKey(existing.getName(), existing.getBatch());
+                        if (key != null) byKey.putIfAbsent(key, existing);
+                    }
+                }
+            }
+        }
+        return byKey;
+    }
+
+    private Map<Integer, Product> findBySerial(Connection conn, List<Product> products) throws SQLException {
+        List<Integer> serials = new ArrayList<>(new LinkedHashSet<>(products.stream()
+                .filter(p -> p != null && p.getSerial() > 0)
+                .map(Product::getSerial)
+                .toList()));
+
+        Map<Integer, Product> bySerial = new HashMap<>();
+        for (int from = 0; from < serials.size(); from += IN_CLAUSE_CHUNK) {
+            List<Integer> chunk = serials.subList(from, Math.min(serials.size(), from + IN_CLAUSE_CHUNK));
+            String sql = "SELECT * FROM products WHERE serial IN (" +
+                    String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")";
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    pstmt.setInt(i + 1, chunk.get(i));
+                }
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        Product existing = mapResultSetToProduct(rs);
+                        bySerial.put(existing.getSerial(), existing);
+                    }
+                }
+            }
+        }
+        return bySerial;
+    }
+
+    // Null when the row can never be a duplicate: "batch = ?" does not match NULL in SQL.
+    private static String duplicateKey(String name, String batch) {
+        if (name == null || batch == null) return null;
+        return name + '\u0000' + batch;
+    }
+
+    private static String validateForInsert(Product p) {
+        if (p == null) return "Row is empty.";
+        if (p.getName() == null || p.getName().isBlank()) return "Name is required.";
+        if (p.getPurchaseDate() == null) return "Purchase date is required.";
+        if (p.getExpDate() == null) return "Expiry date is required.";
+        return null;
+    }
     
     public boolean updateProduct(Product product) {
-        String sql = "UPDATE products SET name = ?, salt = ?, company = ?, distributor = ?, " +
-                     "batch = ?, purchase_date = ?, mfg_date = ?, exp_date = ?, price = ?, quantity = ? WHERE serial = ?";
-        
-        try (Connection conn = DatabaseManager.getInstance().getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            
-            pstmt.setString(1, product.getName());
-            pstmt.setString(2, product.getSalt());
-            pstmt.setString(3, product.getCompany());
-            pstmt.setString(4, product.getDistributor());
-            pstmt.setString(5, product.getBatch());
-            pstmt.setString(6, product.getPurchaseDate().format(DATE_FORMATTER));
-            pstmt.setString(7, product.getMfgDate() != null ? product.getMfgDate().format(DATE_FORMATTER) : null);
-            pstmt.setString(8, product.getExpDate().format(DATE_FORMATTER));
-            pstmt.setDouble(9, product.getPrice());
-            pstmt.setInt(10, product.getQuantity());
-            pstmt.setInt(11, product.getSerial());
-            
-            return pstmt.executeUpdate() > 0;
+        try {
+            return DatabaseManager.getInstance().write(conn -> {
+                Product previous = loadFromDatabase(conn, product.getSerial());
+                try (PreparedStatement pstmt = conn.prepareStatement(UPDATE_PRODUCT_SQL)) {
+                    bindUpdate(pstmt, product);
+                    boolean updated = pstmt.executeUpdate() > 0;
+                    if (updated) {
+                        CommitQueue.afterCommit(() -> publish(previous, product));
+                    }
+                    return updated;
+                }
+            });
         } catch (SQLException e) {
             e.printStackTrace();
             return false;
@@ -160,85 +543,340 @@ public class ProductDAO {
     }
     
     public Product getProductBySerial(int serial) {
-        String sql = "SELECT * FROM products WHERE serial = ?";
-        
-        try (Connection conn = DatabaseManager.getInstance().getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            
-            pstmt.setInt(1, serial);
-            ResultSet rs = pstmt.executeQuery();
-            
-            if (rs.next()) {
-                return mapResultSetToProduct(rs);
-            }
+        Product cached = catalogCache.get(serial);
+        if (cached != null) return cached;
+
+        Product product = loadFromDatabase(serial);
+        if (product != null) catalogCache.put(product);
+        return product;
+    }
+
+    /**
+     * Reads the product row itself, bypassing the cache. For forms that write the whole
+     * row back, so a cached quantity can never overwrite sales made since.
+     */
+    public Product getProductFromDatabase(int serial) {
+        return loadFromDatabase(serial);
+    }
+
+    private Product loadFromDatabase(int serial) {
+        try (Connection conn = DatabaseManager.getInstance().getReadConnection()) {
+            return loadFromDatabase(conn, serial);
         } catch (SQLException e) {
             e.printStackTrace();
         }
         return null;
     }
+
+    private Product loadFromDatabase(Connection conn, int serial) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT * FROM products WHERE serial = ?")) {
+            pstmt.setInt(1, serial);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? mapResultSetToProduct(rs) : null;
+            }
+        }
+    }
     
     public List<Product> getAllProducts() {
         List<Product> products = new ArrayList<>();
+        forEachProduct(products::add);
+        return products;
+    }
+
+    /**
+     * Visits every product in serial order without materializing the catalog.
+     * Rows are pulled from the cursor {@value #FETCH_SIZE} at a time.
+     */
+    public void forEachProduct(Consumer<Product> visitor) {
         String sql = "SELECT * FROM products ORDER BY serial";
-        
-        try (Connection conn = DatabaseManager.getInstance().getConnection();
+
+        try (Connection conn = DatabaseManager.getInstance().getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setFetchSize(FETCH_SIZE);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    visitor.accept(mapResultSetToProduct(rs));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Cursor-backed stream over all products in serial order. The stream holds a read
+     * connection until it is closed, so always use it in try-with-resources.
+     */
+    public Stream<Product> streamProducts() {
+        String sql = "SELECT * FROM products ORDER BY serial";
+        Connection conn = null;
+        try {
+            conn = DatabaseManager.getInstance().getReadConnection();
+            PreparedStatement pstmt = conn.prepareStatement(sql);
+            pstmt.setFetchSize(FETCH_SIZE);
+            ResultSet rs = pstmt.executeQuery();
+
+            Spliterator<Product> cursor = new Spliterators.AbstractSpliterator<>(
+                    Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+                @Override
+                public boolean tryAdvance(Consumer<? super Product> action) {
+                    try {
+                        if (!rs.next()) return false;
+                        action.accept(mapResultSetToProduct(rs));
+                        return true;
+                    } catch (SQLException e) {
+                        throw new IllegalStateException("Failed to read product row: " + e.getMessage(), e);
+                    }
+                }
+            };
+
+            // Returning the pooled connection also closes the statement and cursor.
+            Connection lease = conn;
+            return StreamSupport.stream(cursor, false).onClose(() -> {
+                try {
+                    lease.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            });
+        } catch (SQLException e) {
+            e.printStackTrace();
+            if (conn != null) {
+                try {
+                    conn.close();
+                } catch (SQLException ignored) {
+                    // Already failing.
+                }
+            }
+            return Stream.empty();
+        }
+    }
+
+    /**
+     * Feeds the stock valuation, one row per product in serial order, to {@code visitor}
+     * straight from the cursor. Columns: serial, name, salt, company, distributor, batch,
+     * exp_date, quantity, price, stock_value (quantity x price, rounded to 2 places).
+     *
+     * @throws SQLException if reading fails; rows already visited stay visited
+     */
+    public void exportStock(RowVisitor visitor) throws SQLException {
+        String sql = "SELECT serial, name, salt, company, distributor, batch, exp_date, quantity, price, " +
+                     "ROUND(quantity * price, 2) AS stock_value FROM products ORDER BY serial";
+
+        try (Connection conn = DatabaseManager.getInstance().getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setFetchSize(FETCH_SIZE);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                visitor.start(rs.getMetaData());
+                while (rs.next() && visitor.visit(rs)) {
+                    // visitor reads the row
+                }
+            }
+        }
+    }
+
+    /**
+     * Keyset page: up to {@code limit} products with serial greater than {@code afterSerial}.
+     * Pass the last serial of the previous page to continue.
+     */
+    public List<Product> getProductsAfter(int afterSerial, int limit) {
+        List<Product> products = new ArrayList<>();
+        String sql = "SELECT * FROM products WHERE serial > ? ORDER BY serial LIMIT ?";
+
+        try (Connection conn = DatabaseManager.getInstance().getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, afterSerial);
+            pstmt.setInt(2, Math.max(1, limit));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    products.add(mapResultSetToProduct(rs));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return products;
+    }
+
+    /**
+     * Current change version of the catalog. Read it before a full load, then pass it to
+     * {@link #getProductsChangedSince} to pick up everything committed afterwards.
+     */
+    public long getChangeVersion() {
+        String sql = "SELECT COALESCE(MAX(version), 0) FROM product_changes";
+        try (Connection conn = DatabaseManager.getInstance().getReadConnection();
              Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery(sql)) {
-            
-            while (rs.next()) {
-                products.add(mapResultSetToProduct(rs));
+            if (rs.next()) return rs.getLong(1);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return 0;
+    }
+
+    /**
+     * Products inserted, updated or deleted after {@code version}. Cost depends on the
+     * number of changes, not on the catalog size. On error the returned set is empty and
+     * keeps {@code version}.
+     */
+    public ChangeSet getProductsChangedSince(long version) {
+        String sql = "SELECT c.serial AS changed_serial, c.version AS change_version, p.* " +
+                "FROM product_changes c LEFT JOIN products p ON p.serial = c.serial " +
+                "WHERE c.version > ? ORDER BY c.version";
+        List<Product> changed = new ArrayList<>();
+        List<Integer> removed = new ArrayList<>();
+        long latest = version;
+
+        try (Connection conn = DatabaseManager.getInstance().getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setLong(1, version);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    latest = Math.max(latest, rs.getLong("change_version"));
+                    rs.getInt("serial");
+                    if (rs.wasNull()) {
+                        removed.add(rs.getInt("changed_serial"));
+                    } else {
+                        changed.add(mapResultSetToProduct(rs));
+                    }
+                }
             }
         } catch (SQLException e) {
             e.printStackTrace();
+            return new ChangeSet(version, new ArrayList<>(), new ArrayList<>());
         }
-        return products;
+        return new ChangeSet(latest, changed, removed);
     }
 
     public boolean updateQuantity(int serial, int newQuantity) {
         String sql = "UPDATE products SET quantity = ? WHERE serial = ?";
-        try (Connection conn = DatabaseManager.getInstance().getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, newQuantity);
-            pstmt.setInt(2, serial);
-            return pstmt.executeUpdate() > 0;
+        try {
+            return DatabaseManager.getInstance().write(conn -> {
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    pstmt.setInt(1, newQuantity);
+                    pstmt.setInt(2, serial);
+                    boolean updated = pstmt.executeUpdate() > 0;
+                    if (updated) {
+                        CommitQueue.afterCommit(() -> catalogCache.updateQuantity(serial, newQuantity));
+                    }
+                    return updated;
+                }
+            });
         } catch (SQLException e) {
             e.printStackTrace();
             return false;
         }
     }
 
+    /**
+     * Companies used by at least one product, served from {@link DictionaryCache}.
+     */
     public List<String> getDistinctCompanies() {
-        return getDistinctNonEmptyValues("company");
+        return dictionary.getNames(DictionaryCache.Kind.COMPANY);
     }
 
     public List<String> getDistinctDistributors() {
-        return getDistinctNonEmptyValues("distributor");
+        return dictionary.getNames(DictionaryCache.Kind.DISTRIBUTOR);
     }
 
-    private List<String> getDistinctNonEmptyValues(String column) {
-        // Column name is controlled by code (not user input).
-        String sql = "SELECT DISTINCT " + column + " AS v FROM products WHERE " + column + " IS NOT NULL AND TRIM(" + column + ") <> '' ORDER BY v";
-        Set<String> values = new LinkedHashSet<>();
-        try (Connection conn = DatabaseManager.getInstance().getConnection();
+    /**
+     * Ranked prefix search over name, salt, company, distributor and batch.
+     * Every word typed must match the start of a word in one of those columns;
+     * name matches rank above salt, then company/distributor/batch.
+     *
+     * @return matching serials, best first; empty for a blank query; null if the
+     *         full-text index is unavailable (caller should fall back to a scan)
+     */
+    public List<Integer> searchSerials(String text, int limit) {
+        List<Integer> serials = new ArrayList<>();
+        String match = toFtsPrefixQuery(text);
+        if (match.isEmpty()) return serials;
+        if (!isFullTextAvailable()) return null;
+
+        String sql = "SELECT rowid FROM products_fts WHERE products_fts MATCH ? " +
+                "ORDER BY bm25(products_fts, 10.0, 5.0, 2.0, 2.0, 1.0) LIMIT ?";
+        try (Connection conn = DatabaseManager.getInstance().getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, match);
+            pstmt.setInt(2, Math.max(1, limit));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    serials.add(rs.getInt(1));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return null;
+        }
+        return serials;
+    }
+
+    // Migration 5 is skipped on SQLite builds without FTS5; look once, the schema won't gain it later.
+    private static boolean isFullTextAvailable() {
+        Boolean available = ftsAvailable;
+        if (available != null) return available;
+        String sql = "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'products_fts'";
+        try (Connection conn = DatabaseManager.getInstance().getReadConnection();
              Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery(sql)) {
-            while (rs.next()) {
-                String v = rs.getString("v");
-                if (v != null && !v.trim().isEmpty()) {
-                    values.add(v.trim());
+            available = rs.next();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        }
+        ftsAvailable = available;
+        return available;
+    }
+
+    public List<Product> searchProducts(String text, int limit) {
+        List<Integer> serials = searchSerials(text, limit);
+        List<Product> products = new ArrayList<>();
+        if (serials == null) return products;
+        for (int serial : serials) {
+            Product p = getProductBySerial(serial);
+            if (p != null) products.add(p);
+        }
+        return products;
+    }
+
+    // "para 50" -> "para"* "50"*  (each term quoted so FTS operators in user input are inert)
+    private static String toFtsPrefixQuery(String text) {
+        if (text == null) return "";
+        StringBuilder sb = new StringBuilder();
+        for (String term : text.trim().split("[^\\p{L}\\p{N}]+")) {
+            if (term.isEmpty()) continue;
+            if (sb.length() > 0) sb.append(' ');
+            sb.append('"').append(term).append("\"*");
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * Products with exactly this name, whatever their batch.
+     */
+    public List<Product> findProductsByName(String name) {
+        List<Product> products = new ArrayList<>();
+        String sql = "SELECT * FROM products WHERE name = ? ORDER BY serial";
+
+        try (Connection conn = DatabaseManager.getInstance().getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, name);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    products.add(mapResultSetToProduct(rs));
                 }
             }
         } catch (SQLException e) {
             e.printStackTrace();
         }
-        return new ArrayList<>(values);
+        return products;
     }
-    
+
     public List<Product> findDuplicateProducts(String name, String batch) {
         List<Product> products = new ArrayList<>();
         String sql = "SELECT * FROM products WHERE name = ? AND batch = ?";
         
-        try (Connection conn = DatabaseManager.getInstance().getConnection();
+        try (Connection conn = DatabaseManager.getInstance().getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             
             pstmt.setString(1, name);
@@ -264,8 +902,8 @@ public class ProductDAO {
             // Backward compatibility if column does not exist
             product.setSalt("");
         }
-        product.setCompany(rs.getString("company"));
-        product.setDistributor(rs.getString("distributor"));
+        product.setCompany(dictionary.intern(rs.getString("company")));
+        product.setDistributor(dictionary.intern(rs.getString("distributor")));
         product.setBatch(rs.getString("batch"));
         product.setPurchaseDate(LocalDate.parse(rs.getString("purchase_date"), DATE_FORMATTER));
         try {
@@ -0,0 +1,357 @@
+package com.pharmacy.dao;
+
+import com.pharmacy.model.Product;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Typo-tolerant lookup over product names and salts.
+ *
+ * Each name/salt is split into padded character trigrams ("paracetamol" -> " pa", "par",
+ * "ara", ...). A query is scored against candidate entries using the Dice coefficient,
+ * so "paracetmol" still finds "Paracetamol". Kept current by
+ * {@link ProductDAO} after product writes commit; quantity changes do not touch it.
+ */
+public final class ProductNameIndex {
+    private static final ProductNameIndex INSTANCE = new ProductNameIndex();
+    private static final double MIN_SCORE = 0.5;
+
+    // Entry id = serial << 1 | field, so name and salt of one product score independently.
+    private static final int FIELD_NAME = 0;
+    private static final int FIELD_SALT = 1;
+
+    public static final class Match {
+        private final int serial;
+        private final double score;
+        private final boolean saltMatch;
+
+        private Match(int serial, double score, boolean saltMatch) {
+            this.serial = serial;
+            this.score = score;
+            this.saltMatch = saltMatch;
+        }
+
+        public int getSerial() {
+            return serial;
+        }
+
+        /**
+         * @return similarity in (0, 1]; 1 means identical trigram sets
+         */
+        public double getScore() {
+            return score;
+        }
+
+        public boolean isSaltMatch() {
+            return saltMatch;
+        }
+    }
+
+    private static final IntList EMPTY_LIST = new IntList();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private Map<Integer, IntList> postings = new HashMap<>();
+    private Map<Integer, int[]> entryGrams = new HashMap<>();
+    // Non-null while rebuild() scans: products written meanwhile (null value = removed)
+    private Map<Integer, Product> writtenDuringRebuild;
+
+    private ProductNameIndex() {
+    }
+
+    public static ProductNameIndex getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Rebuilds the index from the database catalog. The scan fills new maps without the
+     * lock, so searches keep using the current index until the swap; products written
+     * during the scan are replayed onto the new maps first.
+     */
+    public synchronized void rebuild() {
+        lock.writeLock().lock();
+        try {
+            writtenDuringRebuild = new HashMap<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Map<Integer, IntList> freshPostings = new HashMap<>();
+        Map<Integer, int[]> freshGrams = new HashMap<>();
+        try {
+            new ProductDAO().forEachProduct(p -> index(freshPostings, freshGrams, p));
+        } finally {
+            lock.writeLock().lock();
+            try {
+                for (Map.Entry<Integer, Product> e : writtenDuringRebuild.entrySet()) {
+                    if (e.getValue() != null) index(freshPostings, freshGrams, e.getValue());
+                    else remove(freshPostings, freshGrams, e.getKey());
+                }
+                writtenDuringRebuild = null;
+                postings = freshPostings;
+                entryGrams = freshGrams;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    public void index(Product product) {
+        if (product == null) return;
+        lock.writeLock().lock();
+        try {
+            index(postings, entryGrams, product);
+            if (writtenDuringRebuild != null) writtenDuringRebuild.put(product.getSerial(), product);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int serial) {
+        lock.writeLock().lock();
+        try {
+            remove(postings, entryGrams, serial);
+            if (writtenDuringRebuild != null) writtenDuringRebuild.put(serial, null);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return best matches first, at most {@code limit}, one per product
+     */
+    public List<Match> search(String query, int limit) {
+        int[] queryGrams = trigrams(query);
+        if (queryGrams.length == 0) return new ArrayList<>();
+
+        Map<Integer, Match> best = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            // Prefix filtering: an entry reaching MIN_SCORE must share at least minOverlap
+            // trigrams with the query, so it has to appear in one of the (n - minOverlap + 1)
+            // rarest query trigrams. Very common trigrams ("in ", "ol ") never drive the scan.
+            IntList[] lists = new IntList[queryGrams.length];
+            for (int i = 0; i < queryGrams.length; i++) {
+                IntList list = postings.get(queryGrams[i]);
+                lists[i] = list == null ? EMPTY_LIST : list;
+            }
+            Arrays.sort(lists, (x, y) -> Integer.compare(x.size, y.size));
+            int minOverlap = (int) Math.ceil(queryGrams.length * MIN_SCORE / (2 - MIN_SCORE));
+            int prefix = queryGrams.length - Math.max(1, minOverlap) + 1;
+
+            IntIntCounter candidates = new IntIntCounter();
+            for (int i = 0; i < prefix; i++) {
+                IntList list = lists[i];
+                for (int j = 0; j < list.size; j++) {
+                    candidates.increment(list.values[j]);
+                }
+            }
+
+            candidates.forEach((entry, ignored) -> {
+                int[] grams = entryGrams.get(entry);
+                int common = countCommon(queryGrams, grams);
+                double score = 2.0 * common / (queryGrams.length + grams.length);
+                if (score < MIN_SCORE) return;
+                int serial = entry >>> 1;
+                Match current = best.get(serial);
+                if (current == null || score > current.score) {
+                    best.put(serial, new Match(serial, score, (entry & 1) == FIELD_SALT));
+                }
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<Match> matches = new ArrayList<>(best.values());
+        matches.sort((a, b) -> a.score != b.score
+                ? Double.compare(b.score, a.score)
+                : Integer.compare(a.serial, b.serial));
+        return matches.size() > limit ? new ArrayList<>(matches.subList(0, Math.max(0, limit))) : matches;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entryGrams.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static void index(Map<Integer, IntList> postings, Map<Integer, int[]> entryGrams, Product product) {
+        int serial = product.getSerial();
+        putEntry(postings, entryGrams, entryId(serial, FIELD_NAME), trigrams(product.getName()));
+        putEntry(postings, entryGrams, entryId(serial, FIELD_SALT), trigrams(product.getSalt()));
+    }
+
+    private static void remove(Map<Integer, IntList> postings, Map<Integer, int[]> entryGrams, int serial) {
+        removeEntry(postings, entryGrams, entryId(serial, FIELD_NAME));
+        removeEntry(postings, entryGrams, entryId(serial, FIELD_SALT));
+    }
+
+    private static void putEntry(Map<Integer, IntList> postings, Map<Integer, int[]> entryGrams,
+                                 int entry, int[] grams) {
+        int[] previous = entryGrams.get(entry);
+        if (previous != null && Arrays.equals(previous, grams)) return;
+        removeEntry(postings, entryGrams, entry);
+        if (grams.length == 0) return;
+
+        entryGrams.put(entry, grams);
+        for (int gram : grams) {
+            postings.computeIfAbsent(gram, g -> new IntList()).add(entry);
+        }
+    }
+
+    private static void removeEntry(Map<Integer, IntList> postings, Map<Integer, int[]> entryGrams, int entry) {
+        int[] grams = entryGrams.remove(entry);
+        if (grams == null) return;
+        for (int gram : grams) {
+            IntList list = postings.get(gram);
+            if (list == null) continue;
+            list.remove(entry);
+            if (list.size == 0) postings.remove(gram);
+        }
+    }
+
+    // Both arrays are sorted and distinct.
+    private static int countCommon(int[] a, int[] b) {
+        int i = 0, j = 0, common = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                common++;
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return common;
+    }
+
+    private static int entryId(int serial, int field) {
+        return (serial << 1) | field;
+    }
+
+    /**
+     * Distinct, sorted trigram codes of the lower-cased words in {@code text}, each word
+     * padded with one space on both sides.
+     */
+    static int[] trigrams(String text) {
+        if (text == null || text.isBlank()) return new int[0];
+        String normalized = text.toLowerCase(Locale.ROOT);
+
+        IntList grams = new IntList();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= normalized.length(); i++) {
+            char c = i < normalized.length() ? normalized.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                word.append(c);
+                continue;
+            }
+            if (word.length() > 0) {
+                String padded = " " + word + " ";
+                for (int j = 0; j + 3 <= padded.length(); j++) {
+                    grams.add(code(padded.charAt(j), padded.charAt(j + 1), padded.charAt(j + 2)));
+                }
+                word.setLength(0);
+            }
+        }
+
+        int[] sorted = Arrays.copyOf(grams.values, grams.size);
+        Arrays.sort(sorted);
+        int n = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) sorted[n++] = sorted[i];
+        }
+        return Arrays.copyOf(sorted, n);
+    }
+
+    private static int code(char a, char b, char c) {
+        return ((a & 0x3FF) << 20) | ((b & 0x3FF) << 10) | (c & 0x3FF);
+    }
+
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int v) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = v;
+        }
+
+        void remove(int v) {
+            for (int i = 0; i < size; i++) {
+                if (values[i] == v) {
+                    values[i] = values[--size];
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Scratch open-addressing int -> count map used while scoring one query.
+     */
+    private static final class IntIntCounter {
+        private static final int EMPTY = -1;
+
+        interface Visitor {
+            void visit(int key, int count);
+        }
+
+        private int[] keys = new int[256];
+        private int[] counts = new int[256];
+        private int size;
+
+        IntIntCounter() {
+            Arrays.fill(keys, EMPTY);
+        }
+
+        void increment(int key) {
+            if ((size + 1) * 2 > keys.length) grow();
+            int mask = keys.length - 1;
+            for (int i = (key * 0x9E3779B9 >>> 8) & mask; ; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    counts[i]++;
+                    return;
+                }
+                if (keys[i] == EMPTY) {
+                    keys[i] = key;
+                    counts[i] = 1;
+                    size++;
+                    return;
+                }
+            }
+        }
+
+        void forEach(Visitor visitor) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != EMPTY) visitor.visit(keys[i], counts[i]);
+            }
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            int[] oldCounts = counts;
+            keys = new int[oldKeys.length * 2];
+            counts = new int[oldKeys.length * 2];
+            Arrays.fill(keys, EMPTY);
+            int mask = keys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                int key = oldKeys[j];
+                if (key == EMPTY) continue;
+                int i = (key * 0x9E3779B9 >>> 8) & mask;
+                while (keys[i] != EMPTY) i = (i + 1) & mask;
+                keys[i] = key;
+                counts[i] = oldCounts[j];
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.pharmacy.dao;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * Reads the current row of a forward-only cursor in place. The cursor is only valid
+ * during the call.
+ */
+@FunctionalInterface
+public interface RowVisitor {
+    /**
+     * Called once with the cursor's columns before the first row, even when there are no rows.
+     */
+    default void start(ResultSetMetaData columns) throws SQLException {
+    }
+
+    /**
+     * @return false to stop reading
+     */
+    boolean visit(ResultSet row) throws SQLException;
+}
@@ -1,51 +1,79 @@
 package com.pharmacy.dao;
 
+import com.pharmacy.database.CommitQueue;
 import com.pharmacy.database.DatabaseManager;
+import com.pharmacy.model.Bill;
 import com.pharmacy.model.Sale;
 
 import java.sql.*;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 public class SaleDAO {
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE;
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+    // 7 parameters per row; stays under SQLite's default limit of 999 bound parameters.
+    private static final int INSERT_CHUNK = 140;
+    private static final int FETCH_SIZE = 1000;
+
+    /**
+     * Receives sale rows as plain values, without building a {@link Sale} per row.
+     */
+    @FunctionalInterface
+    public interface SaleRowVisitor {
+        void visit(int id, String saleDate, int productSerial, String productName, int quantity, double amount);
+    }
 
     public static class TodaySalesSummary {
         private final int salesCount;
         private final double revenue;
+        private final int lastSaleId;
+        private final int billCount;
 
         public TodaySalesSummary(int salesCount, double revenue) {
-            this.salesCount = salesCount;
-            this.revenue = revenue;
+            this(salesCount, revenue, 0);
         }
 
-        public int getSalesCount() {
-            return salesCount;
+        public TodaySalesSummary(int salesCount, double revenue, int lastSaleId) {
+            this(salesCount, revenue, lastSaleId, 0);
         }
 
-        public double getRevenue() {
-            return revenue;
+        public TodaySalesSummary(int salesCount, double revenue, int lastSaleId, int billCount) {
+            this.salesCount = salesCount;
+            this.revenue = revenue;
+            this.lastSaleId = lastSaleId;
+            this.billCount = billCount;
         }
-    }
 
-    public static class TopSellingProduct {
-        private final String productName;
-        private final int quantitySold;
+        /**
+         * Bills recorded that day. Sales recorded without a bill are not included.
+         */
+        public int getBillCount() {
+            return billCount;
+        }
 
-        public TopSellingProduct(String productName, int quantitySold) {
-            this.productName = productName;
-            this.quantitySold = quantitySold;
+        /**
+         * Highest sale id when the summary was taken; pass it to {@link SaleDAO#getSalesSince}
+         * to add later sales without counting any twice.
+         */
+        public int getLastSaleId() {
+            return lastSaleId;
         }
 
-        public String getProductName() {
-            return productName;
+        public int getSalesCount() {
+            return salesCount;
         }
 
-        public int getQuantitySold() {
-            return quantitySold;
+        public double getRevenue() {
+            return revenue;
         }
     }
 
@@ -77,25 +105,38 @@ public class SaleDAO {
         private final boolean success;
         private final String errorMessage;
         private final List<LowStockWarning> lowStockWarnings;
+        private final int billId;
 
-        private BillRecordResult(boolean success, String errorMessage, List<LowStockWarning> lowStockWarnings) {
+        private BillRecordResult(boolean success, String errorMessage, List<LowStockWarning> lowStockWarnings, int billId) {
             this.success = success;
             this.errorMessage = errorMessage;
             this.lowStockWarnings = lowStockWarnings == null ? Collections.emptyList() : lowStockWarnings;
+            this.billId = billId;
         }
 
         public static BillRecordResult ok(List<LowStockWarning> warnings) {
-            return new BillRecordResult(true, null, warnings);
+            return ok(0, warnings);
+        }
+
+        public static BillRecordResult ok(int billId, List<LowStockWarning> warnings) {
+            return new BillRecordResult(true, null, warnings, billId);
         }
 
         public static BillRecordResult error(String message) {
-            return new BillRecordResult(false, message, Collections.emptyList());
+            return new BillRecordResult(false, message, Collections.emptyList(), 0);
         }
 
         public boolean isSuccess() {
             return success;
         }
 
+        /**
+         * @return id of the recorded bill, or 0 if it was not recorded
+         */
+        public int getBillId() {
+            return billId;
+        }
+
         public String getErrorMessage() {
             return errorMessage;
         }
@@ -104,206 +145,799 @@ public class SaleDAO {
             return lowStockWarnings;
         }
     }
+
+    /**
+     * A line of a sale bill with what has already been returned of it.
+     */
+    public static class ReturnableLine {
+        private final Sale sale;
+        private final int returnedQuantity;
+        private final double refundedAmount;
+
+        public ReturnableLine(Sale sale, int returnedQuantity, double refundedAmount) {
+            this.sale = sale;
+            this.returnedQuantity = returnedQuantity;
+            this.refundedAmount = refundedAmount;
+        }
+
+        public Sale getSale() {
+            return sale;
+        }
+
+        public int getReturnedQuantity() {
+            return returnedQuantity;
+        }
+
+        public double getRefundedAmount() {
+            return refundedAmount;
+        }
+
+        public int getReturnableQuantity() {
+            return sale.getQuantity() - returnedQuantity;
+        }
+    }
     
+    /**
+     * Where a page of sales starts, in newest-first ({@code sale_date DESC, id DESC}) order.
+     * Pages after the first come from {@link SalePage#getNext()} (keyset: strictly after the
+     * last sale returned) or from {@link #startingAt} (a day plus rows of that day to skip).
+     */
+    public static final class PageRequest {
+        private final int size;
+        private final LocalDate date;
+        private final int afterId;
+        private final int skip;
+
+        private PageRequest(int size, LocalDate date, int afterId, int skip) {
+            if (size <= 0) throw new IllegalArgumentException("size must be positive");
+            this.size = size;
+            this.date = date;
+            this.afterId = afterId;
+            this.skip = skip;
+        }
+
+        public static PageRequest first(int size) {
+            return new PageRequest(size, null, 0, 0);
+        }
+
+        /**
+         * Starts at {@code day}, skipping its newest {@code skip} sales. The skip is applied
+         * within one day only, so it stays cheap however long the history is.
+         */
+        public static PageRequest startingAt(LocalDate day, int skip, int size) {
+            return new PageRequest(size, day, 0, Math.max(0, skip));
+        }
+
+        private static PageRequest after(Sale last, int size) {
+            return new PageRequest(size, last.getSaleDate(), last.getId(), 0);
+        }
+
+        public int getSize() {
+            return size;
+        }
+    }
+
+    public static final class SalePage {
+        private final List<Sale> sales;
+        private final PageRequest next;
+
+        private SalePage(List<Sale> sales, PageRequest next) {
+            this.sales = sales;
+            this.next = next;
+        }
+
+        public List<Sale> getSales() {
+            return sales;
+        }
+
+        /**
+         * @return the request for the following page, or null if this was the last one
+         */
+        public PageRequest getNext() {
+            return next;
+        }
+    }
+
     public boolean addSale(Sale sale) {
         String sql = "INSERT INTO sales (sale_date, product_serial, product_name, quantity, amount) " +
                      "VALUES (?, ?, ?, ?, ?)";
         
-        try (Connection conn = DatabaseManager.getInstance().getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            
-            pstmt.setString(1, sale.getSaleDate().format(DATE_FORMATTER));
-            pstmt.setInt(2, sale.getProductSerial());
-            pstmt.setString(3, sale.getProductName());
-            pstmt.setInt(4, sale.getQuantity());
-            pstmt.setDouble(5, sale.getAmount());
-            
-            boolean result = pstmt.executeUpdate() > 0;
-            
-            if (result) {
-                updateMonthlySales(sale.getSaleDate().getMonthValue() - 1, sale.getAmount());
-            }
-            
-            return result;
+        try {
+            return DatabaseManager.getInstance().write(conn -> {
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    pstmt.setString(1, sale.getSaleDate().format(DATE_FORMATTER));
+                    pstmt.setInt(2, sale.getProductSerial());
+                    pstmt.setString(3, sale.getProductName());
+                    pstmt.setInt(4, sale.getQuantity());
+                    pstmt.setDouble(5, sale.getAmount());
+
+                    boolean result = pstmt.executeUpdate() > 0;
+
+                    if (result) {
+                        SalesRollupDAO.apply(conn, sale.getSaleDate(), List.of(sale), 0);
+                    }
+
+                    return result;
+                }
+            });
         } catch (SQLException e) {
             e.printStackTrace();
             return false;
         }
     }
     
-    private void updateMonthlySales(int month, double amount) {
-        String sql = "UPDATE monthly_sales SET amount = amount + ? WHERE month = ?";
-        
-        try (Connection conn = DatabaseManager.getInstance().getConnection();
+    /**
+     * Sales with an id greater than {@code afterId}, oldest first. Ids only grow
+     * (AUTOINCREMENT), so the last id seen is a complete cursor.
+     */
+    public List<Sale> getSalesSince(int afterId) {
+        List<Sale> sales = new ArrayList<>();
+        String sql = "SELECT * FROM sales WHERE id > ? ORDER BY id";
+
+        try (Connection conn = DatabaseManager.getInstance().getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            
-            pstmt.setDouble(1, amount);
-            pstmt.setInt(2, month);
-            pstmt.executeUpdate();
+            pstmt.setInt(1, afterId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    sales.add(mapSale(rs));
+                }
+            }
         } catch (SQLException e) {
             e.printStackTrace();
         }
+        return sales;
     }
-    
-    public List<Sale> getAllSales() {
+
+    /**
+     * Visits sales with an id greater than {@code afterId} in id order, straight from the
+     * cursor. {@code saleDate} is the stored ISO date.
+     *
+     * @return the highest id visited, or {@code afterId} if there were none
+     */
+    public int forEachSaleSince(int afterId, SaleRowVisitor visitor) {
+        String sql = "SELECT id, sale_date, product_serial, product_name, quantity, amount " +
+                     "FROM sales WHERE id > ? ORDER BY id";
+        int lastId = afterId;
+
+        try (Connection conn = DatabaseManager.getInstance().getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, afterId);
+            pstmt.setFetchSize(FETCH_SIZE);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    lastId = rs.getInt(1);
+                    visitor.visit(lastId, rs.getString(2), rs.getInt(3), rs.getString(4), rs.getInt(5), rs.getDouble(6));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return lastId;
+    }
+
+    /**
+     * Feeds the sales dated {@code from} to {@code to} (inclusive) to {@code visitor} in date
+     * order, straight from the cursor. Columns: id, bill_id (null for loose sales),
+     * sale_date, product_serial, product_name, quantity, amount.
+     *
+     * @throws SQLException if reading fails; rows already visited stay visited
+     */
+    public void exportSales(LocalDate from, LocalDate to, RowVisitor visitor) throws SQLException {
+        String sql = "SELECT id, bill_id, sale_date, product_serial, product_name, quantity, amount " +
+                     "FROM sales WHERE sale_date BETWEEN ? AND ? ORDER BY sale_date, id";
+
+        try (Connection conn = DatabaseManager.getInstance().getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, from.format(DATE_FORMATTER));
+            pstmt.setString(2, to.format(DATE_FORMATTER));
+            pstmt.setFetchSize(FETCH_SIZE);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                visitor.start(rs.getMetaData());
+                while (rs.next() && visitor.visit(rs)) {
+                    // visitor reads the row
+                }
+            }
+        }
+    }
+
+    /**
+     * One page of the sales dated {@code from} to {@code to} (inclusive), newest first.
+     * Seeks {@code idx_sales_sale_date}; no row before the page is read.
+     */
+    public SalePage getSales(LocalDate from, LocalDate to, PageRequest page) {
+        return getSalesPage(0, from, to, page);
+    }
+
+    /**
+     * Like {@link #getSales}, for one product; seeks {@code idx_sales_serial_date}.
+     */
+    public SalePage getSalesForProduct(int productSerial, LocalDate from, LocalDate to, PageRequest page) {
+        return getSalesPage(productSerial, from, to, page);
+    }
+
+    private SalePage getSalesPage(int productSerial, LocalDate from, LocalDate to, PageRequest page) {
+        LocalDate upper = page.date != null && page.date.isBefore(to) ? page.date : to;
+        boolean keyset = page.afterId > 0 && page.date.equals(upper);
+        boolean skip = !keyset && page.skip > 0 && page.date != null && page.date.equals(upper);
+
+        StringBuilder sql = new StringBuilder("SELECT * FROM sales WHERE ");
+        if (productSerial != 0) sql.append("product_serial = ? AND ");
+        sql.append("sale_date BETWEEN ? AND ?");
+        // Spelled out rather than as a row value so the index seek starts at the cursor day
+        if (keyset) sql.append(" AND (sale_date < ? OR id < ?)");
+        sql.append(" ORDER BY sale_date DESC, id DESC LIMIT ?");
+        if (skip) sql.append(" OFFSET ?");
+
         List<Sale> sales = new ArrayList<>();
-        String sql = "SELECT * FROM sales ORDER BY sale_date DESC, id DESC";
-        
-        try (Connection conn = DatabaseManager.getInstance().getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            
-            while (rs.next()) {
-                Sale sale = new Sale();
-                sale.setId(rs.getInt("id"));
-                sale.setSaleDate(LocalDate.parse(rs.getString("sale_date"), DATE_FORMATTER));
-                sale.setProductSerial(rs.getInt("product_serial"));
-                sale.setProductName(rs.getString("product_name"));
-                sale.setQuantity(rs.getInt("quantity"));
-                sale.setAmount(rs.getDouble("amount"));
-                sales.add(sale);
+        try (Connection conn = DatabaseManager.getInstance().getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+            int i = 1;
+            if (productSerial != 0) pstmt.setInt(i++, productSerial);
+            pstmt.setString(i++, from.format(DATE_FORMATTER));
+            pstmt.setString(i++, upper.format(DATE_FORMATTER));
+            if (keyset) {
+                pstmt.setString(i++, upper.format(DATE_FORMATTER));
+                pstmt.setInt(i++, page.afterId);
+            }
+            // One extra row tells whether another page follows
+            pstmt.setInt(i++, page.size + 1);
+            if (skip) pstmt.setInt(i, page.skip);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    sales.add(mapSale(rs));
+                }
             }
         } catch (SQLException e) {
             e.printStackTrace();
         }
-        return sales;
+
+        if (sales.size() <= page.size) return new SalePage(sales, null);
+        sales.remove(page.size);
+        return new SalePage(sales, PageRequest.after(sales.get(page.size - 1), page.size));
+    }
+
+    private static Sale mapSale(ResultSet rs) throws SQLException {
+        Sale sale = new Sale();
+        sale.setId(rs.getInt("id"));
+        sale.setBillId(rs.getInt("bill_id"));
+        sale.setSaleDate(LocalDate.parse(rs.getString("sale_date"), DATE_FORMATTER));
+        sale.setProductSerial(rs.getInt("product_serial"));
+        sale.setProductName(rs.getString("product_name"));
+        sale.setQuantity(rs.getInt("quantity"));
+        sale.setAmount(rs.getDouble("amount"));
+        sale.setOriginalSaleId(rs.getInt("original_sale_id"));
+        return sale;
     }
     
-    public double[] getMonthlySales() {
-        double[] monthlySales = new double[12];
-        String sql = "SELECT month, amount FROM monthly_sales ORDER BY month";
-        
-        try (Connection conn = DatabaseManager.getInstance().getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            
-            while (rs.next()) {
-                int month = rs.getInt("month");
-                monthlySales[month] = rs.getDouble("amount");
+    /**
+     * A bill with its sale lines, or null if there is no such bill.
+     */
+    public Bill getBill(int id) {
+        try (Connection conn = DatabaseManager.getInstance().getReadConnection()) {
+            Bill bill;
+            try (PreparedStatement pstmt = conn.prepareStatement("SELECT * FROM bills WHERE id = ?")) {
+                pstmt.setInt(1, id);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (!rs.next()) return null;
+                    bill = mapBill(rs);
+                }
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement("SELECT * FROM sales WHERE bill_id = ? ORDER BY id")) {
+                pstmt.setInt(1, id);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        bill.getLines().add(mapSale(rs));
+                    }
+                }
+            }
+            return bill;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Bill headers (without lines) for sale dates from {@code from} to {@code to}
+     * inclusive, oldest first.
+     */
+    public List<Bill> getBills(LocalDate from, LocalDate to) {
+        List<Bill> bills = new ArrayList<>();
+        String sql = "SELECT * FROM bills WHERE sale_date BETWEEN ? AND ? ORDER BY id";
+
+        try (Connection conn = DatabaseManager.getInstance().getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, from.format(DATE_FORMATTER));
+            pstmt.setString(2, to.format(DATE_FORMATTER));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    bills.add(mapBill(rs));
+                }
             }
         } catch (SQLException e) {
             e.printStackTrace();
         }
-        return monthlySales;
+        return bills;
+    }
+
+    private static Bill mapBill(ResultSet rs) throws SQLException {
+        Bill bill = new Bill();
+        bill.setId(rs.getInt("id"));
+        bill.setKind(Bill.Kind.valueOf(rs.getString("kind")));
+        bill.setOriginalBillId(rs.getInt("original_bill_id"));
+        bill.setCreatedAt(LocalDateTime.parse(rs.getString("created_at"), DATE_TIME_FORMATTER));
+        bill.setSaleDate(LocalDate.parse(rs.getString("sale_date"), DATE_FORMATTER));
+        bill.setTotalAmount(rs.getDouble("total_amount"));
+        bill.setTotalQuantity(rs.getInt("total_quantity"));
+        bill.setLineCount(rs.getInt("line_count"));
+        return bill;
+    }
+
+    /**
+     * Lines of bill {@code billId} with the quantity already returned of each, in bill
+     * order. Empty if there is no such bill.
+     */
+    public List<ReturnableLine> getReturnableLines(int billId) {
+        try (Connection conn = DatabaseManager.getInstance().getReadConnection()) {
+            return loadReturnableLines(conn, billId);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
+    // The bill's lines by idx_sales_bill_id, their returns by idx_sales_original_sale_id
+    private static List<ReturnableLine> loadReturnableLines(Connection conn, int billId) throws SQLException {
+        String sql = "SELECT s.*, COALESCE(-SUM(r.quantity), 0) AS returned_quantity, " +
+                "COALESCE(-SUM(r.amount), 0) AS refunded_amount " +
+                "FROM sales s LEFT JOIN sales r ON r.original_sale_id = s.id " +
+                "WHERE s.bill_id = ? GROUP BY s.id ORDER BY s.id";
+        List<ReturnableLine> lines = new ArrayList<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, billId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    lines.add(new ReturnableLine(mapSale(rs), rs.getInt("returned_quantity"),
+                            rs.getDouble("refunded_amount")));
+                }
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Sales amount per month of the current year, January first.
+     */
+    public double[] getMonthlySales() {
+        return getMonthlySales(LocalDate.now().getYear());
+    }
+
+    public double[] getMonthlySales(int year) {
+        return new SalesRollupDAO().getMonthlyAmounts(year);
     }
 
     public BillRecordResult recordBill(LocalDate saleDate, List<Sale> salesLines) {
+        try {
+            return recordBillAsync(saleDate, salesLines).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return BillRecordResult.error("Interrupted while recording bill.");
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+            return BillRecordResult.error("Failed to record bill: " + e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Queues the bill on the writer thread. The future completes after the bill has
+     * committed (or was rejected, in which case nothing was written).
+     */
+    public CompletableFuture<BillRecordResult> recordBillAsync(LocalDate saleDate, List<Sale> salesLines) {
         if (salesLines == null || salesLines.isEmpty()) {
-            return BillRecordResult.error("Bill is empty.");
+            return CompletableFuture.completedFuture(BillRecordResult.error("Bill is empty."));
         }
+        List<Sale> lines = new ArrayList<>(salesLines);
+        return DatabaseManager.getInstance().submitWrite(conn -> writeBill(conn, saleDate, lines));
+    }
 
-        String selectQtySql = "SELECT quantity FROM products WHERE serial = ?";
-        String updateQtySql = "UPDATE products SET quantity = ? WHERE serial = ?";
-        String insertSaleSql = "INSERT INTO sales (sale_date, product_serial, product_name, quantity, amount) VALUES (?, ?, ?, ?, ?)";
-        String updateMonthlySql = "UPDATE monthly_sales SET amount = amount + ? WHERE month = ?";
+    /**
+     * Per product: take the stock from its batches, then one guarded decrement of the
+     * product row that also returns the new quantity. Sales, batch allocations and the
+     * sales rollups are then written once for the whole bill. The guard makes a stale
+     * read impossible to act on, even if another process shares the database file.
+     */
+    private BillRecordResult writeBill(Connection conn, LocalDate saleDate, List<Sale> salesLines) throws SQLException {
+        String decrementSql = "UPDATE products SET quantity = quantity - ? " +
+                "WHERE serial = ? AND quantity >= ? RETURNING quantity";
+
+        // One stock movement and one sale row per product, however often it was added
+        Map<Integer, Sale> bySerial = new LinkedHashMap<>();
+        double billTotal = 0.0;
+        int billQuantity = 0;
+        for (Sale line : salesLines) {
+            if (line.getQuantity() <= 0) {
+                throw new CommitQueue.Rollback(BillRecordResult.error("Invalid quantity for " + line.getProductName()));
+            }
+            Sale merged = bySerial.get(line.getProductSerial());
+            if (merged == null) {
+                bySerial.put(line.getProductSerial(), new Sale(saleDate, line.getProductSerial(),
+                        line.getProductName(), line.getQuantity(), line.getAmount()));
+            } else {
+                merged.setQuantity(merged.getQuantity() + line.getQuantity());
+                merged.setAmount(merged.getAmount() + line.getAmount());
+            }
+            billTotal += line.getAmount();
+            billQuantity += line.getQuantity();
+        }
 
+        List<Sale> lines = new ArrayList<>(bySerial.values());
+        List<List<StockBatchDAO.Allocation>> allocations = new ArrayList<>(lines.size());
         List<LowStockWarning> warnings = new ArrayList<>();
-        int monthIndex = saleDate.getMonthValue() - 1;
-
-        try (Connection conn = DatabaseManager.getInstance().getConnection()) {
-            conn.setAutoCommit(false);
 
-            try (PreparedStatement selectQty = conn.prepareStatement(selectQtySql);
-                 PreparedStatement updateQty = conn.prepareStatement(updateQtySql);
-                 PreparedStatement insertSale = conn.prepareStatement(insertSaleSql);
-                 PreparedStatement updateMonthly = conn.prepareStatement(updateMonthlySql)) {
+        try (PreparedStatement decrement = conn.prepareStatement(decrementSql)) {
+            for (Sale line : lines) {
+                int serial = line.getProductSerial();
 
-                for (Sale line : salesLines) {
-                    if (line.getQuantity() <= 0) {
-                        conn.rollback();
-                        return BillRecordResult.error("Invalid quantity for " + line.getProductName());
+                // Take the stock from the batches that expire first, skipping expired ones
+                List<StockBatchDAO.Allocation> taken = StockBatchDAO.allocate(conn, serial, line.getQuantity(), saleDate);
+                if (taken == null) {
+                    throw new CommitQueue.Rollback(stockError(conn, line, saleDate));
+                }
+                allocations.add(taken);
+
+                decrement.setInt(1, line.getQuantity());
+                decrement.setInt(2, serial);
+                decrement.setInt(3, line.getQuantity());
+                int newQty;
+                try (ResultSet rs = decrement.executeQuery()) {
+                    if (!rs.next()) {
+                        throw new CommitQueue.Rollback(stockError(conn, line, saleDate));
                     }
+                    newQty = rs.getInt(1);
+                }
 
-                    // Check available stock
-                    selectQty.setInt(1, line.getProductSerial());
-                    try (ResultSet rs = selectQty.executeQuery()) {
-                        if (!rs.next()) {
-                            conn.rollback();
-                            return BillRecordResult.error("Product not found (S#" + line.getProductSerial() + ")");
-                        }
-                        int currentQty = rs.getInt("quantity");
-                        if (currentQty <= 0) {
-                            conn.rollback();
-                            return BillRecordResult.error("Out of stock: " + line.getProductName() + " (S#" + line.getProductSerial() + ")");
-                        }
-                        if (currentQty < line.getQuantity()) {
-                            conn.rollback();
-                            return BillRecordResult.error("Not enough stock for " + line.getProductName()
-                                    + " (S#" + line.getProductSerial() + "). Available: " + currentQty);
-                        }
-
-                        int newQty = currentQty - line.getQuantity();
-
-                        // Reduce stock
-                        updateQty.setInt(1, newQty);
-                        updateQty.setInt(2, line.getProductSerial());
-                        updateQty.executeUpdate();
-
-                        // Insert sale
-                        insertSale.setString(1, saleDate.format(DATE_FORMATTER));
-                        insertSale.setInt(2, line.getProductSerial());
-                        insertSale.setString(3, line.getProductName());
-                        insertSale.setInt(4, line.getQuantity());
-                        insertSale.setDouble(5, line.getAmount());
-                        insertSale.executeUpdate();
-
-                        // Update monthly sales
-                        updateMonthly.setDouble(1, line.getAmount());
-                        updateMonthly.setInt(2, monthIndex);
-                        updateMonthly.executeUpdate();
-
-                        // Low stock warning (< 5 but not zero)
-                        if (newQty > 0 && newQty < 5) {
-                            warnings.add(new LowStockWarning(line.getProductSerial(), line.getProductName(), newQty));
-                        }
-                    }
+                // The product shows its first batch to expire; that only moves when one was emptied
+                boolean headChanged = taken.stream().anyMatch(StockBatchDAO.Allocation::isDrained)
+                        && StockBatchDAO.syncHead(conn, serial);
+                if (headChanged) {
+                    CommitQueue.afterCommit(() -> new ProductDAO().republish(serial));
+                } else {
+                    CommitQueue.afterCommit(() -> ProductCatalogCache.getInstance().updateQuantity(serial, newQty));
                 }
 
-                conn.commit();
-                return BillRecordResult.ok(warnings);
-            } catch (SQLException e) {
-                conn.rollback();
-                e.printStackTrace();
-                return BillRecordResult.error("Failed to record bill: " + e.getMessage());
-            } finally {
-                conn.setAutoCommit(true);
+                // Low stock warning (< 5 but not zero)
+                if (newQty > 0 && newQty < 5) {
+                    warnings.add(new LowStockWarning(serial, line.getProductName(), newQty));
+                }
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return BillRecordResult.error("Failed to record bill: " + e.getMessage());
         }
+
+        int billId = insertBillHeader(conn, Bill.Kind.SALE, 0, saleDate, billTotal, billQuantity, lines.size());
+        int[] saleIds = insertSales(conn, billId, saleDate, lines);
+        StockBatchDAO.recordAllocations(conn, saleIds, allocations);
+        SalesRollupDAO.apply(conn, saleDate, lines, 1);
+        return BillRecordResult.ok(billId, warnings);
     }
 
-    public TodaySalesSummary getTodaySalesSummary(LocalDate date) {
-        String sql = "SELECT COUNT(*) AS cnt, COALESCE(SUM(amount), 0) AS revenue FROM sales WHERE sale_date = ?";
-        try (Connection conn = DatabaseManager.getInstance().getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, date.format(DATE_FORMATTER));
+    /**
+     * Records bill journal entry {@code seq} unless it already was. The outcome, bill or
+     * rejection, is kept in {@code bill_journal} in the same transaction, so replaying an
+     * entry returns what it returned the first time. Must run inside the caller's write.
+     */
+    BillRecordResult applyJournaled(Connection conn, long seq, LocalDate saleDate, List<Sale> lines) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT bill_id, error FROM bill_journal WHERE seq = ?")) {
+            pstmt.setLong(1, seq);
             try (ResultSet rs = pstmt.executeQuery()) {
                 if (rs.next()) {
-                    return new TodaySalesSummary(rs.getInt("cnt"), rs.getDouble("revenue"));
+                    String error = rs.getString("error");
+                    return error == null ? BillRecordResult.ok(rs.getInt("bill_id"), null) : BillRecordResult.error(error);
                 }
             }
+        }
+
+        // A rejected bill undoes only its own changes; the entry is still marked as done
+        BillRecordResult result = lines.isEmpty()
+                ? BillRecordResult.error("Bill is empty.")
+                : CommitQueue.nested(conn, c -> writeBill(c, saleDate, lines));
+        recordJournalOutcome(conn, seq, result);
+        return result;
+    }
+
+    /**
+     * Marks bill journal entry {@code seq} as rejected with {@code error} without recording
+     * the bill, for an entry that cannot be applied at all. Must run inside the caller's write.
+     */
+    BillRecordResult rejectJournaled(Connection conn, long seq, String error) throws SQLException {
+        BillRecordResult result = BillRecordResult.error(error);
+        recordJournalOutcome(conn, seq, result);
+        return result;
+    }
+
+    private static void recordJournalOutcome(Connection conn, long seq, BillRecordResult result) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO bill_journal (seq, bill_id, error, applied_at) VALUES (?, ?, ?, ?)")) {
+            pstmt.setLong(1, seq);
+            if (result.isSuccess()) pstmt.setInt(2, result.getBillId());
+            else pstmt.setNull(2, Types.INTEGER);
+            pstmt.setString(3, result.isSuccess() ? null : result.getErrorMessage());
+            pstmt.setString(4, LocalDateTime.now().withNano(0).format(DATE_TIME_FORMATTER));
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * @return the highest bill journal entry applied, 0 if none, or -1 if it could not be read
+     */
+    long getAppliedJournalSequence() {
+        try (Connection conn = DatabaseManager.getInstance().getReadConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(seq), 0) FROM bill_journal")) {
+            return rs.next() ? rs.getLong(1) : 0;
         } catch (SQLException e) {
             e.printStackTrace();
+            return -1;
         }
-        return new TodaySalesSummary(0, 0);
     }
 
-    public List<TopSellingProduct> getTopSellingProducts(int limit) {
-        List<TopSellingProduct> result = new ArrayList<>();
-        String sql = "SELECT product_name, SUM(quantity) AS qty_sold FROM sales GROUP BY product_name ORDER BY qty_sold DESC LIMIT ?";
-        try (Connection conn = DatabaseManager.getInstance().getConnection();
+    /**
+     * Returns part of bill {@code billId}: {@code quantities} maps sale line ids of that bill
+     * to the units coming back. Recorded as a return bill dated {@code returnDate}.
+     */
+    public BillRecordResult recordReturn(int billId, Map<Integer, Integer> quantities, LocalDate returnDate) {
+        return await(recordReturnAsync(billId, quantities, returnDate), "return");
+    }
+
+    public CompletableFuture<BillRecordResult> recordReturnAsync(int billId, Map<Integer, Integer> quantities,
+                                                                 LocalDate returnDate) {
+        if (quantities == null || quantities.isEmpty()) {
+            return CompletableFuture.completedFuture(BillRecordResult.error("Nothing to return."));
+        }
+        if (returnDate == null) {
+            return CompletableFuture.completedFuture(BillRecordResult.error("Return date is required."));
+        }
+        Map<Integer, Integer> lines = new LinkedHashMap<>(quantities);
+        return DatabaseManager.getInstance().submitWrite(
+                conn -> writeReversal(conn, billId, Bill.Kind.RETURN, lines, returnDate));
+    }
+
+    /**
+     * Cancels whatever is left of bill {@code billId}. The void is dated like the bill, so
+     * that day's totals and bill count drop as if the sale had not happened.
+     */
+    public BillRecordResult voidBill(int billId) {
+        return await(voidBillAsync(billId), "void");
+    }
+
+    public CompletableFuture<BillRecordResult> voidBillAsync(int billId) {
+        return DatabaseManager.getInstance().submitWrite(
+                conn -> writeReversal(conn, billId, Bill.Kind.VOID, null, null));
+    }
+
+    private static BillRecordResult await(CompletableFuture<BillRecordResult> future, String what) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return BillRecordResult.error("Interrupted while recording " + what + ".");
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+            return BillRecordResult.error("Failed to record " + what + ": " + e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Writes a return or void of bill {@code billId} the way {@link #writeBill} writes a
+     * sale, with the signs flipped: each line puts its units back into the batches they
+     * were taken from, then raises the product row by the same amount. The new bill's
+     * lines are negative and point at the lines they reverse; the rollups take them as
+     * they are.
+     *
+     * @param quantities sale line id to units returned, or null to return everything left
+     */
+    private BillRecordResult writeReversal(Connection conn, int billId, Bill.Kind kind,
+                                           Map<Integer, Integer> quantities, LocalDate returnDate) throws SQLException {
+        Bill.Kind originalKind;
+        LocalDate originalDate;
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT kind, sale_date FROM bills WHERE id = ?")) {
+            pstmt.setInt(1, billId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) {
+                    throw new CommitQueue.Rollback(BillRecordResult.error("Bill #" + billId + " not found."));
+                }
+                originalKind = Bill.Kind.valueOf(rs.getString("kind"));
+                originalDate = LocalDate.parse(rs.getString("sale_date"), DATE_FORMATTER);
+            }
+        }
+        if (originalKind != Bill.Kind.SALE) {
+            throw new CommitQueue.Rollback(BillRecordResult.error(
+                    "Bill #" + billId + " is a " + originalKind.name().toLowerCase() + " and cannot be reversed."));
+        }
+        LocalDate date = kind == Bill.Kind.VOID ? originalDate : returnDate;
+        if (date.isBefore(originalDate)) {
+            throw new CommitQueue.Rollback(BillRecordResult.error("Return date is before the sale."));
+        }
+
+        List<Sale> lines = new ArrayList<>();
+        int matched = 0;
+        for (ReturnableLine line : loadReturnableLines(conn, billId)) {
+            Sale sold = line.getSale();
+            int quantity;
+            if (quantities == null) {
+                quantity = line.getReturnableQuantity();
+            } else {
+                Integer requested = quantities.get(sold.getId());
+                if (requested == null) continue;
+                matched++;
+                quantity = requested;
+                if (quantity < 0 || quantity > line.getReturnableQuantity()) {
+                    throw new CommitQueue.Rollback(BillRecordResult.error("Only " + line.getReturnableQuantity()
+                            + " of " + sold.getProductName() + " can be returned."));
+                }
+            }
+            if (quantity == 0) continue;
+
+            // The last units back refund exactly what is left, so rounding never adds up past the sale
+            double amount = quantity == line.getReturnableQuantity()
+                    ? sold.getAmount() - line.getRefundedAmount()
+                    : Math.round(sold.getAmount() * quantity / sold.getQuantity() * 100.0) / 100.0;
+            Sale reversal = new Sale(date, sold.getProductSerial(), sold.getProductName(), -quantity, -amount);
+            reversal.setOriginalSaleId(sold.getId());
+            lines.add(reversal);
+        }
+        if (quantities != null && matched < quantities.size()) {
+            throw new CommitQueue.Rollback(BillRecordResult.error("Line is not on bill #" + billId + "."));
+        }
+        if (lines.isEmpty()) {
+            throw new CommitQueue.Rollback(BillRecordResult.error(quantities == null
+                    ? "Bill #" + billId + " has already been returned in full." : "Nothing to return."));
+        }
+
+        List<List<StockBatchDAO.Allocation>> allocations = new ArrayList<>(lines.size());
+        double billTotal = 0.0;
+        int billQuantity = 0;
+        try (PreparedStatement increment = conn.prepareStatement(
+                "UPDATE products SET quantity = quantity + ? WHERE serial = ? RETURNING quantity")) {
+            for (Sale line : lines) {
+                int serial = line.getProductSerial();
+                int quantity = -line.getQuantity();
+
+                // Back into the batches the units came from; the trigger puts any rest on the product's batch
+                List<StockBatchDAO.Allocation> restored = StockBatchDAO.release(conn, line.getOriginalSaleId(), quantity);
+                List<StockBatchDAO.Allocation> recorded = new ArrayList<>(restored.size());
+                for (StockBatchDAO.Allocation a : restored) {
+                    recorded.add(new StockBatchDAO.Allocation(a.getBatchId(), -a.getQuantity()));
+                }
+                allocations.add(recorded);
+
+                increment.setInt(1, quantity);
+                increment.setInt(2, serial);
+                int newQty;
+                try (ResultSet rs = increment.executeQuery()) {
+                    if (!rs.next()) {
+                        throw new CommitQueue.Rollback(BillRecordResult.error("Product not found (S#" + serial
+                                + "). Its stock cannot be restored."));
+                    }
+                    newQty = rs.getInt(1);
+                }
+
+                // A refilled batch may now be the first to expire
+                if (StockBatchDAO.syncHead(conn, serial)) {
+                    CommitQueue.afterCommit(() -> new ProductDAO().republish(serial));
+                } else {
+                    CommitQueue.afterCommit(() -> ProductCatalogCache.getInstance().updateQuantity(serial, newQty));
+                }
+                billTotal += line.getAmount();
+                billQuantity += line.getQuantity();
+            }
+        }
+
+        int newBillId = insertBillHeader(conn, kind, billId, date, billTotal, billQuantity, lines.size());
+        int[] saleIds = insertSales(conn, newBillId, date, lines);
+        StockBatchDAO.recordAllocations(conn, saleIds, allocations);
+        SalesRollupDAO.apply(conn, date, lines, kind == Bill.Kind.VOID ? -1 : 0);
+        return BillRecordResult.ok(newBillId, Collections.emptyList());
+    }
+
+    private static int insertBillHeader(Connection conn, Bill.Kind kind, int originalBillId, LocalDate saleDate,
+                                        double total, int quantity, int lineCount) throws SQLException {
+        String sql = "INSERT INTO bills (created_at, sale_date, total_amount, total_quantity, line_count, " +
+                "kind, original_bill_id) VALUES (?, ?, ?, ?, ?, ?, ?) RETURNING id";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, LocalDateTime.now().withNano(0).format(DATE_TIME_FORMATTER));
+            pstmt.setString(2, saleDate.format(DATE_FORMATTER));
+            pstmt.setDouble(3, total);
+            pstmt.setInt(4, quantity);
+            pstmt.setInt(5, lineCount);
+            pstmt.setString(6, kind.name());
+            if (originalBillId == 0) pstmt.setNull(7, Types.INTEGER);
+            else pstmt.setInt(7, originalBillId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    /**
+     * Inserts {@code lines} with multi-row INSERTs. Ids come out consecutive: sales uses
+     * AUTOINCREMENT and this runs on the only writer, inside its transaction.
+     *
+     * @return the new sale ids, in the order of {@code lines}
+     */
+    private static int[] insertSales(Connection conn, int billId, LocalDate saleDate, List<Sale> lines) throws SQLException {
+        int[] ids = new int[lines.size()];
+        String date = saleDate.format(DATE_FORMATTER);
+        for (int from = 0; from < lines.size(); from += INSERT_CHUNK) {
+            List<Sale> chunk = lines.subList(from, Math.min(lines.size(), from + INSERT_CHUNK));
+            String sql = "INSERT INTO sales (bill_id, sale_date, product_serial, product_name, quantity, amount, " +
+                    "original_sale_id) VALUES " +
+                    String.join(", ", Collections.nCopies(chunk.size(), "(?, ?, ?, ?, ?, ?, ?)"));
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                int i = 1;
+                for (Sale line : chunk) {
+                    pstmt.setInt(i++, billId);
+                    pstmt.setString(i++, date);
+                    pstmt.setInt(i++, line.getProductSerial());
+                    pstmt.setString(i++, line.getProductName());
+                    pstmt.setInt(i++, line.getQuantity());
+                    pstmt.setDouble(i++, line.getAmount());
+                    if (line.getOriginalSaleId() == 0) pstmt.setNull(i++, Types.INTEGER);
+                    else pstmt.setInt(i++, line.getOriginalSaleId());
+                }
+                pstmt.executeUpdate();
+            }
+            int lastId;
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT last_insert_rowid()")) {
+                rs.next();
+                lastId = rs.getInt(1);
+            }
+            for (int k = 0; k < chunk.size(); k++) {
+                ids[from + k] = lastId - chunk.size() + 1 + k;
+            }
+        }
+        return ids;
+    }
+
+    // Only on the failure path, to tell the cashier why the line was refused.
+    private static BillRecordResult stockError(Connection conn, Sale line, LocalDate saleDate) throws SQLException {
+        int currentQty;
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT quantity FROM products WHERE serial = ?")) {
+            pstmt.setInt(1, line.getProductSerial());
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) {
+                    return BillRecordResult.error("Product not found (S#" + line.getProductSerial() + ")");
+                }
+                currentQty = rs.getInt("quantity");
+            }
+        }
+        if (currentQty <= 0) {
+            return BillRecordResult.error("Out of stock: " + line.getProductName() + " (S#" + line.getProductSerial() + ")");
+        }
+        int sellable = StockBatchDAO.sellableQuantity(conn, line.getProductSerial(), saleDate);
+        return BillRecordResult.error("Not enough stock for " + line.getProductName()
+                + " (S#" + line.getProductSerial() + "). Available: " + sellable
+                + (sellable < currentQty ? " (" + (currentQty - sellable) + " more expired)" : ""));
+    }
+
+    public TodaySalesSummary getTodaySalesSummary(LocalDate date) {
+        // One statement, so the totals and the last id come from the same snapshot. The totals
+        // are the day's rollup row rather than an aggregate over sales.
+        String sql = "SELECT COALESCE(d.line_count, 0) AS cnt, COALESCE(d.amount, 0) AS revenue, " +
+                "(SELECT COALESCE(MAX(id), 0) FROM sales) AS last_id, COALESCE(d.bill_count, 0) AS bills " +
+                "FROM (SELECT 1) LEFT JOIN sales_daily d ON d.day = ? AND d.product_serial = 0";
+        try (Connection conn = DatabaseManager.getInstance().getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, Math.max(1, limit));
+            pstmt.setString(1, date.format(DATE_FORMATTER));
             try (ResultSet rs = pstmt.executeQuery()) {
-                while (rs.next()) {
-                    result.add(new TopSellingProduct(rs.getString("product_name"), rs.getInt("qty_sold")));
+                if (rs.next()) {
+                    return new TodaySalesSummary(rs.getInt("cnt"), rs.getDouble("revenue"), rs.getInt("last_id"),
+                            rs.getInt("bills"));
                 }
             }
         } catch (SQLException e) {
             e.printStackTrace();
         }
-        return result;
+        return new TodaySalesSummary(0, 0);
     }
 }
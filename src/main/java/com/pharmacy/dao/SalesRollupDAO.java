@@ -0,0 +1,376 @@
+package com.pharmacy.dao;
+
+import com.pharmacy.database.DatabaseManager;
+import com.pharmacy.model.Sale;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Sales totals at day, month and year grain, per product and overall.
+ *
+ * Each period has one row per product sold plus a total row under product serial
+ * {@link #TOTAL}, so the total for any period is a single primary-key lookup. Rows are
+ * added to in the same transaction as the sale ({@link #apply}); {@link #rebuild()}
+ * recomputes everything from {@code sales}.
+ */
+public class SalesRollupDAO {
+    public static final int TOTAL = 0;
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE;
+
+    public enum Grain {
+        DAY("sales_daily", "day"),
+        MONTH("sales_monthly", "month"),
+        YEAR("sales_yearly", "year");
+
+        private final String table;
+        private final String column;
+
+        Grain(String table, String column) {
+            this.table = table;
+            this.column = column;
+        }
+
+        /**
+         * Key of the period containing {@code date}: "2025-03-01", "2025-03" or 2025.
+         */
+        Object periodOf(LocalDate date) {
+            return switch (this) {
+                case DAY -> date.format(DATE_FORMATTER);
+                case MONTH -> date.format(DATE_FORMATTER).substring(0, 7);
+                case YEAR -> date.getYear();
+            };
+        }
+
+        private String upsertSql() {
+            return "INSERT INTO " + table + " (" + column + ", product_serial, quantity, amount, line_count, bill_count) " +
+                    "VALUES (?, ?, ?, ?, ?, ?) ON CONFLICT (" + column + ", product_serial) DO UPDATE SET " +
+                    "quantity = quantity + excluded.quantity, amount = amount + excluded.amount, " +
+                    "line_count = line_count + excluded.line_count, bill_count = bill_count + excluded.bill_count";
+        }
+    }
+
+    public static class Totals {
+        private long quantity;
+        private double amount;
+        private int lineCount;
+        private int billCount;
+
+        public Totals() {
+        }
+
+        public Totals(long quantity, double amount, int lineCount, int billCount) {
+            this.quantity = quantity;
+            this.amount = amount;
+            this.lineCount = lineCount;
+            this.billCount = billCount;
+        }
+
+        public long getQuantity() {
+            return quantity;
+        }
+
+        public double getAmount() {
+            return amount;
+        }
+
+        public int getLineCount() {
+            return lineCount;
+        }
+
+        /**
+         * Bills in the period (total row), or bills containing the product (product row).
+         */
+        public int getBillCount() {
+            return billCount;
+        }
+
+        void add(long quantity, double amount, int lines, int bills) {
+            this.quantity += quantity;
+            this.amount += amount;
+            this.lineCount += lines;
+            this.billCount += bills;
+        }
+
+        void add(Totals other) {
+            add(other.quantity, other.amount, other.lineCount, other.billCount);
+        }
+    }
+
+    /**
+     * Totals over all products for the period of {@code grain} containing {@code date}.
+     */
+    public Totals getTotals(Grain grain, LocalDate date) {
+        return getProductTotals(grain, date, TOTAL);
+    }
+
+    public Totals getProductTotals(Grain grain, LocalDate date, int productSerial) {
+        String sql = "SELECT quantity, amount, line_count, bill_count FROM " + grain.table +
+                " WHERE " + grain.column + " = ? AND product_serial = ?";
+        try (Connection conn = DatabaseManager.getInstance().getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setObject(1, grain.periodOf(date));
+            pstmt.setInt(2, productSerial);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    return new Totals(rs.getLong(1), rs.getDouble(2), rs.getInt(3), rs.getInt(4));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return new Totals();
+    }
+
+    /**
+     * Day totals from {@code from} to {@code to} (inclusive) for one product, or for all
+     * products when {@code productSerial} is {@link #TOTAL}. Days without sales are absent.
+     */
+    public NavigableMap<LocalDate, Totals> getDailyTotals(LocalDate from, LocalDate to, int productSerial) {
+        NavigableMap<LocalDate, Totals> days = new TreeMap<>();
+        String sql = "SELECT day, quantity, amount, line_count, bill_count FROM sales_daily " +
+                "WHERE day BETWEEN ? AND ? AND product_serial = ?";
+        try (Connection conn = DatabaseManager.getInstance().getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, from.format(DATE_FORMATTER));
+            pstmt.setString(2, to.format(DATE_FORMATTER));
+            pstmt.setInt(3, productSerial);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    days.put(LocalDate.parse(rs.getString(1), DATE_FORMATTER),
+                            new Totals(rs.getLong(2), rs.getDouble(3), rs.getInt(4), rs.getInt(5)));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return days;
+    }
+
+    /**
+     * Sales amount per month of {@code year}, January first.
+     */
+    public double[] getMonthlyAmounts(int year) {
+        double[] amounts = new double[12];
+        String sql = "SELECT month, amount FROM sales_monthly WHERE month BETWEEN ? AND ? AND product_serial = 0";
+        try (Connection conn = DatabaseManager.getInstance().getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, String.format("%04d-01", year));
+            pstmt.setString(2, String.format("%04d-12", year));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    amounts[Integer.parseInt(rs.getString("month").substring(5, 7)) - 1] = rs.getDouble("amount");
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return amounts;
+    }
+
+    /**
+     * Totals over every sale ever recorded; one row per year is read.
+     */
+    public Totals getAllTimeTotals() {
+        Totals totals = new Totals();
+        String sql = "SELECT quantity, amount, line_count, bill_count FROM sales_yearly WHERE product_serial = 0";
+        try (Connection conn = DatabaseManager.getInstance().getReadConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                totals.add(rs.getLong(1), rs.getDouble(2), rs.getInt(3), rs.getInt(4));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return totals;
+    }
+
+    /**
+     * Adds sale lines dated {@code saleDate} to every grain, with one batch per table.
+     * Must run inside the transaction that inserted the sales.
+     *
+     * @param billCount bills the lines add: 1 for a bill, 0 for loose sales and returns,
+     *                  -1 for a void (the voided bill no longer counts)
+     */
+    static void apply(Connection conn, LocalDate saleDate, List<Sale> lines, int billCount) throws SQLException {
+        Totals total = new Totals();
+        for (Sale line : lines) {
+            total.add(line.getQuantity(), line.getAmount(), 1, 0);
+        }
+        total.billCount = billCount;
+
+        for (Grain grain : Grain.values()) {
+            Object period = grain.periodOf(saleDate);
+            try (PreparedStatement pstmt = conn.prepareStatement(grain.upsertSql())) {
+                for (Sale line : lines) {
+                    bindUpsert(pstmt, period, line.getProductSerial(),
+                            new Totals(line.getQuantity(), line.getAmount(), 1, Integer.signum(billCount)));
+                    pstmt.addBatch();
+                }
+                bindUpsert(pstmt, period, TOTAL, total);
+                pstmt.addBatch();
+                pstmt.executeBatch();
+            }
+        }
+    }
+
+    private static void bindUpsert(PreparedStatement pstmt, Object period, int serial, Totals t) throws SQLException {
+        pstmt.setObject(1, period);
+        pstmt.setInt(2, serial);
+        pstmt.setLong(3, t.quantity);
+        pstmt.setDouble(4, t.amount);
+        pstmt.setInt(5, t.lineCount);
+        pstmt.setInt(6, t.billCount);
+    }
+
+    /**
+     * Recomputes all rollups from {@code sales}. The sales table is read in id ranges on
+     * several read connections at once; only the final replace runs on the writer. Sales
+     * committed while the ranges were read are picked up inside that write.
+     *
+     * @return false if the rebuild failed; the old rollups are then left as they were
+     */
+    public boolean rebuild() {
+        int maxId;
+        try (Connection conn = DatabaseManager.getInstance().getReadConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(id), 0) FROM sales")) {
+            maxId = rs.next() ? rs.getInt(1) : 0;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        }
+
+        int parts = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        int step = Math.max(1, (maxId + parts - 1) / parts);
+        ExecutorService pool = Executors.newFixedThreadPool(parts, r -> {
+            Thread t = new Thread(r, "rollup-backfill");
+            t.setDaemon(true);
+            return t;
+        });
+        Map<String, Map<Integer, Totals>> daily = new HashMap<>();
+        try {
+            List<Future<Map<String, Map<Integer, Totals>>>> futures = new ArrayList<>();
+            for (int from = 0; from < maxId; from += step) {
+                int lo = from;
+                int hi = Math.min(maxId, from + step);
+                futures.add(pool.submit(() -> {
+                    try (Connection conn = DatabaseManager.getInstance().getReadConnection()) {
+                        return aggregate(conn, lo, hi);
+                    }
+                }));
+            }
+            for (Future<Map<String, Map<Integer, Totals>>> f : futures) {
+                merge(daily, f.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            pool.shutdownNow();
+        }
+
+        try {
+            return DatabaseManager.getInstance().write(conn -> {
+                merge(daily, aggregate(conn, maxId, Integer.MAX_VALUE));
+                replaceAll(conn, daily);
+                return true;
+            });
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    // Day -> product serial -> totals for sales with lo < id <= hi. Product bill counts only.
+    private static Map<String, Map<Integer, Totals>> aggregate(Connection conn, int lo, int hi) throws SQLException {
+        Map<String, Map<Integer, Totals>> byDay = new HashMap<>();
+        // Same weights as apply(): sale bill lines count the bill, void lines take it back
+        String sql = "SELECT s.sale_date, s.product_serial, s.quantity, s.amount, " +
+                "CASE b.kind WHEN 'SALE' THEN 1 WHEN 'VOID' THEN -1 ELSE 0 END AS bills " +
+                "FROM sales s LEFT JOIN bills b ON b.id = s.bill_id WHERE s.id > ? AND s.id <= ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, lo);
+            pstmt.setInt(2, hi);
+            pstmt.setFetchSize(1000);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    int bills = rs.getInt("bills");
+                    byDay.computeIfAbsent(rs.getString("sale_date"), d -> new HashMap<>())
+                            .computeIfAbsent(rs.getInt("product_serial"), s -> new Totals())
+                            .add(rs.getInt("quantity"), rs.getDouble("amount"), 1, bills);
+                }
+            }
+        }
+        return byDay;
+    }
+
+    private static void merge(Map<String, Map<Integer, Totals>> into, Map<String, Map<Integer, Totals>> part) {
+        for (Map.Entry<String, Map<Integer, Totals>> day : part.entrySet()) {
+            Map<Integer, Totals> target = into.computeIfAbsent(day.getKey(), d -> new HashMap<>());
+            for (Map.Entry<Integer, Totals> e : day.getValue().entrySet()) {
+                target.computeIfAbsent(e.getKey(), s -> new Totals()).add(e.getValue());
+            }
+        }
+    }
+
+    private static void replaceAll(Connection conn, Map<String, Map<Integer, Totals>> daily) throws SQLException {
+        Map<String, Integer> billsByDay = new HashMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT sale_date, " +
+                     "SUM(CASE kind WHEN 'SALE' THEN 1 WHEN 'VOID' THEN -1 ELSE 0 END) FROM bills GROUP BY sale_date")) {
+            while (rs.next()) {
+                billsByDay.put(rs.getString(1), rs.getInt(2));
+            }
+        }
+
+        // Month and year rows are sums of the day rows
+        Map<Grain, Map<Object, Map<Integer, Totals>>> rows = new HashMap<>();
+        for (Grain grain : Grain.values()) rows.put(grain, new HashMap<>());
+        for (Map.Entry<String, Map<Integer, Totals>> day : daily.entrySet()) {
+            LocalDate date = LocalDate.parse(day.getKey(), DATE_FORMATTER);
+            Totals dayTotal = new Totals();
+            for (Totals t : day.getValue().values()) dayTotal.add(t.quantity, t.amount, t.lineCount, 0);
+            dayTotal.billCount = billsByDay.getOrDefault(day.getKey(), 0);
+
+            for (Grain grain : Grain.values()) {
+                Map<Integer, Totals> period = rows.get(grain).computeIfAbsent(grain.periodOf(date), p -> new HashMap<>());
+                for (Map.Entry<Integer, Totals> e : day.getValue().entrySet()) {
+                    period.computeIfAbsent(e.getKey(), s -> new Totals()).add(e.getValue());
+                }
+                period.computeIfAbsent(TOTAL, s -> new Totals()).add(dayTotal);
+            }
+        }
+
+        try (Statement stmt = conn.createStatement()) {
+            for (Grain grain : Grain.values()) stmt.executeUpdate("DELETE FROM " + grain.table);
+        }
+        for (Grain grain : Grain.values()) {
+            try (PreparedStatement pstmt = conn.prepareStatement(grain.upsertSql())) {
+                int pending = 0;
+                for (Map.Entry<Object, Map<Integer, Totals>> period : rows.get(grain).entrySet()) {
+                    for (Map.Entry<Integer, Totals> e : period.getValue().entrySet()) {
+                        bindUpsert(pstmt, period.getKey(), e.getKey(), e.getValue());
+                        pstmt.addBatch();
+                        if (++pending % 1000 == 0) pstmt.executeBatch();
+                    }
+                }
+                pstmt.executeBatch();
+            }
+        }
+    }
+}
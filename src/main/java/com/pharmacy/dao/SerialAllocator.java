@@ -0,0 +1,87 @@
+package com.pharmacy.dao;
+
+import com.pharmacy.database.DatabaseManager;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Hands out product serials from blocks reserved in {@code serial_counter}.
+ *
+ * A reservation is one UPDATE on the writer thread that moves the counter forward by a
+ * whole block; the serials in between are then issued from memory. The UPDATE takes the
+ * database write lock, so two app instances sharing the file never receive overlapping
+ * blocks. Serials left in a block when the app exits are skipped, never reused.
+ *
+ * Do not call {@link #next()} from inside a write command: a reservation made there would
+ * be undone if that command rolls back, while the block stays handed out in memory.
+ */
+public final class SerialAllocator {
+    private static final int DEFAULT_BLOCK_SIZE = Integer.getInteger("pharmacy.serial.blockSize", 50);
+    private static final SerialAllocator INSTANCE = new SerialAllocator(DEFAULT_BLOCK_SIZE);
+
+    // Never hand out a serial at or below one already in products, even if the counter was
+    // reset or rows were inserted by the tools/ scripts.
+    private static final String RESERVE_SQL =
+            "UPDATE serial_counter SET counter = MAX(counter, (SELECT COALESCE(MAX(serial), 0) FROM products)) + ? " +
+            "WHERE id = 1";
+    private static final String READ_SQL = "SELECT counter FROM serial_counter WHERE id = 1";
+
+    private final int blockSize;
+    private int next;
+    private int high = -1;
+
+    SerialAllocator(int blockSize) {
+        this.blockSize = Math.max(1, blockSize);
+    }
+
+    public static SerialAllocator getInstance() {
+        return INSTANCE;
+    }
+
+    public synchronized int next() throws SQLException {
+        if (next > high) reserve(blockSize);
+        return next++;
+    }
+
+    /**
+     * Reserves {@code count} consecutive serials, e.g. for a bulk import.
+     *
+     * @return the first serial of the range
+     */
+    public synchronized int nextRange(int count) throws SQLException {
+        if (count <= 0) throw new IllegalArgumentException("count must be positive");
+        if (high - next + 1 < count) {
+            // Whatever is left of the current block is skipped rather than stitched together
+            // with a new, possibly non-adjacent block.
+            reserve(Math.max(count, blockSize));
+        }
+        int first = next;
+        next += count;
+        return first;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    private void reserve(int count) throws SQLException {
+        int counter = DatabaseManager.getInstance().write(conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(RESERVE_SQL)) {
+                pstmt.setInt(1, count);
+                if (pstmt.executeUpdate() == 0) {
+                    throw new SQLException("serial_counter has no row with id 1.");
+                }
+            }
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(READ_SQL)) {
+                if (!rs.next()) throw new SQLException("serial_counter has no row with id 1.");
+                return rs.getInt(1);
+            }
+        });
+        high = counter;
+        next = counter - count + 1;
+    }
+}
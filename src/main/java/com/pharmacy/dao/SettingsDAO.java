@@ -33,7 +33,7 @@ public class SettingsDAO {
 
     public String getSetting(String key, String defaultValue) {
         String sql = "SELECT value FROM settings WHERE key = ?";
-        try (Connection conn = DatabaseManager.getInstance().getConnection();
+        try (Connection conn = DatabaseManager.getInstance().getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, key);
             try (ResultSet rs = pstmt.executeQuery()) {
@@ -46,16 +46,39 @@ public class SettingsDAO {
     }
 
     public boolean setSetting(String key, String value) {
+        try {
+            return DatabaseManager.getInstance().write(conn -> putSetting(conn, key, value));
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    public boolean deleteSetting(String key) {
+        String sql = "DELETE FROM settings WHERE key = ?";
+        try {
+            return DatabaseManager.getInstance().write(conn -> {
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    pstmt.setString(1, key);
+                    return pstmt.executeUpdate() > 0;
+                }
+            });
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Upserts a setting on the caller's connection, e.g. inside another DAO's write command.
+     */
+    static boolean putSetting(Connection conn, String key, String value) throws SQLException {
         String sql = "INSERT INTO settings (key, value) VALUES (?, ?) " +
                 "ON CONFLICT(key) DO UPDATE SET value = excluded.value";
-        try (Connection conn = DatabaseManager.getInstance().getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, key);
             pstmt.setString(2, value);
             return pstmt.executeUpdate() > 0;
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return false;
         }
     }
 }
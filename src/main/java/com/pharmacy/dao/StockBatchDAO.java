@@ -0,0 +1,330 @@
+package com.pharmacy.dao;
+
+import com.pharmacy.database.CommitQueue;
+import com.pharmacy.database.DatabaseManager;
+import com.pharmacy.model.StockBatch;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stock batches of a product, allocated first-expiry-first-out when billing.
+ *
+ * Batches with stock are kept in expiry order by a partial index
+ * ({@code idx_stock_batches_fefo}), so allocation reads only the batches it takes from,
+ * however many depleted batches a product has collected. After any change the product
+ * row is brought back in line: its quantity is the batch total and its batch/expiry are
+ * those of the first batch to expire.
+ */
+public class StockBatchDAO {
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE;
+
+    private static final String FEFO_SQL =
+            "SELECT id, quantity FROM stock_batches " +
+            "WHERE product_serial = ? AND quantity > 0 AND exp_date >= ? ORDER BY exp_date, id";
+
+    /**
+     * Quantity taken from one batch for one sale line.
+     */
+    public static class Allocation {
+        private final int batchId;
+        private final int quantity;
+        private final boolean drained;
+
+        public Allocation(int batchId, int quantity) {
+            this(batchId, quantity, false);
+        }
+
+        Allocation(int batchId, int quantity, boolean drained) {
+            this.batchId = batchId;
+            this.quantity = quantity;
+            this.drained = drained;
+        }
+
+        public int getBatchId() {
+            return batchId;
+        }
+
+        public int getQuantity() {
+            return quantity;
+        }
+
+        /**
+         * True when this allocation emptied the batch.
+         */
+        boolean isDrained() {
+            return drained;
+        }
+    }
+
+    /**
+     * Batches of {@code serial} that still have stock, first to expire first.
+     */
+    public List<StockBatch> getBatches(int serial) {
+        List<StockBatch> batches = new ArrayList<>();
+        String sql = "SELECT * FROM stock_batches WHERE product_serial = ? AND quantity > 0 ORDER BY exp_date, id";
+
+        try (Connection conn = DatabaseManager.getInstance().getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, serial);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    batches.add(mapBatch(rs));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return batches;
+    }
+
+    /**
+     * Stock of {@code serial} that has not expired on {@code date}.
+     */
+    public int getSellableQuantity(int serial, LocalDate date) {
+        try (Connection conn = DatabaseManager.getInstance().getReadConnection()) {
+            return sellableQuantity(conn, serial, date);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+    /**
+     * Adds stock to an existing product as a batch. Receiving a batch number and expiry the
+     * product already has tops that batch up.
+     *
+     * @return false if the product does not exist or the write failed
+     */
+    public boolean receiveBatch(int serial, StockBatch batch) {
+        if (batch.getQuantity() <= 0 || batch.getExpDate() == null) return false;
+        String batchName = batch.getBatch() == null ? "" : batch.getBatch().trim();
+        String topUpSql = "UPDATE stock_batches SET quantity = quantity + ? WHERE id = " +
+                "(SELECT MAX(id) FROM stock_batches WHERE product_serial = ? AND batch = ? AND exp_date = ?)";
+        String insertSql = "INSERT INTO stock_batches (product_serial, batch, purchase_date, mfg_date, exp_date, quantity) " +
+                "VALUES (?, ?, ?, ?, ?, ?)";
+
+        try {
+            return DatabaseManager.getInstance().write(conn -> {
+                try (PreparedStatement exists = conn.prepareStatement("SELECT 1 FROM products WHERE serial = ?")) {
+                    exists.setInt(1, serial);
+                    try (ResultSet rs = exists.executeQuery()) {
+                        if (!rs.next()) return false;
+                    }
+                }
+
+                int updated;
+                try (PreparedStatement topUp = conn.prepareStatement(topUpSql)) {
+                    topUp.setInt(1, batch.getQuantity());
+                    topUp.setInt(2, serial);
+                    topUp.setString(3, batchName);
+                    topUp.setString(4, batch.getExpDate().format(DATE_FORMATTER));
+                    updated = topUp.executeUpdate();
+                }
+                if (updated == 0) {
+                    try (PreparedStatement insert = conn.prepareStatement(insertSql)) {
+                        insert.setInt(1, serial);
+                        insert.setString(2, batchName);
+                        insert.setString(3, batch.getPurchaseDate() != null ? batch.getPurchaseDate().format(DATE_FORMATTER) : null);
+                        insert.setString(4, batch.getMfgDate() != null ? batch.getMfgDate().format(DATE_FORMATTER) : null);
+                        insert.setString(5, batch.getExpDate().format(DATE_FORMATTER));
+                        insert.setInt(6, batch.getQuantity());
+                        insert.executeUpdate();
+                    }
+                }
+
+                syncProduct(conn, serial);
+                CommitQueue.afterCommit(() -> new ProductDAO().republish(serial));
+                return true;
+            });
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    static int sellableQuantity(Connection conn, int serial, LocalDate date) throws SQLException {
+        String sql = "SELECT COALESCE(SUM(quantity), 0) FROM stock_batches " +
+                "WHERE product_serial = ? AND quantity > 0 AND exp_date >= ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, serial);
+            pstmt.setString(2, date.format(DATE_FORMATTER));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Takes {@code quantity} from the batches of {@code serial} that have not expired on
+     * {@code saleDate}, first to expire first. Must run inside the caller's write.
+     *
+     * @return the batches taken from, or null if there is not enough (the caller rolls back)
+     */
+    static List<Allocation> allocate(Connection conn, int serial, int quantity, LocalDate saleDate) throws SQLException {
+        List<Allocation> allocations = new ArrayList<>();
+        int remaining = quantity;
+        try (PreparedStatement pstmt = conn.prepareStatement(FEFO_SQL)) {
+            pstmt.setInt(1, serial);
+            pstmt.setString(2, saleDate.format(DATE_FORMATTER));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                // Stops at the batch that fills the line; later batches are never read
+                while (remaining > 0 && rs.next()) {
+                    int available = rs.getInt("quantity");
+                    int take = Math.min(remaining, available);
+                    allocations.add(new Allocation(rs.getInt("id"), take, take == available));
+                    remaining -= take;
+                }
+            }
+        }
+        if (remaining > 0) return null;
+
+        // Guarded like the product decrement: a batch that no longer holds enough fails the line
+        try (PreparedStatement update = conn.prepareStatement(
+                "UPDATE stock_batches SET quantity = quantity - ? WHERE id = ? AND quantity >= ?")) {
+            for (Allocation a : allocations) {
+                update.setInt(1, a.getQuantity());
+                update.setInt(2, a.getBatchId());
+                update.setInt(3, a.getQuantity());
+                update.addBatch();
+            }
+            for (int count : update.executeBatch()) {
+                if (count == 0) return null;
+            }
+        }
+        return allocations;
+    }
+
+    /**
+     * Records where each sale's units came from, for a whole bill in one batch.
+     *
+     * @param saleIds ids of the sales, in the same order as {@code allocations}
+     */
+    static void recordAllocations(Connection conn, int[] saleIds, List<List<Allocation>> allocations) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO sale_allocations (sale_id, batch_id, quantity) VALUES (?, ?, ?)")) {
+            for (int i = 0; i < saleIds.length; i++) {
+                for (Allocation a : allocations.get(i)) {
+                    pstmt.setInt(1, saleIds[i]);
+                    pstmt.setInt(2, a.getBatchId());
+                    pstmt.setInt(3, a.getQuantity());
+                    pstmt.addBatch();
+                }
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    /**
+     * Puts up to {@code quantity} units of sale {@code saleId} back into the batches they
+     * were taken from, net of earlier returns of that sale, latest expiry first. Must run
+     * inside the caller's write. Sales made before batches were tracked have nothing to
+     * give back; the caller's product update then puts the units on the product's batch.
+     *
+     * @return the batches refilled, with the units each got back
+     */
+    static List<Allocation> release(Connection conn, int saleId, int quantity) throws SQLException {
+        String sql = "SELECT a.batch_id, SUM(a.quantity) AS held FROM sale_allocations a " +
+                "JOIN stock_batches b ON b.id = a.batch_id " +
+                "WHERE a.sale_id = ? OR a.sale_id IN (SELECT id FROM sales WHERE original_sale_id = ?) " +
+                "GROUP BY a.batch_id HAVING held > 0 ORDER BY b.exp_date DESC, b.id DESC";
+        List<Allocation> released = new ArrayList<>();
+        int remaining = quantity;
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, saleId);
+            pstmt.setInt(2, saleId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (remaining > 0 && rs.next()) {
+                    int give = Math.min(remaining, rs.getInt("held"));
+                    released.add(new Allocation(rs.getInt("batch_id"), give));
+                    remaining -= give;
+                }
+            }
+        }
+
+        try (PreparedStatement update = conn.prepareStatement(
+                "UPDATE stock_batches SET quantity = quantity + ? WHERE id = ?")) {
+            for (Allocation a : released) {
+                update.setInt(1, a.getQuantity());
+                update.setInt(2, a.getBatchId());
+                update.addBatch();
+            }
+            update.executeBatch();
+        }
+        return released;
+    }
+
+    /**
+     * Sets the product row's quantity to the batch total and its batch/expiry to the first
+     * batch to expire.
+     *
+     * @return the new quantity, and whether the batch shown on the product changed
+     */
+    static SyncResult syncProduct(Connection conn, int serial) throws SQLException {
+        String sql = "UPDATE products SET quantity = (SELECT COALESCE(SUM(quantity), 0) FROM stock_batches " +
+                "WHERE product_serial = ? AND quantity > 0) WHERE serial = ? RETURNING quantity";
+        int total;
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, serial);
+            pstmt.setInt(2, serial);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) return new SyncResult(0, false);
+                total = rs.getInt(1);
+            }
+        }
+        return new SyncResult(total, syncHead(conn, serial));
+    }
+
+    /**
+     * Points the product row at its first batch to expire that still has stock. Only
+     * needed after a batch was emptied or added; a product with no stock left keeps
+     * describing its last batch.
+     *
+     * @return true if the row changed
+     */
+    static boolean syncHead(Connection conn, int serial) throws SQLException {
+        String sql = """
+                WITH head AS (
+                    SELECT batch, mfg_date, exp_date FROM stock_batches
+                    WHERE product_serial = ? AND quantity > 0 ORDER BY exp_date, id LIMIT 1
+                )
+                UPDATE products
+                SET batch = (SELECT batch FROM head), mfg_date = (SELECT mfg_date FROM head),
+                    exp_date = (SELECT exp_date FROM head)
+                WHERE serial = ? AND EXISTS (SELECT 1 FROM head)
+                  AND (COALESCE(batch, '') <> (SELECT batch FROM head) OR exp_date <> (SELECT exp_date FROM head))
+                """;
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, serial);
+            pstmt.setInt(2, serial);
+            return pstmt.executeUpdate() > 0;
+        }
+    }
+
+    static final class SyncResult {
+        final int quantity;
+        final boolean headChanged;
+
+        SyncResult(int quantity, boolean headChanged) {
+            this.quantity = quantity;
+            this.headChanged = headChanged;
+        }
+    }
+
+    private static StockBatch mapBatch(ResultSet rs) throws SQLException {
+        StockBatch batch = new StockBatch();
+        batch.setId(rs.getInt("id"));
+        batch.setProductSerial(rs.getInt("product_serial"));
+        batch.setBatch(rs.getString("batch"));
+        String purchase = rs.getString("purchase_date");
+        batch.setPurchaseDate(purchase == null || purchase.isEmpty() ? null : LocalDate.parse(purchase, DATE_FORMATTER));
+        String mfg = rs.getString("mfg_date");
+        batch.setMfgDate(mfg == null || mfg.isEmpty() ? null : LocalDate.parse(mfg, DATE_FORMATTER));
+        batch.setExpDate(LocalDate.parse(rs.getString("exp_date"), DATE_FORMATTER));
+        batch.setQuantity(rs.getInt("quantity"));
+        return batch;
+    }
+}
@@ -0,0 +1,193 @@
+package com.pharmacy.dao;
+
+import com.pharmacy.database.DatabaseManager;
+import com.pharmacy.model.Product;
+import com.pharmacy.model.Sale;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Best sellers for today, this month and all time, keyed by product serial.
+ *
+ * Sold quantities per serial are loaded once from the sales rollups; after that new sales
+ * are read from the sales feed ({@code id > lastSaleId}) and each one, returns and voids
+ * included, adjusts a counter and its place in a set ordered by quantity in O(log N).
+ * Names are looked up by serial when the list is read, so a renamed product stays one
+ * entry.
+ */
+public final class TopSellersTracker {
+    public enum Period { TODAY, THIS_MONTH, ALL_TIME }
+
+    public static final int CAPACITY = 10;
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE;
+    private static final TopSellersTracker INSTANCE = new TopSellersTracker();
+
+    public static final class Entry {
+        private final int serial;
+        private final String productName;
+        private final long quantitySold;
+
+        private Entry(int serial, String productName, long quantitySold) {
+            this.serial = serial;
+            this.productName = productName;
+            this.quantitySold = quantitySold;
+        }
+
+        public int getSerial() {
+            return serial;
+        }
+
+        public String getProductName() {
+            return productName;
+        }
+
+        public long getQuantitySold() {
+            return quantitySold;
+        }
+    }
+
+    private final Map<Period, Counter> counters = new EnumMap<>(Period.class);
+    // Name from the latest sale seen, for products that no longer exist
+    private final Map<Integer, String> soldAs = new HashMap<>();
+    private LocalDate loadedOn;
+    private int lastSaleId = -1;
+
+    private TopSellersTracker() {
+        for (Period period : Period.values()) counters.put(period, new Counter());
+    }
+
+    public static TopSellersTracker getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Applies sales recorded since the last call. Reloads from the rollups the first time
+     * and when the day has changed.
+     */
+    public synchronized void sync() {
+        LocalDate today = LocalDate.now();
+        if (lastSaleId < 0 || !today.equals(loadedOn)) {
+            reload();
+            return;
+        }
+        for (Sale sale : new SaleDAO().getSalesSince(lastSaleId)) {
+            apply(sale, today);
+            lastSaleId = Math.max(lastSaleId, sale.getId());
+        }
+    }
+
+    /**
+     * Reloads every counter from the rollup tables.
+     */
+    public synchronized void reload() {
+        LocalDate today = LocalDate.now();
+        Map<Period, Map<Integer, Long>> loaded = new EnumMap<>(Period.class);
+        int maxId;
+        try (Connection conn = DatabaseManager.getInstance().getReadConnection()) {
+            // One read transaction, so the counters and the feed cursor match exactly
+            conn.setAutoCommit(false);
+            loaded.put(Period.TODAY, load(conn,
+                    "SELECT product_serial, quantity FROM sales_daily WHERE day = ? AND product_serial <> 0",
+                    today.format(DATE_FORMATTER)));
+            loaded.put(Period.THIS_MONTH, load(conn,
+                    "SELECT product_serial, quantity FROM sales_monthly WHERE month = ? AND product_serial <> 0",
+                    today.format(DATE_FORMATTER).substring(0, 7)));
+            loaded.put(Period.ALL_TIME, load(conn,
+                    "SELECT product_serial, SUM(quantity) FROM sales_yearly WHERE product_serial <> 0 " +
+                    "GROUP BY product_serial", null));
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(id), 0) FROM sales")) {
+                maxId = rs.next() ? rs.getInt(1) : 0;
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        for (Period period : Period.values()) counters.get(period).reset(loaded.get(period));
+        loadedOn = today;
+        lastSaleId = maxId;
+    }
+
+    /**
+     * Up to {@code limit} (at most {@value #CAPACITY}) best sellers, highest quantity first.
+     */
+    public synchronized List<Entry> top(Period period, int limit) {
+        ProductDAO productDAO = new ProductDAO();
+        List<Entry> entries = new ArrayList<>();
+        Counter counter = counters.get(period);
+        for (int serial : counter.ranked) {
+            if (entries.size() >= Math.min(limit, CAPACITY)) break;
+            Product product = productDAO.getProductBySerial(serial);
+            String name = product != null ? product.getName() : soldAs.getOrDefault(serial, "S#" + serial);
+            entries.add(new Entry(serial, name, counter.counts.get(serial)));
+        }
+        return entries;
+    }
+
+    private void apply(Sale sale, LocalDate today) {
+        soldAs.put(sale.getProductSerial(), sale.getProductName());
+        LocalDate date = sale.getSaleDate();
+        if (date.equals(today)) {
+            counters.get(Period.TODAY).add(sale.getProductSerial(), sale.getQuantity());
+        }
+        if (date.getYear() == today.getYear() && date.getMonth() == today.getMonth()) {
+            counters.get(Period.THIS_MONTH).add(sale.getProductSerial(), sale.getQuantity());
+        }
+        counters.get(Period.ALL_TIME).add(sale.getProductSerial(), sale.getQuantity());
+    }
+
+    private static Map<Integer, Long> load(Connection conn, String sql, String period) throws SQLException {
+        Map<Integer, Long> counts = new HashMap<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            if (period != null) pstmt.setString(1, period);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    counts.put(rs.getInt(1), rs.getLong(2));
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Net sold quantity per serial, as in the rollups (a return of an earlier sale can make
+     * it negative), plus every serial with a positive quantity ordered by quantity
+     * (descending), then serial. The top {@value #CAPACITY} are the head of that set.
+     */
+    private static final class Counter {
+        private final Map<Integer, Long> counts = new HashMap<>();
+        private final TreeSet<Integer> ranked = new TreeSet<>(
+                Comparator.<Integer>comparingLong(s -> -counts.get(s)).thenComparingInt(s -> s));
+
+        void reset(Map<Integer, Long> loaded) {
+            ranked.clear();
+            counts.clear();
+            counts.putAll(loaded);
+            for (Map.Entry<Integer, Long> e : counts.entrySet()) {
+                if (e.getValue() > 0) ranked.add(e.getKey());
+            }
+        }
+
+        void add(int serial, long delta) {
+            // Leave the set before the count changes; its ordering reads the count
+            if (counts.containsKey(serial)) ranked.remove(serial);
+            // Non-positive counts stay, so later sales add up to what the rollups hold
+            if (counts.merge(serial, delta, Long::sum) > 0) ranked.add(serial);
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package com.pharmacy.database;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single writer thread that owns the only write connection.
+ *
+ * Every mutation is submitted as a {@link WriteCommand}. Commands that arrive within the
+ * group-commit window are run in one transaction, each inside its own savepoint, so one
+ * failing command never undoes another. Futures complete only after the commit, which
+ * means a caller never observes a write that could still be rolled back.
+ * Commands can register {@link #afterCommit} actions to keep in-memory state in step
+ * with what was committed.
+ */
+public class CommitQueue implements AutoCloseable {
+
+    @FunctionalInterface
+    public interface WriteCommand<T> {
+        T execute(Connection conn) throws SQLException;
+    }
+
+    /**
+     * Thrown by a command to undo its own changes while still completing normally with
+     * {@code result} (e.g. a bill rejected for insufficient stock).
+     */
+    public static final class Rollback extends SQLException {
+        private final transient Object result;
+
+        public Rollback(Object result) {
+            super("Command rolled back");
+            this.result = result;
+        }
+
+        public Object getResult() {
+            return result;
+        }
+    }
+
+    private static final int MAX_BATCH = 256;
+    private static final ThreadLocal<Pending<?>> CURRENT = new ThreadLocal<>();
+
+    private final String url;
+    private final List<String> initStatements;
+    private final long groupWindowNanos;
+    private final BlockingQueue<Pending<?>> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private volatile boolean closed;
+    private Connection conn;
+
+    public CommitQueue(String url, List<String> initStatements, long groupWindowMillis) {
+        this.url = url;
+        this.initStatements = List.copyOf(initStatements);
+        this.groupWindowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, groupWindowMillis));
+        this.writer = new Thread(this::run, "db-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public <T> CompletableFuture<T> submit(WriteCommand<T> command) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (closed) {
+            future.completeExceptionally(new SQLException("Commit queue is closed."));
+            return future;
+        }
+        queue.add(new Pending<>(command, future));
+        return future;
+    }
+
+    /**
+     * Submits {@code command} and waits for it to commit.
+     */
+    public <T> T execute(WriteCommand<T> command) throws SQLException {
+        if (Thread.currentThread() == writer) {
+            // Already inside a batch on the writer thread; queueing would deadlock.
+            return command.execute(conn);
+        }
+        try {
+            return submit(command).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a write to commit.", e);
+        } catch (ExecutionException e) {
+            throw asSqlException(e.getCause());
+        }
+    }
+
+    /**
+     * Runs {@code action} on the writer thread right after the transaction of the command
+     * currently executing commits, before its future completes. Dropped if the command is
+     * rolled back. Outside a command the action runs immediately.
+     */
+    public static void afterCommit(Runnable action) {
+        Pending<?> current = CURRENT.get();
+        if (current == null) {
+            action.run();
+        } else {
+            current.afterCommit.add(action);
+        }
+    }
+
+    /**
+     * Runs {@code command} in a savepoint of its own inside the command currently executing.
+     * A {@link Rollback} undoes only {@code command}'s changes and after-commit actions and
+     * returns its result. Any other failure undoes them too, then propagates to the
+     * enclosing command, which may catch it and carry on.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T nested(Connection conn, WriteCommand<T> command) throws SQLException {
+        Pending<?> current = CURRENT.get();
+        int actions = current == null ? 0 : current.afterCommit.size();
+        Savepoint sp = conn.setSavepoint();
+        try {
+            T result = command.execute(conn);
+            conn.releaseSavepoint(sp);
+            return result;
+        } catch (Rollback r) {
+            undo(conn, sp, current, actions);
+            return (T) r.getResult();
+        } catch (SQLException | RuntimeException e) {
+            undo(conn, sp, current, actions);
+            throw e;
+        }
+    }
+
+    private static void undo(Connection conn, Savepoint sp, Pending<?> current, int actions) throws SQLException {
+        if (current != null) current.afterCommit.subList(actions, current.afterCommit.size()).clear();
+        conn.rollback(sp);
+        conn.releaseSavepoint(sp);
+    }
+
+    public static SQLException asSqlException(Throwable t) {
+        if (t instanceof CompletionException && t.getCause() != null) t = t.getCause();
+        if (t instanceof SQLException) return (SQLException) t;
+        return new SQLException(t.getMessage(), t);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        writer.interrupt();
+    }
+
+    private void run() {
+        List<Pending<?>> batch = new ArrayList<>();
+        while (!closed) {
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + groupWindowNanos;
+                while (batch.size() < MAX_BATCH) {
+                    long remaining = deadline - System.nanoTime();
+                    Pending<?> next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) break;
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                if (closed) break;
+                continue;
+            }
+
+            try {
+                runBatch(batch);
+            } catch (Throwable t) {
+                // Never let one batch take the only writer down; its callers get the error
+                for (Pending<?> p : batch) p.future.completeExceptionally(t);
+                closeConnection();
+            }
+            batch.clear();
+        }
+
+        Pending<?> p;
+        while ((p = queue.poll()) != null) {
+            p.future.completeExceptionally(new SQLException("Commit queue is closed."));
+        }
+        closeConnection();
+    }
+
+    private void runBatch(List<Pending<?>> batch) {
+        try {
+            ensureConnection();
+            conn.setAutoCommit(false);
+        } catch (SQLException e) {
+            for (Pending<?> p : batch) p.future.completeExceptionally(e);
+            closeConnection();
+            return;
+        }
+
+        try {
+            for (Pending<?> p : batch) {
+                p.run(conn);
+            }
+            conn.commit();
+            for (Pending<?> p : batch) p.runAfterCommit();
+            for (Pending<?> p : batch) p.complete();
+        } catch (SQLException e) {
+            try {
+                conn.rollback();
+            } catch (SQLException ignored) {
+                // The connection is reopened below if it is unusable.
+            }
+            for (Pending<?> p : batch) {
+                if (p.failure == null) p.failure = e;
+                p.afterCommit.clear();
+                p.complete();
+            }
+        } finally {
+            try {
+                conn.setAutoCommit(true);
+            } catch (SQLException e) {
+                closeConnection();
+            }
+        }
+    }
+
+    private void ensureConnection() throws SQLException {
+        if (conn != null && !conn.isClosed()) return;
+        Properties props = new Properties();
+        // BEGIN IMMEDIATE: take the write lock when the transaction starts, so a command's
+        // reads and writes cannot interleave with another process writing the same file.
+        props.setProperty("transaction_mode", "IMMEDIATE");
+        conn = DriverManager.getConnection(url, props);
+        try (Statement stmt = conn.createStatement()) {
+            for (String sql : initStatements) {
+                stmt.execute(sql);
+            }
+        }
+    }
+
+    private void closeConnection() {
+        if (conn == null) return;
+        try {
+            conn.close();
+        } catch (SQLException ignored) {
+            // Discarding the connection.
+        }
+        conn = null;
+    }
+
+    private static final class Pending<T> {
+        private final WriteCommand<T> command;
+        private final CompletableFuture<T> future;
+        private final List<Runnable> afterCommit = new ArrayList<>();
+        private T result;
+        private Throwable failure;
+
+        private Pending(WriteCommand<T> command, CompletableFuture<T> future) {
+            this.command = command;
+            this.future = future;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void run(Connection conn) throws SQLException {
+            Savepoint sp = conn.setSavepoint();
+            CURRENT.set(this);
+            try {
+                result = command.execute(conn);
+                conn.releaseSavepoint(sp);
+            } catch (Rollback r) {
+                afterCommit.clear();
+                conn.rollback(sp);
+                conn.releaseSavepoint(sp);
+                result = (T) r.getResult();
+            } catch (Throwable e) {
+                // Errors too (e.g. OutOfMemoryError): fail this command, keep the writer running
+                afterCommit.clear();
+                failure = e;
+                conn.rollback(sp);
+                conn.releaseSavepoint(sp);
+            } finally {
+                CURRENT.remove();
+            }
+        }
+
+        private void runAfterCommit() {
+            for (Runnable action : afterCommit) {
+                try {
+                    action.run();
+                } catch (Throwable e) {
+                    e.printStackTrace();
+                }
+            }
+            afterCommit.clear();
+        }
+
+        private void complete() {
+            if (failure != null) {
+                future.completeExceptionally(failure);
+            } else {
+                future.complete(result);
+            }
+        }
+    }
+}
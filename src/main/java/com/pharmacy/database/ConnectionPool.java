@@ -0,0 +1,278 @@
+package com.pharmacy.database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Small bounded pool of SQLite connections.
+ *
+ * Connections are handed out as proxies: calling {@code close()} returns the physical
+ * connection to the pool instead of closing it, so DAO code can keep using
+ * try-with-resources unchanged. Every new physical connection runs the configured
+ * PRAGMAs once, connections that sat idle for a while are validated before reuse,
+ * and leases held longer than the leak threshold are reported on stderr.
+ */
+public class ConnectionPool implements AutoCloseable {
+    private static final long VALIDATE_AFTER_IDLE_MILLIS = 30_000;
+    private static final long BORROW_TIMEOUT_MILLIS = 30_000;
+    private static final boolean CAPTURE_LEAK_TRACES = Boolean.getBoolean("pharmacy.db.leakTraces");
+
+    private final String name;
+    private final String url;
+    private final int maxSize;
+    private final List<String> initStatements;
+    private final long leakThresholdMillis;
+
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<PhysicalConnection> idle = new LinkedBlockingDeque<>();
+    private final Set<Lease> leased = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger created = new AtomicInteger();
+    private final ScheduledExecutorService leakDetector;
+    private volatile boolean closed;
+
+    public ConnectionPool(String name, String url, int maxSize, List<String> initStatements, long leakThresholdMillis) {
+        this.name = name;
+        this.url = url;
+        this.maxSize = Math.max(1, maxSize);
+        this.initStatements = List.copyOf(initStatements);
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.permits = new Semaphore(this.maxSize, true);
+
+        this.leakDetector = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-pool-" + name + "-leak-detector");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1_000, leakThresholdMillis / 2);
+        leakDetector.scheduleAtFixedRate(this::reportLeaks, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public Connection borrow() throws SQLException {
+        if (closed) throw new SQLException("Connection pool '" + name + "' is closed.");
+
+        try {
+            if (!permits.tryAcquire(BORROW_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out waiting for a database connection (pool '" + name
+                        + "', size " + maxSize + ", in use " + leased.size() + ").");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection.", e);
+        }
+
+        try {
+            PhysicalConnection physical = takeValidIdle();
+            if (physical == null) physical = openPhysical();
+
+            Lease lease = new Lease(physical);
+            leased.add(lease);
+            return lease.proxy;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public int getActiveCount() {
+        return leased.size();
+    }
+
+    public int getCreatedCount() {
+        return created.get();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        leakDetector.shutdownNow();
+        PhysicalConnection physical;
+        while ((physical = idle.pollFirst()) != null) {
+            closeQuietly(physical.connection);
+        }
+    }
+
+    private PhysicalConnection takeValidIdle() {
+        PhysicalConnection physical;
+        // Most recently returned first: it is the one most likely to have a warm page cache.
+        while ((physical = idle.pollFirst()) != null) {
+            long idleFor = System.currentTimeMillis() - physical.lastReturnedAt;
+            if (idleFor < VALIDATE_AFTER_IDLE_MILLIS || isValid(physical.connection)) {
+                return physical;
+            }
+            closeQuietly(physical.connection);
+        }
+        return null;
+    }
+
+    private PhysicalConnection openPhysical() throws SQLException {
+        Connection c = DriverManager.getConnection(url);
+        try (Statement stmt = c.createStatement()) {
+            for (String sql : initStatements) {
+                stmt.execute(sql);
+            }
+        } catch (SQLException e) {
+            closeQuietly(c);
+            throw e;
+        }
+        created.incrementAndGet();
+        return new PhysicalConnection(c);
+    }
+
+    private void giveBack(Lease lease) {
+        if (!leased.remove(lease)) return;
+
+        PhysicalConnection physical = lease.physical;
+        boolean reusable = !closed;
+        try {
+            lease.closeOpenStatements();
+            if (physical.connection.isClosed()) {
+                reusable = false;
+            } else if (!physical.connection.getAutoCommit()) {
+                // Caller forgot to finish its transaction; never hand that state to the next borrower.
+                physical.connection.rollback();
+                physical.connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            reusable = false;
+        }
+
+        if (reusable) {
+            physical.lastReturnedAt = System.currentTimeMillis();
+            idle.offerFirst(physical);
+        } else {
+            closeQuietly(physical.connection);
+        }
+        permits.release();
+    }
+
+    private void reportLeaks() {
+        long now = System.currentTimeMillis();
+        for (Lease lease : leased) {
+            long heldFor = now - lease.borrowedAt;
+            if (heldFor >= leakThresholdMillis && !lease.reported) {
+                lease.reported = true;
+                System.err.println("Possible connection leak in pool '" + name + "': connection held for "
+                        + heldFor + " ms by thread " + lease.borrowerThread);
+                if (lease.borrowTrace != null) {
+                    lease.borrowTrace.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private static boolean isValid(Connection c) {
+        try {
+            return c.isValid(2);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private static void closeQuietly(Connection c) {
+        try {
+            c.close();
+        } catch (SQLException ignored) {
+            // Nothing useful to do while discarding a connection.
+        }
+    }
+
+    private static final class PhysicalConnection {
+        private final Connection connection;
+        private volatile long lastReturnedAt = System.currentTimeMillis();
+
+        private PhysicalConnection(Connection connection) {
+            this.connection = connection;
+        }
+    }
+
+    private final class Lease implements InvocationHandler {
+        private final PhysicalConnection physical;
+        private final Connection proxy;
+        private final long borrowedAt = System.currentTimeMillis();
+        private final String borrowerThread = Thread.currentThread().getName();
+        private final Throwable borrowTrace = CAPTURE_LEAK_TRACES ? new Throwable("Connection borrowed here") : null;
+        private final List<Statement> statements = new ArrayList<>();
+        private volatile boolean released;
+        private volatile boolean reported;
+
+        private Lease(PhysicalConnection physical) {
+            this.physical = physical;
+            this.proxy = (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxyObj, Method method, Object[] args) throws Throwable {
+            String m = method.getName();
+            switch (m) {
+                case "close":
+                    if (!released) {
+                        released = true;
+                        giveBack(this);
+                    }
+                    return null;
+                case "isClosed":
+                    return released || physical.connection.isClosed();
+                case "equals":
+                    return proxyObj == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxyObj);
+                case "toString":
+                    return "Pooled[" + name + "] " + physical.connection;
+                default:
+                    break;
+            }
+            if (released) {
+                throw new SQLException("Connection has already been returned to the pool.");
+            }
+
+            Object result;
+            try {
+                result = method.invoke(physical.connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (result instanceof Statement) {
+                // The physical connection outlives this lease, so statements the caller
+                // did not close must be closed when the lease ends.
+                statements.add((Statement) result);
+            }
+            return result;
+        }
+
+        private void closeOpenStatements() {
+            for (Statement s : statements) {
+                try {
+                    s.close();
+                } catch (SQLException ignored) {
+                    // Statement is being discarded anyway.
+                }
+            }
+            statements.clear();
+        }
+    }
+}
@@ -4,19 +4,53 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class DatabaseManager {
     private static final Path DB_FILE = resolveDbFile();
     private static final String DB_URL = "jdbc:sqlite:" + DB_FILE.toAbsolutePath();
+    private static final int POOL_SIZE = Integer.getInteger("pharmacy.db.poolSize", 4);
+    private static final int READ_POOL_SIZE = Integer.getInteger("pharmacy.db.readPoolSize", 4);
+    private static final long LEAK_THRESHOLD_MILLIS = 30_000;
+    private static final long GROUP_COMMIT_MILLIS = Long.getLong("pharmacy.db.groupCommitMillis", 2);
+
+    // Applied once to every new physical connection.
+    private static final List<String> CONNECTION_PRAGMAS = List.of(
+            "PRAGMA journal_mode = WAL",
+            "PRAGMA synchronous = NORMAL",
+            "PRAGMA cache_size = -8000",
+            "PRAGMA busy_timeout = 5000"
+    );
+
+    // Read lane: WAL lets these run alongside the writer. query_only makes any accidental
+    // write fail instead of taking the write lock; a larger cache and mmap suit report scans.
+    private static final List<String> READ_CONNECTION_PRAGMAS = List.of(
+            "PRAGMA cache_size = -32000",
+            "PRAGMA mmap_size = 268435456",
+            "PRAGMA busy_timeout = 5000",
+            "PRAGMA query_only = 1"
+    );
+
     private static DatabaseManager instance;
+    private final ConnectionPool pool;
+    private final ConnectionPool readPool;
+    private final CommitQueue commitQueue;
+    private final IndexCatalog indexCatalog = new IndexCatalog();
     private volatile String lastConnectionError;
     
     private DatabaseManager() {
+        pool = new ConnectionPool("main", DB_URL, POOL_SIZE, CONNECTION_PRAGMAS, LEAK_THRESHOLD_MILLIS);
         initializeDatabase();
+        readPool = new ConnectionPool("read", DB_URL, READ_POOL_SIZE, READ_CONNECTION_PRAGMAS, LEAK_THRESHOLD_MILLIS);
+        commitQueue = new CommitQueue(DB_URL, CONNECTION_PRAGMAS, GROUP_COMMIT_MILLIS);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            commitQueue.close();
+            readPool.close();
+            pool.close();
+        }, "db-shutdown"));
+        startIndexMaintenance();
     }
     
     public static synchronized DatabaseManager getInstance() {
@@ -26,9 +60,26 @@ public class DatabaseManager {
         return instance;
     }
     
+    /**
+     * Borrows a pooled connection. Closing it returns it to the pool.
+     */
     public Connection getConnection() throws SQLException {
         try {
-            Connection c = DriverManager.getConnection(DB_URL);
+            Connection c = pool.borrow();
+            lastConnectionError = null;
+            return c;
+        } catch (SQLException e) {
+            lastConnectionError = e.getMessage();
+            throw e;
+        }
+    }
+
+    /**
+     * Borrows a read-only connection for queries. Never delays or is delayed by the writer.
+     */
+    public Connection getReadConnection() throws SQLException {
+        try {
+            Connection c = readPool.borrow();
             lastConnectionError = null;
             return c;
         } catch (SQLException e) {
@@ -37,10 +88,43 @@ public class DatabaseManager {
         }
     }
 
+    /**
+     * Queues a mutation on the single writer thread. The future completes once the
+     * transaction containing it has committed.
+     */
+    public <T> CompletableFuture<T> submitWrite(CommitQueue.WriteCommand<T> command) {
+        return commitQueue.submit(command);
+    }
+
+    /**
+     * Same as {@link #submitWrite} but waits for the commit.
+     */
+    public <T> T write(CommitQueue.WriteCommand<T> command) throws SQLException {
+        return commitQueue.execute(command);
+    }
+
     public String getDatabasePath() {
         return DB_FILE.toAbsolutePath().toString();
     }
 
+    public ConnectionPool getPool() {
+        return pool;
+    }
+
+    public ConnectionPool getReadPool() {
+        return readPool;
+    }
+
+    public IndexCatalog getIndexCatalog() {
+        return indexCatalog;
+    }
+
+    public List<IndexCatalog.IndexReport> getIndexReport() throws SQLException {
+        try (Connection conn = getConnection()) {
+            return indexCatalog.report(conn);
+        }
+    }
+
     public String getLastConnectionError() {
         return lastConnectionError;
     }
@@ -54,160 +138,26 @@ public class DatabaseManager {
     }
     
     private void initializeDatabase() {
-        try (Connection conn = getConnection();
-             Statement stmt = conn.createStatement()) {
-            
-            // Create products table
-            String createProductsTable = """
-                CREATE TABLE IF NOT EXISTS products (
-                    serial INTEGER PRIMARY KEY,
-                    name TEXT NOT NULL,
-                    salt TEXT,
-                    company TEXT,
-                    distributor TEXT,
-                    batch TEXT,
-                    purchase_date TEXT NOT NULL,
-                    mfg_date TEXT,
-                    exp_date TEXT NOT NULL,
-                    price REAL NOT NULL,
-                    quantity INTEGER NOT NULL DEFAULT 0
-                )
-            """;
-            
-            // Create sales table
-            String createSalesTable = """
-                CREATE TABLE IF NOT EXISTS sales (
-                    id INTEGER PRIMARY KEY AUTOINCREMENT,
-                    sale_date TEXT NOT NULL,
-                    product_serial INTEGER NOT NULL,
-                    product_name TEXT NOT NULL,
-                    quantity INTEGER NOT NULL,
-                    amount REAL NOT NULL,
-                    FOREIGN KEY (product_serial) REFERENCES products(serial)
-                )
-            """;
-            
-            // Create monthly_sales table
-            String createMonthlySalesTable = """
-                CREATE TABLE IF NOT EXISTS monthly_sales (
-                    month INTEGER PRIMARY KEY,
-                    amount REAL DEFAULT 0
-                )
-            """;
-            
-            // Create settings table for owner password
-            String createSettingsTable = """
-                CREATE TABLE IF NOT EXISTS settings (
-                    key TEXT PRIMARY KEY,
-                    value TEXT
-                )
-            """;
-            
-            // Create serial_counter table
-            String createSerialCounterTable = """
-                CREATE TABLE IF NOT EXISTS serial_counter (
-                    id INTEGER PRIMARY KEY,
-                    counter INTEGER DEFAULT 1000
-                )
-            """;
-            
-            stmt.execute(createProductsTable);
-            stmt.execute(createSalesTable);
-            stmt.execute(createMonthlySalesTable);
-            stmt.execute(createSettingsTable);
-            stmt.execute(createSerialCounterTable);
-
-            // Lightweight migration for older DBs (add missing columns)
-            ensureProductsQuantityColumn(stmt);
-            ensureProductsSaltColumn(stmt);
-            ensureProductsMfgDateColumn(stmt);
-            
-            // Initialize serial counter if not exists
-            stmt.execute("INSERT OR IGNORE INTO serial_counter (id, counter) VALUES (1, 1000)");
-            
-            // Initialize owner password if not exists
-            stmt.execute("INSERT OR IGNORE INTO settings (key, value) VALUES ('owner_password', 'owner123')");
-            
-            // Initialize monthly sales
-            for (int i = 0; i < 12; i++) {
-                stmt.execute(String.format(
-                    "INSERT OR IGNORE INTO monthly_sales (month, amount) VALUES (%d, 0)", i));
-            }
-
-            // Ensure serial_counter is not behind existing products (prevents duplicate PK on insert)
-            syncSerialCounterWithProducts(stmt);
-            
+        try (Connection conn = getConnection()) {
+            new SchemaMigrator(SchemaMigrations.all()).migrate(conn);
         } catch (SQLException e) {
             System.err.println("Error initializing database: " + e.getMessage());
             e.printStackTrace();
         }
     }
 
-    private void ensureProductsQuantityColumn(Statement stmt) throws SQLException {
-        boolean hasQuantity = false;
-        try (ResultSet rs = stmt.executeQuery("PRAGMA table_info('products')")) {
-            while (rs.next()) {
-                String col = rs.getString("name");
-                if ("quantity".equalsIgnoreCase(col)) {
-                    hasQuantity = true;
-                    break;
-                }
-            }
-        }
-
-        if (!hasQuantity) {
-            stmt.execute("ALTER TABLE products ADD COLUMN quantity INTEGER NOT NULL DEFAULT 0");
-        }
-    }
-
-    private void ensureProductsSaltColumn(Statement stmt) throws SQLException {
-        boolean hasSalt = false;
-        try (ResultSet rs = stmt.executeQuery("PRAGMA table_info('products')")) {
-            while (rs.next()) {
-                String col = rs.getString("name");
-                if ("salt".equalsIgnoreCase(col)) {
-                    hasSalt = true;
-                    break;
-                }
+    private void startIndexMaintenance() {
+        // Building an index over a large sales table can take a while; keep it off the startup path.
+        // The builds go through the writer, so they never hold the write lock against it.
+        Thread t = new Thread(() -> {
+            try {
+                indexCatalog.ensureIndexes(this);
+            } catch (SQLException e) {
+                System.err.println("Error creating indexes: " + e.getMessage());
             }
-        }
-
-        if (!hasSalt) {
-            stmt.execute("ALTER TABLE products ADD COLUMN salt TEXT");
-        }
-    }
-
-    private void ensureProductsMfgDateColumn(Statement stmt) throws SQLException {
-        boolean hasMfgDate = false;
-        try (ResultSet rs = stmt.executeQuery("PRAGMA table_info('products')")) {
-            while (rs.next()) {
-                String col = rs.getString("name");
-                if ("mfg_date".equalsIgnoreCase(col)) {
-                    hasMfgDate = true;
-                    break;
-                }
-            }
-        }
-
-        if (!hasMfgDate) {
-            stmt.execute("ALTER TABLE products ADD COLUMN mfg_date TEXT");
-        }
-    }
-
-    private void syncSerialCounterWithProducts(Statement stmt) throws SQLException {
-        int maxSerial = 0;
-        try (ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(serial), 0) AS max_serial FROM products")) {
-            if (rs.next()) maxSerial = rs.getInt("max_serial");
-        }
-
-        int counter = 1000;
-        try (ResultSet rs = stmt.executeQuery("SELECT counter FROM serial_counter WHERE id = 1")) {
-            if (rs.next()) counter = rs.getInt("counter");
-        }
-
-        if (maxSerial > counter) {
-            stmt.execute("UPDATE serial_counter SET counter = " + maxSerial + " WHERE id = 1");
-        }
+        }, "db-index-maintenance");
+        t.setDaemon(true);
+        t.start();
     }
 
     private static Path resolveDbFile() {
@@ -0,0 +1,230 @@
+package com.pharmacy.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Declarative list of the secondary indexes the DAOs rely on.
+ *
+ * {@link #ensureIndexes(DatabaseManager)} creates whatever is missing through the commit
+ * queue, one index per write, so bills and other writes queue between index builds instead
+ * of failing on a busy database. Planner statistics are refreshed afterwards.
+ * {@link #report(Connection)} shows, per index, whether it exists, its size on disk and
+ * whether the planner picks it for the query it was added for.
+ */
+public class IndexCatalog {
+
+    public static final class IndexDefinition {
+        private final String name;
+        private final String table;
+        private final List<String> columns;
+        private final String probeQuery;
+
+        public IndexDefinition(String name, String table, List<String> columns, String probeQuery) {
+            this.name = name;
+            this.table = table;
+            this.columns = List.copyOf(columns);
+            this.probeQuery = probeQuery;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getTable() {
+            return table;
+        }
+
+        public List<String> getColumns() {
+            return columns;
+        }
+
+        public String getProbeQuery() {
+            return probeQuery;
+        }
+
+        String createSql() {
+            return "CREATE INDEX IF NOT EXISTS " + name + " ON " + table + " (" + String.join(", ", columns) + ")";
+        }
+    }
+
+    public static final class IndexReport {
+        private final IndexDefinition definition;
+        private final boolean present;
+        private final long sizeBytes;
+        private final String statistics;
+        private final boolean usedByProbe;
+
+        private IndexReport(IndexDefinition definition, boolean present, long sizeBytes, String statistics, boolean usedByProbe) {
+            this.definition = definition;
+            this.present = present;
+            this.sizeBytes = sizeBytes;
+            this.statistics = statistics;
+            this.usedByProbe = usedByProbe;
+        }
+
+        public IndexDefinition getDefinition() {
+            return definition;
+        }
+
+        public boolean isPresent() {
+            return present;
+        }
+
+        /**
+         * @return size on disk, or -1 when the SQLite build has no dbstat table
+         */
+        public long getSizeBytes() {
+            return sizeBytes;
+        }
+
+        /**
+         * @return the sqlite_stat1 entry written by ANALYZE (row count, then average rows per key prefix)
+         */
+        public String getStatistics() {
+            return statistics;
+        }
+
+        /**
+         * @return whether the query planner chooses this index for its probe query
+         */
+        public boolean isUsedByProbe() {
+            return usedByProbe;
+        }
+    }
+
+    private static final List<IndexDefinition> DEFAULT_INDEXES = List.of(
+            new IndexDefinition("idx_sales_sale_date", "sales", List.of("sale_date"),
+                    "SELECT COUNT(*), SUM(amount) FROM sales WHERE sale_date = '2000-01-01'"),
+            new IndexDefinition("idx_sales_serial_date", "sales", List.of("product_serial", "sale_date"),
+                    "SELECT SUM(quantity) FROM sales WHERE product_serial = 0 AND sale_date >= '2000-01-01'"),
+            new IndexDefinition("idx_products_name_batch", "products", List.of("name", "batch"),
+                    "SELECT * FROM products WHERE name = '' AND batch = ''"),
+            new IndexDefinition("idx_products_exp_date", "products", List.of("exp_date"),
+                    "SELECT serial FROM products WHERE exp_date < '2000-01-01'"),
+            new IndexDefinition("idx_products_company", "products", List.of("company"),
+                    "SELECT serial FROM products WHERE company = ''"),
+            new IndexDefinition("idx_products_distributor", "products", List.of("distributor"),
+                    "SELECT serial FROM products WHERE distributor = ''")
+    );
+
+    private final List<IndexDefinition> indexes;
+
+    public IndexCatalog() {
+        this(DEFAULT_INDEXES);
+    }
+
+    public IndexCatalog(List<IndexDefinition> indexes) {
+        this.indexes = List.copyOf(indexes);
+    }
+
+    public List<IndexDefinition> getIndexes() {
+        return indexes;
+    }
+
+    /**
+     * Creates missing indexes and runs ANALYZE if anything was created. Each statement is
+     * its own command on the writer thread.
+     *
+     * @return number of indexes created
+     */
+    public int ensureIndexes(DatabaseManager db) throws SQLException {
+        Set<String> existing;
+        try (Connection conn = db.getReadConnection()) {
+            existing = existingIndexNames(conn);
+        }
+        int created = 0;
+        for (IndexDefinition def : indexes) {
+            if (existing.contains(def.getName())) continue;
+            db.write(conn -> execute(conn, def.createSql()));
+            created++;
+        }
+        if (created > 0) {
+            db.write(conn -> execute(conn, "ANALYZE"));
+        }
+        return created;
+    }
+
+    private static Void execute(Connection conn, String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+        return null;
+    }
+
+    public List<IndexReport> report(Connection conn) throws SQLException {
+        Set<String> existing = existingIndexNames(conn);
+        Map<String, String> stats = readStatistics(conn);
+
+        List<IndexReport> reports = new ArrayList<>();
+        for (IndexDefinition def : indexes) {
+            boolean present = existing.contains(def.getName());
+            reports.add(new IndexReport(
+                    def,
+                    present,
+                    present ? indexSize(conn, def.getName()) : 0,
+                    stats.get(def.getName()),
+                    present && plannerUses(conn, def)
+            ));
+        }
+        return reports;
+    }
+
+    private static Set<String> existingIndexNames(Connection conn) throws SQLException {
+        Set<String> names = new HashSet<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT name FROM sqlite_master WHERE type = 'index'")) {
+            while (rs.next()) {
+                names.add(rs.getString("name"));
+            }
+        }
+        return names;
+    }
+
+    private static Map<String, String> readStatistics(Connection conn) {
+        Map<String, String> stats = new HashMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT idx, stat FROM sqlite_stat1 WHERE idx IS NOT NULL")) {
+            while (rs.next()) {
+                stats.put(rs.getString("idx"), rs.getString("stat"));
+            }
+        } catch (SQLException ignored) {
+            // sqlite_stat1 only exists after the first ANALYZE.
+        }
+        return stats;
+    }
+
+    private static long indexSize(Connection conn, String indexName) {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT COALESCE(SUM(pgsize), 0) AS size FROM dbstat WHERE name = ?")) {
+            pstmt.setString(1, indexName);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getLong("size") : -1;
+            }
+        } catch (SQLException e) {
+            // SQLite built without SQLITE_ENABLE_DBSTAT_VTAB.
+            return -1;
+        }
+    }
+
+    private static boolean plannerUses(Connection conn, IndexDefinition def) {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("EXPLAIN QUERY PLAN " + def.getProbeQuery())) {
+            while (rs.next()) {
+                String detail = rs.getString("detail");
+                if (detail != null && detail.contains("INDEX " + def.getName())) return true;
+            }
+        } catch (SQLException ignored) {
+            // Treat an unexplainable probe as "not used".
+        }
+        return false;
+    }
+}
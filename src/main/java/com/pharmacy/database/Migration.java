@@ -0,0 +1,113 @@
+package com.pharmacy.database;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * One ordered schema change. A migration is applied exactly once, inside its own
+ * transaction, and is recorded in {@code schema_version} with a checksum of its
+ * definition so later edits to an already-applied step can be detected.
+ */
+public final class Migration {
+
+    @FunctionalInterface
+    public interface Step {
+        void apply(Connection conn) throws SQLException;
+    }
+
+    private final int version;
+    private final String description;
+    private final String checksum;
+    private final Step step;
+
+    private Migration(int version, String description, String definition, Step step) {
+        this.version = version;
+        this.description = description;
+        this.checksum = crc32(description + "\n" + definition);
+        this.step = step;
+    }
+
+    /**
+     * Migration made of plain SQL statements, executed in order.
+     */
+    public static Migration sql(int version, String description, String... statements) {
+        List<String> sql = List.of(statements);
+        return new Migration(version, description, String.join(";\n", sql), conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                for (String s : sql) {
+                    stmt.execute(s);
+                }
+            }
+        });
+    }
+
+    /**
+     * Like {@link #sql}, but only when SQLite was built with {@code compileOption} (e.g.
+     * {@code ENABLE_FTS5}). Without it the statements are skipped and the skip is recorded
+     * in {@code settings} as {@code skipped_migration_<version>}, so the migrations after
+     * this one still apply and callers can fall back.
+     */
+    public static Migration sqlIfCompiledWith(String compileOption, int version, String description,
+                                              String... statements) {
+        Migration plain = sql(version, description, statements);
+        return new Migration(version, description, String.join(";\n", statements), conn -> {
+            if (isCompiledWith(conn, compileOption)) {
+                plain.apply(conn);
+                return;
+            }
+            System.err.println("SQLite lacks " + compileOption + "; skipping schema migration "
+                    + version + " (" + description + ").");
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "INSERT OR REPLACE INTO settings (key, value) VALUES (?, ?)")) {
+                pstmt.setString(1, "skipped_migration_" + version);
+                pstmt.setString(2, "missing " + compileOption);
+                pstmt.executeUpdate();
+            }
+        });
+    }
+
+    private static boolean isCompiledWith(Connection conn, String compileOption) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT sqlite_compileoption_used(?)")) {
+            pstmt.setString(1, compileOption);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() && rs.getInt(1) == 1;
+            }
+        }
+    }
+
+    /**
+     * Migration that needs Java logic. {@code definition} should describe what the step
+     * does (e.g. the columns it adds); it is what the checksum is computed from.
+     */
+    public static Migration code(int version, String description, String definition, Step step) {
+        return new Migration(version, description, definition, step);
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+
+    void apply(Connection conn) throws SQLException {
+        step.apply(conn);
+    }
+
+    private static String crc32(String text) {
+        CRC32 crc = new CRC32();
+        crc.update(text.getBytes(StandardCharsets.UTF_8));
+        return Long.toHexString(crc.getValue());
+    }
+}
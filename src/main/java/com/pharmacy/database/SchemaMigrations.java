@@ -0,0 +1,490 @@
+package com.pharmacy.database;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The ordered list of schema changes. Append new migrations at the end with the next
+ * version number; never edit one that has shipped.
+ */
+final class SchemaMigrations {
+    private SchemaMigrations() {}
+
+    static List<Migration> all() {
+        return List.of(
+                Migration.sql(1, "Create base tables",
+                        """
+                        CREATE TABLE IF NOT EXISTS products (
+                            serial INTEGER PRIMARY KEY,
+                            name TEXT NOT NULL,
+                            salt TEXT,
+                            company TEXT,
+                            distributor TEXT,
+                            batch TEXT,
+                            purchase_date TEXT NOT NULL,
+                            mfg_date TEXT,
+                            exp_date TEXT NOT NULL,
+                            price REAL NOT NULL,
+                            quantity INTEGER NOT NULL DEFAULT 0
+                        )
+                        """,
+                        """
+                        CREATE TABLE IF NOT EXISTS sales (
+                            id INTEGER PRIMARY KEY AUTOINCREMENT,
+                            sale_date TEXT NOT NULL,
+                            product_serial INTEGER NOT NULL,
+                            product_name TEXT NOT NULL,
+                            quantity INTEGER NOT NULL,
+                            amount REAL NOT NULL,
+                            FOREIGN KEY (product_serial) REFERENCES products(serial)
+                        )
+                        """,
+                        """
+                        CREATE TABLE IF NOT EXISTS monthly_sales (
+                            month INTEGER PRIMARY KEY,
+                            amount REAL DEFAULT 0
+                        )
+                        """,
+                        """
+                        CREATE TABLE IF NOT EXISTS settings (
+                            key TEXT PRIMARY KEY,
+                            value TEXT
+                        )
+                        """,
+                        """
+                        CREATE TABLE IF NOT EXISTS serial_counter (
+                            id INTEGER PRIMARY KEY,
+                            counter INTEGER DEFAULT 1000
+                        )
+                        """),
+
+                // Older DBs were created before these columns existed.
+                Migration.code(2, "Add missing product columns",
+                        "quantity INTEGER NOT NULL DEFAULT 0; salt TEXT; mfg_date TEXT",
+                        conn -> {
+                            Set<String> columns = tableColumns(conn, "products");
+                            try (Statement stmt = conn.createStatement()) {
+                                if (!columns.contains("quantity")) {
+                                    stmt.execute("ALTER TABLE products ADD COLUMN quantity INTEGER NOT NULL DEFAULT 0");
+                                }
+                                if (!columns.contains("salt")) {
+                                    stmt.execute("ALTER TABLE products ADD COLUMN salt TEXT");
+                                }
+                                if (!columns.contains("mfg_date")) {
+                                    stmt.execute("ALTER TABLE products ADD COLUMN mfg_date TEXT");
+                                }
+                            }
+                        }),
+
+                Migration.sql(3, "Seed default rows",
+                        "INSERT OR IGNORE INTO serial_counter (id, counter) VALUES (1, 1000)",
+                        "INSERT OR IGNORE INTO settings (key, value) VALUES ('owner_password', 'owner123')",
+                        """
+                        INSERT OR IGNORE INTO monthly_sales (month, amount)
+                        VALUES (0, 0), (1, 0), (2, 0), (3, 0), (4, 0), (5, 0),
+                               (6, 0), (7, 0), (8, 0), (9, 0), (10, 0), (11, 0)
+                        """),
+
+                // Ensure serial_counter is not behind existing products (prevents duplicate PK on insert)
+                Migration.sql(4, "Sync serial counter with products",
+                        """
+                        UPDATE serial_counter
+                        SET counter = (SELECT MAX(serial) FROM products)
+                        WHERE id = 1 AND (SELECT COALESCE(MAX(serial), 0) FROM products) > counter
+                        """),
+
+                // Full-text index over the searchable product columns, kept in sync by triggers.
+                // Quantity-only updates (billing) do not touch it. Skipped on SQLite builds without
+                // FTS5; search then falls back to scanning names.
+                Migration.sqlIfCompiledWith("ENABLE_FTS5", 5, "Add product full-text search",
+                        """
+                        CREATE VIRTUAL TABLE IF NOT EXISTS products_fts USING fts5(
+                            name, salt, company, distributor, batch,
+                            content = 'products',
+                            content_rowid = 'serial',
+                            tokenize = 'unicode61 remove_diacritics 2',
+                            prefix = '2 3'
+                        )
+                        """,
+                        """
+                        CREATE TRIGGER IF NOT EXISTS products_fts_ai AFTER INSERT ON products BEGIN
+                            INSERT INTO products_fts (rowid, name, salt, company, distributor, batch)
+                            VALUES (new.serial, new.name, new.salt, new.company, new.distributor, new.batch);
+                        END
+                        """,
+                        """
+                        CREATE TRIGGER IF NOT EXISTS products_fts_ad AFTER DELETE ON products BEGIN
+                            INSERT INTO products_fts (products_fts, rowid, name, salt, company, distributor, batch)
+                            VALUES ('delete', old.serial, old.name, old.salt, old.company, old.distributor, old.batch);
+                        END
+                        """,
+                        """
+                        CREATE TRIGGER IF NOT EXISTS products_fts_au
+                        AFTER UPDATE OF name, salt, company, distributor, batch ON products BEGIN
+                            INSERT INTO products_fts (products_fts, rowid, name, salt, company, distributor, batch)
+                            VALUES ('delete', old.serial, old.name, old.salt, old.company, old.distributor, old.batch);
+                            INSERT INTO products_fts (rowid, name, salt, company, distributor, batch)
+                            VALUES (new.serial, new.name, new.salt, new.company, new.distributor, new.batch);
+                        END
+                        """,
+                        "INSERT INTO products_fts (products_fts) VALUES ('rebuild')"),
+
+                // One row per product holding the version of its latest change, so open panels
+                // can fetch only what changed since they last looked. Versions only grow.
+                Migration.sql(6, "Add product change feed",
+                        """
+                        CREATE TABLE IF NOT EXISTS product_changes (
+                            serial INTEGER PRIMARY KEY,
+                            version INTEGER NOT NULL
+                        )
+                        """,
+                        "CREATE INDEX IF NOT EXISTS idx_product_changes_version ON product_changes(version)",
+                        """
+                        CREATE TRIGGER IF NOT EXISTS products_changes_ai AFTER INSERT ON products BEGIN
+                            INSERT OR REPLACE INTO product_changes (serial, version)
+                            VALUES (new.serial, (SELECT COALESCE(MAX(version), 0) + 1 FROM product_changes));
+                        END
+                        """,
+                        """
+                        CREATE TRIGGER IF NOT EXISTS products_changes_au AFTER UPDATE ON products BEGIN
+                            INSERT OR REPLACE INTO product_changes (serial, version)
+                            VALUES (new.serial, (SELECT COALESCE(MAX(version), 0) + 1 FROM product_changes));
+                        END
+                        """,
+                        """
+                        CREATE TRIGGER IF NOT EXISTS products_changes_ad AFTER DELETE ON products BEGIN
+                            INSERT OR REPLACE INTO product_changes (serial, version)
+                            VALUES (old.serial, (SELECT COALESCE(MAX(version), 0) + 1 FROM product_changes));
+                        END
+                        """),
+
+                // Company/distributor dictionaries with live product counts. Products keep the text
+                // columns (FTS, tools/ scripts and older builds read them) and gain the ids.
+                Migration.sql(7, "Add company and distributor dictionaries",
+                        """
+                        CREATE TABLE IF NOT EXISTS companies (
+                            id INTEGER PRIMARY KEY,
+                            name TEXT NOT NULL UNIQUE,
+                            product_count INTEGER NOT NULL DEFAULT 0
+                        )
+                        """,
+                        "ALTER TABLE products ADD COLUMN company_id INTEGER REFERENCES companies(id)",
+                        """
+                        INSERT OR IGNORE INTO companies (name)
+                        SELECT DISTINCT TRIM(company) FROM products WHERE TRIM(COALESCE(company, '')) <> ''
+                        """,
+                        "UPDATE products SET company_id = (SELECT id FROM companies WHERE name = TRIM(products.company))",
+                        """
+                        UPDATE companies SET product_count = COALESCE((
+                            SELECT t.cnt FROM (SELECT company_id, COUNT(*) AS cnt FROM products GROUP BY company_id) t
+                            WHERE t.company_id = companies.id), 0)
+                        """,
+                        """
+                        CREATE TRIGGER IF NOT EXISTS products_company_ai AFTER INSERT ON products
+                        WHEN TRIM(COALESCE(new.company, '')) <> '' BEGIN
+                            INSERT OR IGNORE INTO companies (name) VALUES (TRIM(new.company));
+                            UPDATE companies SET product_count = product_count + 1 WHERE name = TRIM(new.company);
+                            UPDATE products SET company_id = (SELECT id FROM companies WHERE name = TRIM(new.company))
+                            WHERE serial = new.serial;
+                        END
+                        """,
+                        """
+                        CREATE TRIGGER IF NOT EXISTS products_company_au AFTER UPDATE OF company ON products
+                        WHEN TRIM(COALESCE(old.company, '')) <> TRIM(COALESCE(new.company, '')) BEGIN
+                            UPDATE companies SET product_count = product_count - 1 WHERE name = TRIM(old.company);
+                            INSERT OR IGNORE INTO companies (name)
+                            SELECT TRIM(new.company) WHERE TRIM(COALESCE(new.company, '')) <> '';
+                            UPDATE companies SET product_count = product_count + 1 WHERE name = TRIM(new.company);
+                            UPDATE products SET company_id = (SELECT id FROM companies WHERE name = TRIM(new.company))
+                            WHERE serial = new.serial;
+                        END
+                        """,
+                        """
+                        CREATE TRIGGER IF NOT EXISTS products_company_ad AFTER DELETE ON products BEGIN
+                            UPDATE companies SET product_count = product_count - 1 WHERE name = TRIM(old.company);
+                        END
+                        """,
+                        """
+                        CREATE TABLE IF NOT EXISTS distributors (
+                            id INTEGER PRIMARY KEY,
+                            name TEXT NOT NULL UNIQUE,
+                            product_count INTEGER NOT NULL DEFAULT 0
+                        )
+                        """,
+                        "ALTER TABLE products ADD COLUMN distributor_id INTEGER REFERENCES distributors(id)",
+                        """
+                        INSERT OR IGNORE INTO distributors (name)
+                        SELECT DISTINCT TRIM(distributor) FROM products WHERE TRIM(COALESCE(distributor, '')) <> ''
+                        """,
+                        "UPDATE products SET distributor_id = (SELECT id FROM distributors WHERE name = TRIM(products.distributor))",
+                        """
+                        UPDATE distributors SET product_count = COALESCE((
+                            SELECT t.cnt FROM (SELECT distributor_id, COUNT(*) AS cnt FROM products GROUP BY distributor_id) t
+                            WHERE t.distributor_id = distributors.id), 0)
+                        """,
+                        """
+                        CREATE TRIGGER IF NOT EXISTS products_distributor_ai AFTER INSERT ON products
+                        WHEN TRIM(COALESCE(new.distributor, '')) <> '' BEGIN
+                            INSERT OR IGNORE INTO distributors (name) VALUES (TRIM(new.distributor));
+                            UPDATE distributors SET product_count = product_count + 1 WHERE name = TRIM(new.distributor);
+                            UPDATE products SET distributor_id = (SELECT id FROM distributors WHERE name = TRIM(new.distributor))
+                            WHERE serial = new.serial;
+                        END
+                        """,
+                        """
+                        CREATE TRIGGER IF NOT EXISTS products_distributor_au AFTER UPDATE OF distributor ON products
+                        WHEN TRIM(COALESCE(old.distributor, '')) <> TRIM(COALESCE(new.distributor, '')) BEGIN
+                            UPDATE distributors SET product_count = product_count - 1 WHERE name = TRIM(old.distributor);
+                            INSERT OR IGNORE INTO distributors (name)
+                            SELECT TRIM(new.distributor) WHERE TRIM(COALESCE(new.distributor, '')) <> '';
+                            UPDATE distributors SET product_count = product_count + 1 WHERE name = TRIM(new.distributor);
+                            UPDATE products SET distributor_id = (SELECT id FROM distributors WHERE name = TRIM(new.distributor))
+                            WHERE serial = new.serial;
+                        END
+                        """,
+                        """
+                        CREATE TRIGGER IF NOT EXISTS products_distributor_ad AFTER DELETE ON products BEGIN
+                            UPDATE distributors SET product_count = product_count - 1 WHERE name = TRIM(old.distributor);
+                        END
+                        """),
+
+                // Stock held per batch. products.quantity stays the total on hand and products.batch /
+                // exp_date describe the first batch to expire, so existing screens keep working.
+                // Billing allocates from here first-expiry-first-out; every other write to a product
+                // row is treated as a stock correction and mirrored into its batches by triggers.
+                Migration.sql(8, "Add stock batches and sale allocations",
+                        """
+                        CREATE TABLE IF NOT EXISTS stock_batches (
+                            id INTEGER PRIMARY KEY,
+                            product_serial INTEGER NOT NULL REFERENCES products(serial),
+                            batch TEXT NOT NULL DEFAULT '',
+                            purchase_date TEXT,
+                            mfg_date TEXT,
+                            exp_date TEXT NOT NULL,
+                            quantity INTEGER NOT NULL DEFAULT 0
+                        )
+                        """,
+                        // FEFO order per product; depleted batches drop out of the index, so allocation
+                        // cost does not grow with a product's batch history.
+                        """
+                        CREATE INDEX IF NOT EXISTS idx_stock_batches_fefo
+                        ON stock_batches(product_serial, exp_date, id) WHERE quantity > 0
+                        """,
+                        "CREATE INDEX IF NOT EXISTS idx_stock_batches_product ON stock_batches(product_serial, batch)",
+                        """
+                        CREATE TABLE IF NOT EXISTS sale_allocations (
+                            sale_id INTEGER NOT NULL REFERENCES sales(id),
+                            batch_id INTEGER NOT NULL REFERENCES stock_batches(id),
+                            quantity INTEGER NOT NULL,
+                            PRIMARY KEY (sale_id, batch_id)
+                        )
+                        """,
+                        "CREATE INDEX IF NOT EXISTS idx_sale_allocations_batch ON sale_allocations(batch_id)",
+                        """
+                        INSERT INTO stock_batches (product_serial, batch, purchase_date, mfg_date, exp_date, quantity)
+                        SELECT serial, COALESCE(batch, ''), purchase_date, mfg_date, exp_date, quantity FROM products
+                        """,
+                        """
+                        CREATE TRIGGER IF NOT EXISTS products_batches_ai AFTER INSERT ON products BEGIN
+                            INSERT INTO stock_batches (product_serial, batch, purchase_date, mfg_date, exp_date, quantity)
+                            VALUES (new.serial, COALESCE(new.batch, ''), new.purchase_date, new.mfg_date, new.exp_date, new.quantity);
+                        END
+                        """,
+                        // Billing and receiving keep products.quantity equal to the batch total, so for
+                        // them only the first statement can match, and it rewrites a batch to itself.
+                        """
+                        CREATE TRIGGER IF NOT EXISTS products_batches_au
+                        AFTER UPDATE OF quantity, batch, mfg_date, exp_date ON products BEGIN
+                            -- One batch in stock: the product row describes it
+                            UPDATE stock_batches
+                            SET batch = COALESCE(new.batch, ''), mfg_date = new.mfg_date, exp_date = new.exp_date,
+                                quantity = new.quantity
+                            WHERE id = (SELECT id FROM stock_batches WHERE product_serial = new.serial AND quantity > 0)
+                              AND (SELECT COUNT(*) FROM stock_batches WHERE product_serial = new.serial AND quantity > 0) = 1;
+                            -- Otherwise the batch named on the row takes the difference
+                            INSERT INTO stock_batches (product_serial, batch, purchase_date, mfg_date, exp_date, quantity)
+                            SELECT new.serial, COALESCE(new.batch, ''), new.purchase_date, new.mfg_date, new.exp_date, 0
+                            WHERE (SELECT COALESCE(SUM(quantity), 0) FROM stock_batches WHERE product_serial = new.serial) <> new.quantity
+                              AND NOT EXISTS (SELECT 1 FROM stock_batches WHERE product_serial = new.serial
+                                              AND batch = COALESCE(new.batch, '') AND exp_date = new.exp_date);
+                            UPDATE stock_batches
+                            SET quantity = MAX(0, quantity + new.quantity
+                                - (SELECT SUM(quantity) FROM stock_batches WHERE product_serial = new.serial))
+                            WHERE id = (SELECT MAX(id) FROM stock_batches WHERE product_serial = new.serial
+                                        AND batch = COALESCE(new.batch, '') AND exp_date = new.exp_date);
+                            -- A count below what the other batches hold: keep it all on the named batch
+                            UPDATE stock_batches
+                            SET quantity = CASE WHEN id = (SELECT MAX(id) FROM stock_batches WHERE product_serial = new.serial
+                                                           AND batch = COALESCE(new.batch, '') AND exp_date = new.exp_date)
+                                                THEN new.quantity ELSE 0 END
+                            WHERE product_serial = new.serial
+                              AND (SELECT SUM(quantity) FROM stock_batches WHERE product_serial = new.serial) <> new.quantity;
+                        END
+                        """,
+                        """
+                        CREATE TRIGGER IF NOT EXISTS products_batches_ad AFTER DELETE ON products BEGIN
+                            UPDATE stock_batches SET quantity = 0 WHERE product_serial = old.serial;
+                        END
+                        """),
+
+                // Billing now decrements products.quantity on its own after taking stock from the
+                // batches. Only rewrite the single batch in stock when the row actually describes
+                // something new, so a plain decrement never relabels that batch.
+                Migration.sql(9, "Rewrite single batch only on real product edits",
+                        "DROP TRIGGER IF EXISTS products_batches_au",
+                        """
+                        CREATE TRIGGER IF NOT EXISTS products_batches_au
+                        AFTER UPDATE OF quantity, batch, mfg_date, exp_date ON products BEGIN
+                            -- One batch in stock: the product row describes it
+                            UPDATE stock_batches
+                            SET batch = COALESCE(new.batch, ''), mfg_date = new.mfg_date, exp_date = new.exp_date,
+                                quantity = new.quantity
+                            WHERE id = (SELECT id FROM stock_batches WHERE product_serial = new.serial AND quantity > 0)
+                              AND (SELECT COUNT(*) FROM stock_batches WHERE product_serial = new.serial AND quantity > 0) = 1
+                              AND (old.batch IS NOT new.batch OR old.mfg_date IS NOT new.mfg_date
+                                   OR old.exp_date IS NOT new.exp_date
+                                   OR (SELECT SUM(quantity) FROM stock_batches WHERE product_serial = new.serial) <> new.quantity);
+                            -- Otherwise the batch named on the row takes the difference
+                            INSERT INTO stock_batches (product_serial, batch, purchase_date, mfg_date, exp_date, quantity)
+                            SELECT new.serial, COALESCE(new.batch, ''), new.purchase_date, new.mfg_date, new.exp_date, 0
+                            WHERE (SELECT COALESCE(SUM(quantity), 0) FROM stock_batches WHERE product_serial = new.serial) <> new.quantity
+                              AND NOT EXISTS (SELECT 1 FROM stock_batches WHERE product_serial = new.serial
+                                              AND batch = COALESCE(new.batch, '') AND exp_date = new.exp_date);
+                            UPDATE stock_batches
+                            SET quantity = MAX(0, quantity + new.quantity
+                                - (SELECT SUM(quantity) FROM stock_batches WHERE product_serial = new.serial))
+                            WHERE id = (SELECT MAX(id) FROM stock_batches WHERE product_serial = new.serial
+                                        AND batch = COALESCE(new.batch, '') AND exp_date = new.exp_date);
+                            -- A count below what the other batches hold: keep it all on the named batch
+                            UPDATE stock_batches
+                            SET quantity = CASE WHEN id = (SELECT MAX(id) FROM stock_batches WHERE product_serial = new.serial
+                                                           AND batch = COALESCE(new.batch, '') AND exp_date = new.exp_date)
+                                                THEN new.quantity ELSE 0 END
+                            WHERE product_serial = new.serial
+                              AND (SELECT SUM(quantity) FROM stock_batches WHERE product_serial = new.serial) <> new.quantity;
+                        END
+                        """),
+
+                // One header row per bill; its sale lines point at it. Sales recorded before this
+                // (and single sales from addSale) have no bill.
+                Migration.sql(10, "Add bills",
+                        """
+                        CREATE TABLE IF NOT EXISTS bills (
+                            id INTEGER PRIMARY KEY AUTOINCREMENT,
+                            created_at TEXT NOT NULL,
+                            sale_date TEXT NOT NULL,
+                            total_amount REAL NOT NULL,
+                            total_quantity INTEGER NOT NULL,
+                            line_count INTEGER NOT NULL
+                        )
+                        """,
+                        "CREATE INDEX IF NOT EXISTS idx_bills_sale_date ON bills(sale_date)",
+                        "ALTER TABLE sales ADD COLUMN bill_id INTEGER REFERENCES bills(id)",
+                        "CREATE INDEX IF NOT EXISTS idx_sales_bill_id ON sales(bill_id)"),
+
+                // Sales totals per day, month (YYYY-MM) and year, per product and overall
+                // (product_serial 0). Kept up to date by SaleDAO in the same transaction as the
+                // sale; SalesRollupDAO.rebuild() recomputes them from sales.
+                Migration.sql(11, "Add sales rollups",
+                        """
+                        CREATE TABLE IF NOT EXISTS sales_daily (
+                            day TEXT NOT NULL,
+                            product_serial INTEGER NOT NULL,
+                            quantity INTEGER NOT NULL DEFAULT 0,
+                            amount REAL NOT NULL DEFAULT 0,
+                            line_count INTEGER NOT NULL DEFAULT 0,
+                            bill_count INTEGER NOT NULL DEFAULT 0,
+                            PRIMARY KEY (day, product_serial)
+                        ) WITHOUT ROWID
+                        """,
+                        """
+                        CREATE TABLE IF NOT EXISTS sales_monthly (
+                            month TEXT NOT NULL,
+                            product_serial INTEGER NOT NULL,
+                            quantity INTEGER NOT NULL DEFAULT 0,
+                            amount REAL NOT NULL DEFAULT 0,
+                            line_count INTEGER NOT NULL DEFAULT 0,
+                            bill_count INTEGER NOT NULL DEFAULT 0,
+                            PRIMARY KEY (month, product_serial)
+                        ) WITHOUT ROWID
+                        """,
+                        """
+                        CREATE TABLE IF NOT EXISTS sales_yearly (
+                            year INTEGER NOT NULL,
+                            product_serial INTEGER NOT NULL,
+                            quantity INTEGER NOT NULL DEFAULT 0,
+                            amount REAL NOT NULL DEFAULT 0,
+                            line_count INTEGER NOT NULL DEFAULT 0,
+                            bill_count INTEGER NOT NULL DEFAULT 0,
+                            PRIMARY KEY (year, product_serial)
+                        ) WITHOUT ROWID
+                        """,
+                        """
+                        INSERT INTO sales_daily (day, product_serial, quantity, amount, line_count, bill_count)
+                        SELECT sale_date, product_serial, SUM(quantity), SUM(amount), COUNT(*), COUNT(bill_id)
+                        FROM sales GROUP BY sale_date, product_serial
+                        """,
+                        """
+                        INSERT INTO sales_daily (day, product_serial, quantity, amount, line_count, bill_count)
+                        SELECT sale_date, 0, SUM(quantity), SUM(amount), COUNT(*),
+                               (SELECT COUNT(*) FROM bills WHERE bills.sale_date = sales.sale_date)
+                        FROM sales GROUP BY sale_date
+                        """,
+                        """
+                        INSERT INTO sales_monthly (month, product_serial, quantity, amount, line_count, bill_count)
+                        SELECT SUBSTR(day, 1, 7), product_serial, SUM(quantity), SUM(amount), SUM(line_count), SUM(bill_count)
+                        FROM sales_daily GROUP BY SUBSTR(day, 1, 7), product_serial
+                        """,
+                        """
+                        INSERT INTO sales_yearly (year, product_serial, quantity, amount, line_count, bill_count)
+                        SELECT CAST(SUBSTR(month, 1, 4) AS INTEGER), product_serial, SUM(quantity), SUM(amount),
+                               SUM(line_count), SUM(bill_count)
+                        FROM sales_monthly GROUP BY SUBSTR(month, 1, 4), product_serial
+                        """),
+
+                // Returns and voids are bills of their own with negative sale lines that point at
+                // the lines they reverse. A return is dated the day of the refund; a void takes the
+                // original bill's date, so that day's totals net out as if it never happened.
+                Migration.sql(12, "Add returns and voids",
+                        "ALTER TABLE bills ADD COLUMN kind TEXT NOT NULL DEFAULT 'SALE'",
+                        "ALTER TABLE bills ADD COLUMN original_bill_id INTEGER REFERENCES bills(id)",
+                        """
+                        CREATE INDEX IF NOT EXISTS idx_bills_original_bill_id
+                        ON bills(original_bill_id) WHERE original_bill_id IS NOT NULL
+                        """,
+                        "ALTER TABLE sales ADD COLUMN original_sale_id INTEGER REFERENCES sales(id)",
+                        """
+                        CREATE INDEX IF NOT EXISTS idx_sales_original_sale_id
+                        ON sales(original_sale_id) WHERE original_sale_id IS NOT NULL
+                        """),
+
+                // Outcome of each bill journal entry, written in the same transaction as the bill.
+                // An entry already listed here is never applied again.
+                Migration.sql(13, "Add bill journal",
+                        """
+                        CREATE TABLE IF NOT EXISTS bill_journal (
+                            seq INTEGER PRIMARY KEY,
+                            bill_id INTEGER REFERENCES bills(id),
+                            error TEXT,
+                            applied_at TEXT NOT NULL
+                        )
+                        """)
+        );
+    }
+
+    static Set<String> tableColumns(Connection conn, String table) throws SQLException {
+        Set<String> columns = new HashSet<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA table_info('" + table + "')")) {
+            while (rs.next()) {
+                columns.add(rs.getString("name").toLowerCase());
+            }
+        }
+        return columns;
+    }
+}
@@ -0,0 +1,106 @@
+package com.pharmacy.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Applies pending {@link Migration}s and records them in {@code schema_version}.
+ *
+ * On an up-to-date database this costs a single read of the version table.
+ */
+public class SchemaMigrator {
+    private final List<Migration> migrations;
+
+    public SchemaMigrator(List<Migration> migrations) {
+        List<Migration> sorted = new ArrayList<>(migrations);
+        sorted.sort(Comparator.comparingInt(Migration::getVersion));
+        for (int i = 1; i < sorted.size(); i++) {
+            if (sorted.get(i).getVersion() == sorted.get(i - 1).getVersion()) {
+                throw new IllegalArgumentException("Duplicate migration version " + sorted.get(i).getVersion());
+            }
+        }
+        this.migrations = sorted;
+    }
+
+    /**
+     * @return number of migrations applied by this call
+     */
+    public int migrate(Connection conn) throws SQLException {
+        Map<Integer, String> applied = readAppliedVersions(conn);
+        int current = applied.keySet().stream().mapToInt(Integer::intValue).max().orElse(0);
+
+        for (Migration m : migrations) {
+            String checksum = applied.get(m.getVersion());
+            if (checksum != null && !checksum.equals(m.getChecksum())) {
+                System.err.println("Warning: schema migration " + m.getVersion() + " (" + m.getDescription()
+                        + ") was changed after it was applied (checksum " + checksum + " != " + m.getChecksum() + ").");
+            }
+        }
+
+        int count = 0;
+        for (Migration m : migrations) {
+            if (m.getVersion() <= current) continue;
+            applyOne(conn, m);
+            count++;
+        }
+        return count;
+    }
+
+    private Map<Integer, String> readAppliedVersions(Connection conn) throws SQLException {
+        Map<Integer, String> applied = new HashMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT version, checksum FROM schema_version")) {
+            while (rs.next()) {
+                applied.put(rs.getInt("version"), rs.getString("checksum"));
+            }
+            return applied;
+        } catch (SQLException e) {
+            String msg = e.getMessage() == null ? "" : e.getMessage().toLowerCase();
+            if (!msg.contains("no such table")) throw e;
+        }
+
+        // First run with the migration engine (new DB, or an older DB created before it existed).
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS schema_version (
+                    version INTEGER PRIMARY KEY,
+                    description TEXT NOT NULL,
+                    checksum TEXT NOT NULL,
+                    applied_at TEXT NOT NULL
+                )
+            """);
+        }
+        return applied;
+    }
+
+    private void applyOne(Connection conn, Migration m) throws SQLException {
+        String recordSql = "INSERT INTO schema_version (version, description, checksum, applied_at) VALUES (?, ?, ?, ?)";
+        conn.setAutoCommit(false);
+        try {
+            m.apply(conn);
+            try (PreparedStatement pstmt = conn.prepareStatement(recordSql)) {
+                pstmt.setInt(1, m.getVersion());
+                pstmt.setString(2, m.getDescription());
+                pstmt.setString(3, m.getChecksum());
+                pstmt.setString(4, LocalDateTime.now().toString());
+                pstmt.executeUpdate();
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw new SQLException("Schema migration " + m.getVersion() + " (" + m.getDescription() + ") failed: "
+                    + e.getMessage(), e);
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package com.pharmacy.gui;
 
+import com.pharmacy.dao.DictionaryCache;
 import com.pharmacy.dao.ProductDAO;
+import com.pharmacy.dao.StockBatchDAO;
 import com.pharmacy.model.Product;
+import com.pharmacy.model.StockBatch;
 import com.pharmacy.util.DateUtil;
 
 import javax.swing.*;
@@ -18,6 +21,7 @@ public class AddProductDialog extends JDialog {
     private JSpinner priceSpinner;
     private JSpinner quantitySpinner;
     private ProductDAO productDAO;
+    private final DictionaryCache dictionary = DictionaryCache.getInstance();
 
     private static final DateTimeFormatter DATE_FMT =
             DateTimeFormatter.ofPattern("dd/MM/uuuu").withResolverStyle(ResolverStyle.STRICT);
@@ -57,6 +61,7 @@ public class AddProductDialog extends JDialog {
         formPanel.add(new JLabel("Company:"), gbc);
         gbc.gridx = 1; gbc.fill = GridBagConstraints.HORIZONTAL; gbc.weightx = 1.0;
         companyField = new JTextField(20);
+        AutoComplete.install(companyField, prefix -> dictionary.complete(DictionaryCache.Kind.COMPANY, prefix));
         formPanel.add(companyField, gbc);
         
         // Distributor
@@ -64,6 +69,7 @@ public class AddProductDialog extends JDialog {
         formPanel.add(new JLabel("Distributor:"), gbc);
         gbc.gridx = 1; gbc.fill = GridBagConstraints.HORIZONTAL; gbc.weightx = 1.0;
         distributorField = new JTextField(20);
+        AutoComplete.install(distributorField, prefix -> dictionary.complete(DictionaryCache.Kind.DISTRIBUTOR, prefix));
         formPanel.add(distributorField, gbc);
         
         // Batch No
@@ -191,6 +197,31 @@ public class AddProductDialog extends JDialog {
                     new EditProductDialog((JFrame) getParent(), duplicates.get(0)).setVisible(true);
                     return;
                 }
+            } else if (quantity > 0) {
+                // A new batch of a product we already stock goes under the same serial
+                var sameName = productDAO.findProductsByName(name);
+                if (!sameName.isEmpty()) {
+                    Product existing = sameName.get(0);
+                    int option = JOptionPane.showConfirmDialog(this,
+                        name + " already exists (S#" + existing.getSerial() + ").\n"
+                            + "Add this as a new batch of that product?",
+                        "New Batch", JOptionPane.YES_NO_CANCEL_OPTION);
+                    if (option == JOptionPane.CANCEL_OPTION || option == JOptionPane.CLOSED_OPTION) return;
+                    if (option == JOptionPane.YES_OPTION) {
+                        StockBatch received = new StockBatch(existing.getSerial(), batch, purchaseDate,
+                                null, expDate, quantity);
+                        if (new StockBatchDAO().receiveBatch(existing.getSerial(), received)) {
+                            JOptionPane.showMessageDialog(this,
+                                "Batch added to S#" + existing.getSerial() + ".",
+                                "Success", JOptionPane.INFORMATION_MESSAGE);
+                            dispose();
+                        } else {
+                            JOptionPane.showMessageDialog(this, "Failed to add batch!",
+                                "Error", JOptionPane.ERROR_MESSAGE);
+                        }
+                        return;
+                    }
+                }
             }
             
             Product product = new Product();
@@ -0,0 +1,50 @@
+package com.pharmacy.gui;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.util.function.Function;
+
+/**
+ * Inline completion for text fields: while typing at the end of the field, the rest of
+ * the first matching value is filled in and selected, so typing on simply replaces it.
+ */
+public final class AutoComplete {
+
+    private AutoComplete() {
+    }
+
+    /**
+     * @param completer returns a full value starting with the typed prefix, or null
+     */
+    public static void install(JTextField field, Function<String, String> completer) {
+        field.getDocument().addDocumentListener(new DocumentListener() {
+            private boolean completing;
+
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                if (completing) return;
+                // The document cannot be changed from inside its own listener
+                SwingUtilities.invokeLater(this::complete);
+            }
+
+            @Override public void removeUpdate(DocumentEvent e) { }
+            @Override public void changedUpdate(DocumentEvent e) { }
+
+            private void complete() {
+                String typed = field.getText();
+                if (typed.isEmpty() || field.getCaretPosition() != typed.length()) return;
+                String match = completer.apply(typed);
+                if (match == null || match.length() <= typed.length()) return;
+
+                completing = true;
+                try {
+                    field.setText(typed + match.substring(typed.length()));
+                    field.select(typed.length(), match.length());
+                } finally {
+                    completing = false;
+                }
+            }
+        });
+    }
+}
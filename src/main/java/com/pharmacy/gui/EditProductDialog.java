@@ -1,5 +1,6 @@
 package com.pharmacy.gui;
 
+import com.pharmacy.dao.DictionaryCache;
 import com.pharmacy.dao.ProductDAO;
 import com.pharmacy.model.Product;
 import com.pharmacy.util.DateUtil;
@@ -21,6 +22,7 @@ public class EditProductDialog extends JDialog {
     private JSpinner priceSpinner;
     private JSpinner quantitySpinner;
     private ProductDAO productDAO;
+    private final DictionaryCache dictionary = DictionaryCache.getInstance();
 
     private static final DateTimeFormatter DATE_FMT =
             DateTimeFormatter.ofPattern("dd/MM/uuuu").withResolverStyle(ResolverStyle.STRICT);
@@ -80,6 +82,7 @@ public class EditProductDialog extends JDialog {
         formPanel.add(new JLabel("Company:"), gbc);
         gbc.gridx = 1; gbc.fill = GridBagConstraints.HORIZONTAL; gbc.weightx = 1.0;
         companyField = new JTextField(20);
+        AutoComplete.install(companyField, prefix -> dictionary.complete(DictionaryCache.Kind.COMPANY, prefix));
         formPanel.add(companyField, gbc);
         
         // Distributor
@@ -87,6 +90,7 @@ public class EditProductDialog extends JDialog {
         formPanel.add(new JLabel("Distributor:"), gbc);
         gbc.gridx = 1; gbc.fill = GridBagConstraints.HORIZONTAL; gbc.weightx = 1.0;
         distributorField = new JTextField(20);
+        AutoComplete.install(distributorField, prefix -> dictionary.complete(DictionaryCache.Kind.DISTRIBUTOR, prefix));
         formPanel.add(distributorField, gbc);
         
         // Batch No
@@ -173,7 +177,16 @@ public class EditProductDialog extends JDialog {
     }
     
     private void loadProductData() {
-        if (product == null) {
+        if (product != null) {
+            // The whole row, quantity included, is written back: start from the database, not a cached copy
+            product = productDAO.getProductFromDatabase(product.getSerial());
+            if (product == null) {
+                JOptionPane.showMessageDialog(this, "Product not found!", 
+                    "Error", JOptionPane.ERROR_MESSAGE);
+                dispose();
+                return;
+            }
+        } else {
             String serialStr = JOptionPane.showInputDialog(this, "Enter Serial Number:");
             if (serialStr == null || serialStr.trim().isEmpty()) {
                 dispose();
@@ -181,7 +194,7 @@ public class EditProductDialog extends JDialog {
             }
             try {
                 int serial = Integer.parseInt(serialStr.trim());
-                product = productDAO.getProductBySerial(serial);
+                product = productDAO.getProductFromDatabase(serial);
                 if (product == null) {
                     JOptionPane.showMessageDialog(this, "Product not found!", 
                         "Error", JOptionPane.ERROR_MESSAGE);
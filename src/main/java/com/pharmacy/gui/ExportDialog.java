@@ -0,0 +1,138 @@
+package com.pharmacy.gui;
+
+import com.pharmacy.io.DataExporter;
+
+import javax.swing.*;
+import javax.swing.filechooser.FileNameExtensionFilter;
+import java.awt.*;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Runs a {@link DataExporter} in the background and shows its progress. The format follows
+ * the file name: {@code .csv} or {@code .jsonl}, with a trailing {@code .gz} for gzip.
+ */
+public class ExportDialog extends JDialog {
+    private final DataExporter exporter;
+    private final LocalDate from;
+    private final LocalDate to;
+    private final JProgressBar progressBar = new JProgressBar(0, 100);
+    private final JLabel statusLabel = new JLabel("Starting…");
+    private final JButton cancelButton = new JButton("Cancel");
+
+    /**
+     * Asks for a file and exports the sales dated {@code from} to {@code to}.
+     */
+    public static void exportSales(Window parent, LocalDate from, LocalDate to) {
+        Path file = chooseFile(parent, "Export Sales", "sales-" + from + "-to-" + to + ".csv");
+        if (file != null) new ExportDialog(parent, file, from, to).setVisible(true);
+    }
+
+    /**
+     * Asks for a file and exports the stock valuation.
+     */
+    public static void exportStock(Window parent) {
+        Path file = chooseFile(parent, "Export Stock", "stock-" + LocalDate.now() + ".csv");
+        if (file != null) new ExportDialog(parent, file, null, null).setVisible(true);
+    }
+
+    private ExportDialog(Window parent, Path file, LocalDate from, LocalDate to) {
+        super(parent, from == null ? "Export Stock" : "Export Sales", ModalityType.APPLICATION_MODAL);
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        boolean gzip = name.endsWith(".gz");
+        if (gzip) name = name.substring(0, name.length() - 3);
+        DataExporter.Format format = name.endsWith("." + DataExporter.Format.JSON_LINES.getExtension())
+                ? DataExporter.Format.JSON_LINES : DataExporter.Format.CSV;
+        this.exporter = new DataExporter(file, format, gzip);
+        this.from = from;
+        this.to = to;
+        initializeUI(file);
+    }
+
+    private static Path chooseFile(Component parent, String title, String suggestedName) {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle(title + " (.csv, .jsonl, add .gz to compress)");
+        chooser.setFileFilter(new FileNameExtensionFilter("CSV / JSON Lines (optionally .gz)", "csv", "jsonl", "gz"));
+        chooser.setSelectedFile(new java.io.File(suggestedName));
+        if (chooser.showSaveDialog(parent) != JFileChooser.APPROVE_OPTION) return null;
+        Path file = chooser.getSelectedFile().toPath();
+        if (file.toFile().exists()) {
+            int overwrite = JOptionPane.showConfirmDialog(parent, file.getFileName() + " exists. Replace it?",
+                    title, JOptionPane.YES_NO_OPTION);
+            if (overwrite != JOptionPane.YES_OPTION) return null;
+        }
+        return file;
+    }
+
+    private void initializeUI(Path file) {
+        setSize(460, 180);
+        setLocationRelativeTo(getParent());
+        setDefaultCloseOperation(DO_NOTHING_ON_CLOSE);
+
+        JPanel mainPanel = new JPanel(new BorderLayout(10, 10));
+        mainPanel.setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
+        mainPanel.add(new JLabel("Exporting to " + file.getFileName()), BorderLayout.NORTH);
+
+        JPanel center = new JPanel(new GridLayout(2, 1, 5, 5));
+        progressBar.setStringPainted(true);
+        center.add(progressBar);
+        center.add(statusLabel);
+        mainPanel.add(center, BorderLayout.CENTER);
+
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        cancelButton.addActionListener(e -> {
+            cancelButton.setEnabled(false);
+            statusLabel.setText("Stopping…");
+            exporter.cancel();
+        });
+        buttonPanel.add(cancelButton);
+        mainPanel.add(buttonPanel, BorderLayout.SOUTH);
+
+        add(mainPanel);
+    }
+
+    @Override
+    public void setVisible(boolean visible) {
+        if (visible) startExport();
+        super.setVisible(visible);
+    }
+
+    private void startExport() {
+        SwingWorker<DataExporter.Progress, DataExporter.Progress> worker = new SwingWorker<>() {
+            @Override
+            protected DataExporter.Progress doInBackground() throws Exception {
+                exporter.setProgressListener(this::publish);
+                return from == null ? exporter.exportStock() : exporter.exportSales(from, to);
+            }
+
+            @Override
+            protected void process(List<DataExporter.Progress> chunks) {
+                DataExporter.Progress latest = chunks.get(chunks.size() - 1);
+                progressBar.setValue(latest.getPercent());
+                statusLabel.setText(latest.toString());
+            }
+
+            @Override
+            protected void done() {
+                dispose();
+                try {
+                    DataExporter.Progress result = get();
+                    if (result.isCancelled()) return;
+                    JOptionPane.showMessageDialog(getParent(),
+                            "Exported " + result.getRows() + " rows to:\n" + exporter.getFile(),
+                            getTitle(), JOptionPane.INFORMATION_MESSAGE);
+                } catch (ExecutionException e) {
+                    JOptionPane.showMessageDialog(getParent(), "Export failed: " + e.getCause().getMessage(),
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                    e.getCause().printStackTrace();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        worker.execute();
+    }
+}
@@ -1,10 +1,12 @@
 package com.pharmacy.gui;
 
+import com.pharmacy.dao.BillJournal;
 import com.pharmacy.dao.ProductDAO;
+import com.pharmacy.dao.ProductNameIndex;
 import com.pharmacy.dao.SaleDAO;
+import com.pharmacy.dao.StockBatchDAO;
 import com.pharmacy.model.Product;
 import com.pharmacy.model.Sale;
-import com.pharmacy.util.DateUtil;
 
 import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
@@ -16,9 +18,12 @@ public class GenerateBillDialog extends JDialog {
     private JTable billTable;
     private DefaultTableModel tableModel;
     private JLabel totalLabel;
+    private JLabel statusLabel;
+    private JButton generateButton;
     private double totalAmount = 0.0;
     private ProductDAO productDAO;
-    private SaleDAO saleDAO;
+    private final StockBatchDAO stockBatchDAO = new StockBatchDAO();
+    private final BillJournal journal = BillJournal.getInstance();
     private java.util.List<BillItem> billItems;
     
     private static class BillItem {
@@ -38,7 +43,6 @@ public class GenerateBillDialog extends JDialog {
     public GenerateBillDialog(JFrame parent) {
         super(parent, "Generate Bill", true);
         productDAO = new ProductDAO();
-        saleDAO = new SaleDAO();
         billItems = new java.util.ArrayList<>();
         initializeUI();
     }
@@ -52,7 +56,7 @@ public class GenerateBillDialog extends JDialog {
         
         // Input panel
         JPanel inputPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
-        inputPanel.add(new JLabel("Serial No:"));
+        inputPanel.add(new JLabel("Serial No / Name:"));
         serialField = new JTextField(10);
         inputPanel.add(serialField);
         
@@ -90,10 +94,14 @@ public class GenerateBillDialog extends JDialog {
         totalLabel.setFont(new Font("Arial", Font.BOLD, 18));
         totalLabel.setForeground(new Color(0, 100, 0));
         bottomPanel.add(totalLabel, BorderLayout.CENTER);
+
+        statusLabel = new JLabel(" ");
+        statusLabel.setForeground(new Color(90, 90, 90));
+        bottomPanel.add(statusLabel, BorderLayout.NORTH);
         
         JPanel buttonPanel = new JPanel(new FlowLayout());
         JButton clearButton = new JButton("Clear Bill");
-        JButton generateButton = new JButton("Generate Bill");
+        generateButton = new JButton("Generate Bill");
         JButton closeButton = new JButton("Close");
         
         clearButton.addActionListener(e -> clearBill());
@@ -112,7 +120,9 @@ public class GenerateBillDialog extends JDialog {
     
     private void addToBill() {
         try {
-            int serial = Integer.parseInt(serialField.getText().trim());
+            Integer resolved = resolveSerial(serialField.getText().trim());
+            if (resolved == null) return;
+            int serial = resolved;
             int quantity = Integer.parseInt(quantityField.getText().trim());
             
             if (quantity <= 0) {
@@ -128,20 +138,23 @@ public class GenerateBillDialog extends JDialog {
                 return;
             }
             
-            if (DateUtil.isExpired(product.getExpDate())) {
-                JOptionPane.showMessageDialog(this, "Expired Product! Cannot sell.", 
+            if (product.getQuantity() <= 0) {
+                JOptionPane.showMessageDialog(this, "Out of stock! Cannot sell.", 
                     "Error", JOptionPane.ERROR_MESSAGE);
                 return;
             }
 
-            if (product.getQuantity() <= 0) {
-                JOptionPane.showMessageDialog(this, "Out of stock! Cannot sell.", 
+            // Expired batches are never sold; billing takes the batch expiring first
+            int sellable = stockBatchDAO.getSellableQuantity(serial, LocalDate.now());
+            if (sellable <= 0) {
+                JOptionPane.showMessageDialog(this, "Expired Product! Cannot sell.", 
                     "Error", JOptionPane.ERROR_MESSAGE);
                 return;
             }
 
-            int reserved = getReservedQuantityForSerial(serial);
-            int available = product.getQuantity() - reserved;
+            // Bills already taken but still on their way to the database hold stock too
+            int reserved = getReservedQuantityForSerial(serial) + journal.getPendingQuantity(serial);
+            int available = sellable - reserved;
             if (available <= 0) {
                 JOptionPane.showMessageDialog(this,
                     "Not enough stock. Available (after items already in this bill): 0",
@@ -183,6 +196,41 @@ public class GenerateBillDialog extends JDialog {
         }
     }
 
+    /**
+     * Accepts a serial number, or a (possibly misspelled) product name / salt and lets the
+     * cashier pick from the closest matches. Returns null if nothing was chosen.
+     */
+    private Integer resolveSerial(String text) {
+        if (text.matches("\\d+")) {
+            return Integer.parseInt(text);
+        }
+        if (text.isEmpty()) {
+            throw new NumberFormatException("empty serial");
+        }
+
+        java.util.List<ProductNameIndex.Match> matches = ProductNameIndex.getInstance().search(text, 10);
+        java.util.List<String> options = new java.util.ArrayList<>();
+        java.util.List<Integer> serials = new java.util.ArrayList<>();
+        for (ProductNameIndex.Match m : matches) {
+            Product p = productDAO.getProductBySerial(m.getSerial());
+            if (p == null) continue;
+            options.add("S#" + p.getSerial() + " - " + p.getName()
+                    + (p.getSalt() == null || p.getSalt().isEmpty() ? "" : " (" + p.getSalt() + ")")
+                    + " - Qty " + p.getQuantity());
+            serials.add(p.getSerial());
+        }
+        if (options.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "No product matches \"" + text + "\".",
+                "Error", JOptionPane.ERROR_MESSAGE);
+            return null;
+        }
+
+        Object choice = JOptionPane.showInputDialog(this, "Select product:", "Find Product",
+            JOptionPane.QUESTION_MESSAGE, null, options.toArray(), options.get(0));
+        if (choice == null) return null;
+        return serials.get(options.indexOf(choice.toString()));
+    }
+
     private int getReservedQuantityForSerial(int serial) {
         int reserved = 0;
         for (BillItem item : billItems) {
@@ -217,16 +265,40 @@ public class GenerateBillDialog extends JDialog {
             lines.add(new Sale(saleDate, item.serial, item.productName, item.quantity, item.amount));
         }
 
-        var result = saleDAO.recordBill(saleDate, lines);
-        if (!result.isSuccess()) {
-            JOptionPane.showMessageDialog(this,
-                result.getErrorMessage() == null ? "Failed to generate bill." : result.getErrorMessage(),
+        // Saved once it is in the bill journal; the database catches up in the background
+        double billTotal = totalAmount;
+        generateButton.setEnabled(false);
+        BillJournal.Ticket ticket = journal.submit(saleDate, lines);
+        ticket.whenDurable().whenComplete((seq, error) -> SwingUtilities.invokeLater(() -> {
+            generateButton.setEnabled(true);
+            if (error != null) {
+                Throwable cause = error.getCause() != null ? error.getCause() : error;
+                JOptionPane.showMessageDialog(this,
+                    cause.getMessage() == null ? "Failed to generate bill." : cause.getMessage(),
+                    "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            clearBill();
+            statusLabel.setText(String.format("Bill saved (Rs %.2f), recording…", billTotal));
+            ticket.whenApplied().whenComplete((result, applyError) ->
+                    SwingUtilities.invokeLater(() -> showRecorded(result, applyError, billTotal)));
+        }));
+    }
+
+    private void showRecorded(SaleDAO.BillRecordResult result, Throwable error, double billTotal) {
+        Component parent = isDisplayable() ? this : getOwner();
+        statusLabel.setText(" ");
+        if (error != null || !result.isSuccess()) {
+            String reason = error != null ? error.getMessage() : result.getErrorMessage();
+            JOptionPane.showMessageDialog(parent,
+                String.format("A bill of Rs %.2f could not be recorded:\n%s", billTotal,
+                    reason == null ? "Failed to generate bill." : reason),
                 "Error", JOptionPane.ERROR_MESSAGE);
             return;
         }
 
         StringBuilder msg = new StringBuilder();
-        msg.append(String.format("Bill Generated Successfully!\nTotal Amount: Rs %.2f", totalAmount));
+        msg.append(String.format("Bill #%d Generated Successfully!\nTotal Amount: Rs %.2f", result.getBillId(), billTotal));
         if (!result.getLowStockWarnings().isEmpty()) {
             msg.append("\n\nLow stock warning (<5 units remaining):");
             for (var w : result.getLowStockWarnings()) {
@@ -236,8 +308,6 @@ public class GenerateBillDialog extends JDialog {
             }
         }
 
-        JOptionPane.showMessageDialog(this, msg.toString(), "Success", JOptionPane.INFORMATION_MESSAGE);
-        
-        clearBill();
+        JOptionPane.showMessageDialog(parent, msg.toString(), "Success", JOptionPane.INFORMATION_MESSAGE);
     }
 }
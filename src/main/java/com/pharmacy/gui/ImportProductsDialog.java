@@ -0,0 +1,112 @@
+package com.pharmacy.gui;
+
+import com.pharmacy.io.ProductImporter;
+
+import javax.swing.*;
+import java.awt.*;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Runs a {@link ProductImporter} in the background and shows its progress.
+ * Cancelling keeps the checkpoint, so importing the same file again resumes.
+ */
+public class ImportProductsDialog extends JDialog {
+    private final ProductImporter importer;
+    private final JProgressBar progressBar = new JProgressBar(0, 100);
+    private final JLabel statusLabel = new JLabel("Starting…");
+    private final JButton cancelButton = new JButton("Cancel");
+
+    public ImportProductsDialog(JFrame parent, Path file, boolean mergeQuantities) {
+        super(parent, "Import Products", true);
+        importer = new ProductImporter(file);
+        importer.setMergeQuantities(mergeQuantities);
+        initializeUI(file);
+    }
+
+    private void initializeUI(Path file) {
+        setSize(460, 180);
+        setLocationRelativeTo(getParent());
+        setDefaultCloseOperation(DO_NOTHING_ON_CLOSE);
+
+        JPanel mainPanel = new JPanel(new BorderLayout(10, 10));
+        mainPanel.setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
+        mainPanel.add(new JLabel("Importing " + file.getFileName()), BorderLayout.NORTH);
+
+        JPanel center = new JPanel(new GridLayout(2, 1, 5, 5));
+        progressBar.setStringPainted(true);
+        center.add(progressBar);
+        center.add(statusLabel);
+        mainPanel.add(center, BorderLayout.CENTER);
+
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        cancelButton.addActionListener(e -> {
+            cancelButton.setEnabled(false);
+            statusLabel.setText("Stopping after the current batch…");
+            importer.cancel();
+        });
+        buttonPanel.add(cancelButton);
+        mainPanel.add(buttonPanel, BorderLayout.SOUTH);
+
+        add(mainPanel);
+    }
+
+    @Override
+    public void setVisible(boolean visible) {
+        if (visible) startImport();
+        super.setVisible(visible);
+    }
+
+    private void startImport() {
+        SwingWorker<ProductImporter.Progress, ProductImporter.Progress> worker = new SwingWorker<>() {
+            @Override
+            protected ProductImporter.Progress doInBackground() throws Exception {
+                importer.setProgressListener(this::publish);
+                return importer.run();
+            }
+
+            @Override
+            protected void process(List<ProductImporter.Progress> chunks) {
+                ProductImporter.Progress latest = chunks.get(chunks.size() - 1);
+                progressBar.setValue(latest.getPercent());
+                statusLabel.setText(latest.toString());
+            }
+
+            @Override
+            protected void done() {
+                dispose();
+                try {
+                    showSummary(get());
+                } catch (ExecutionException e) {
+                    JOptionPane.showMessageDialog(getParent(),
+                            "Import stopped: " + e.getCause().getMessage()
+                                    + "\n\nImport the same file again to resume.",
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                    e.getCause().printStackTrace();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        worker.execute();
+    }
+
+    private void showSummary(ProductImporter.Progress result) {
+        StringBuilder message = new StringBuilder();
+        message.append(result.isCancelled() ? "Import cancelled. Import the same file again to resume.\n\n"
+                : "Import finished.\n\n");
+        if (result.getResumedAtLine() > 0) {
+            message.append("Resumed at line ").append(result.getResumedAtLine()).append(".\n");
+        }
+        message.append("Inserted: ").append(result.getInserted()).append('\n');
+        message.append("Updated: ").append(result.getUpdated()).append('\n');
+        message.append("Duplicates skipped: ").append(result.getDuplicates()).append('\n');
+        message.append("Rejected: ").append(result.getFailed());
+        if (result.getErrorFile() != null) {
+            message.append("\n\nRejected rows were written to:\n").append(result.getErrorFile());
+        }
+        JOptionPane.showMessageDialog(getParent(), message.toString(), "Import Products",
+                result.getFailed() > 0 ? JOptionPane.WARNING_MESSAGE : JOptionPane.INFORMATION_MESSAGE);
+    }
+}
@@ -1,5 +1,6 @@
 package com.pharmacy.gui;
 
+import com.pharmacy.dao.ExpiryAlertScheduler;
 import com.pharmacy.database.DatabaseManager;
 import com.pharmacy.gui.panels.DashboardPanel;
 import com.pharmacy.gui.panels.ProductsPanel;
@@ -10,7 +11,9 @@ import javax.swing.*;
 import java.awt.*;
 
 public class MainWindow extends JFrame {
-    
+    private final ExpiryAlertScheduler expiryAlerts = new ExpiryAlertScheduler();
+    private final JLabel expiryAlertLabel = new JLabel();
+
     public MainWindow() {
         initializeUI();
     }
@@ -32,13 +35,13 @@ public class MainWindow extends JFrame {
         tabs.addTab("Sales", salesPanel);
         tabs.addTab("Settings", settingsPanel);
 
-        // Live refresh when switching tabs
+        // Live refresh when switching tabs: only rows changed since the panel last looked
         tabs.addChangeListener(e -> {
             Component selected = tabs.getSelectedComponent();
             if (selected == dashboardPanel) {
-                dashboardPanel.refresh();
+                dashboardPanel.refreshChanges();
             } else if (selected == productsPanel) {
-                productsPanel.refreshData();
+                productsPanel.refreshChanges();
             } else if (selected == settingsPanel) {
                 settingsPanel.loadSettings();
             }
@@ -55,9 +58,34 @@ public class MainWindow extends JFrame {
         JLabel dbStatus = new JLabel();
         dbStatus.setName("dbStatusLabel");
         statusBar.add(dbStatus, BorderLayout.WEST);
+        expiryAlertLabel.setForeground(new Color(180, 90, 0));
+        statusBar.add(expiryAlertLabel, BorderLayout.EAST);
         add(statusBar, BorderLayout.SOUTH);
 
         updateDbStatus();
+
+        // Expiry threshold crossings (checked hourly, and once for days the app was closed)
+        expiryAlerts.addListener(alert -> SwingUtilities.invokeLater(() -> showExpiryAlert(alert)));
+        expiryAlerts.start();
+    }
+
+    private void showExpiryAlert(ExpiryAlertScheduler.ExpiryAlert alert) {
+        String current = expiryAlertLabel.getText();
+        String message = alert.describe();
+        // Several thresholds can fire in one check; keep them together for that day
+        if (current != null && !current.isEmpty() && alert.getCheckedOn().toString().equals(expiryAlertLabel.getName())) {
+            message = current + " | " + message;
+        }
+        expiryAlertLabel.setName(alert.getCheckedOn().toString());
+        expiryAlertLabel.setText(message);
+        expiryAlertLabel.setToolTipText("Expiry alerts for " + alert.getCheckedOn()
+                + " - see Products > Expired / expiring soon only");
+    }
+
+    @Override
+    public void dispose() {
+        expiryAlerts.close();
+        super.dispose();
     }
 
     private void updateDbStatus() {
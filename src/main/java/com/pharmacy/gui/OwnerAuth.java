@@ -0,0 +1,39 @@
+package com.pharmacy.gui;
+
+import com.pharmacy.dao.SettingsDAO;
+
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * Owner password prompt shown before dialogs that expose sales figures or change bills.
+ */
+public final class OwnerAuth {
+    private OwnerAuth() {}
+
+    /**
+     * Asks for the owner password; a wrong one is reported before returning.
+     *
+     * @return true only if the password was entered and is correct
+     */
+    public static boolean verify(Component parent) {
+        JPasswordField passwordField = new JPasswordField(20);
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.add(new JLabel("Enter Owner Password:"), BorderLayout.NORTH);
+        panel.add(passwordField, BorderLayout.CENTER);
+
+        int option = JOptionPane.showConfirmDialog(parent, panel, "Owner Authentication",
+            JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+
+        if (option == JOptionPane.OK_OPTION) {
+            String password = new String(passwordField.getPassword());
+            if (new SettingsDAO().verifyPassword(password)) {
+                return true;
+            } else {
+                JOptionPane.showMessageDialog(parent, "Wrong Password!",
+                    "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+        return false;
+    }
+}
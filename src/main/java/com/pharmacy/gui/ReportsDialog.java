@@ -0,0 +1,218 @@
+package com.pharmacy.gui;
+
+import com.pharmacy.analytics.ReportQuery;
+import com.pharmacy.analytics.ReportRow;
+import com.pharmacy.analytics.SalesAnalytics;
+import com.pharmacy.analytics.SalesSnapshot;
+import com.pharmacy.util.DateUtil;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.text.ParseException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Revenue and units by day, month, product, company or distributor over a date range,
+ * computed by {@link SalesAnalytics}.
+ */
+public class ReportsDialog extends JDialog {
+    private static final DateTimeFormatter DATE_FMT =
+            DateTimeFormatter.ofPattern("dd/MM/uuuu").withResolverStyle(ResolverStyle.STRICT);
+    private static final String ALL = "All";
+
+    private final SalesAnalytics analytics = SalesAnalytics.getInstance();
+
+    private JComboBox<ReportQuery.GroupBy> groupByCombo;
+    private JFormattedTextField fromField;
+    private JFormattedTextField toField;
+    private JComboBox<String> companyCombo;
+    private JComboBox<String> distributorCombo;
+    private JTextField serialField;
+    private JButton runButton;
+    private JLabel statusLabel;
+    private DefaultTableModel tableModel;
+
+    public ReportsDialog(JFrame parent) {
+        super(parent, "Sales Reports", true);
+
+        if (!OwnerAuth.verify(this)) {
+            dispose();
+            return;
+        }
+
+        initializeUI();
+        runReport();
+    }
+
+    private void initializeUI() {
+        setSize(900, 600);
+        setLocationRelativeTo(getParent());
+
+        JPanel mainPanel = new JPanel(new BorderLayout(10, 10));
+        mainPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+
+        LocalDate today = LocalDate.now();
+        JPanel filters = new JPanel(new GridLayout(2, 1, 5, 5));
+        JPanel row1 = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        groupByCombo = new JComboBox<>(ReportQuery.GroupBy.values());
+        groupByCombo.setSelectedItem(ReportQuery.GroupBy.PRODUCT);
+        fromField = createDateField(today.withDayOfYear(1));
+        toField = createDateField(today);
+        row1.add(new JLabel("Group by:"));
+        row1.add(groupByCombo);
+        row1.add(new JLabel("From:"));
+        row1.add(fromField);
+        row1.add(new JLabel("To:"));
+        row1.add(toField);
+        filters.add(row1);
+
+        JPanel row2 = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        companyCombo = new JComboBox<>(new String[]{ALL});
+        distributorCombo = new JComboBox<>(new String[]{ALL});
+        serialField = new JTextField(6);
+        serialField.putClientProperty("JTextField.placeholderText", ALL);
+        runButton = new JButton("Run");
+        runButton.addActionListener(e -> runReport());
+        row2.add(new JLabel("Company:"));
+        row2.add(companyCombo);
+        row2.add(new JLabel("Distributor:"));
+        row2.add(distributorCombo);
+        row2.add(new JLabel("Product serial:"));
+        row2.add(serialField);
+        row2.add(runButton);
+        filters.add(row2);
+        getRootPane().setDefaultButton(runButton);
+        mainPanel.add(filters, BorderLayout.NORTH);
+
+        tableModel = new DefaultTableModel(new String[]{"Group", "Quantity", "Lines", "Amount (Rs)"}, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        JTable table = new JTable(tableModel);
+        table.setRowHeight(25);
+        table.getColumnModel().getColumn(0).setPreferredWidth(350);
+        mainPanel.add(new JScrollPane(table), BorderLayout.CENTER);
+
+        JPanel bottom = new JPanel(new BorderLayout());
+        statusLabel = new JLabel(" ");
+        bottom.add(statusLabel, BorderLayout.WEST);
+        JButton closeButton = new JButton("Close");
+        closeButton.addActionListener(e -> dispose());
+        bottom.add(closeButton, BorderLayout.EAST);
+        mainPanel.add(bottom, BorderLayout.SOUTH);
+
+        add(mainPanel);
+    }
+
+    private JFormattedTextField createDateField(LocalDate value) {
+        JFormattedTextField f;
+        try {
+            javax.swing.text.MaskFormatter mask = new javax.swing.text.MaskFormatter("##/##/####");
+            mask.setPlaceholderCharacter('_');
+            f = new JFormattedTextField(mask);
+        } catch (ParseException e) {
+            // Fallback
+            f = new JFormattedTextField();
+        }
+        f.setColumns(10);
+        f.setText(DateUtil.formatDate(value));
+        return f;
+    }
+
+    private void runReport() {
+        ReportQuery query;
+        try {
+            LocalDate from = LocalDate.parse(fromField.getText().trim(), DATE_FMT);
+            LocalDate to = LocalDate.parse(toField.getText().trim(), DATE_FMT);
+            String serialText = serialField.getText().trim();
+            query = new ReportQuery((ReportQuery.GroupBy) groupByCombo.getSelectedItem())
+                    .between(from, to)
+                    .forProduct(serialText.isEmpty() ? 0 : Integer.parseInt(serialText))
+                    .forCompany(selected(companyCombo))
+                    .forDistributor(selected(distributorCombo));
+        } catch (DateTimeParseException e) {
+            JOptionPane.showMessageDialog(this, "Enter both dates as DD/MM/YYYY.",
+                "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(this, "Product serial must be a number.",
+                "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        runButton.setEnabled(false);
+        statusLabel.setText("Loading sales…");
+        new SwingWorker<List<ReportRow>, Void>() {
+            private SalesSnapshot snapshot;
+            private long millis;
+
+            @Override
+            protected List<ReportRow> doInBackground() {
+                snapshot = analytics.refresh();
+                long start = System.nanoTime();
+                List<ReportRow> rows = SalesAnalytics.query(snapshot, query);
+                millis = (System.nanoTime() - start) / 1_000_000;
+                return rows;
+            }
+
+            @Override
+            protected void done() {
+                runButton.setEnabled(true);
+                try {
+                    showRows(get());
+                    updateFilterChoices(snapshot);
+                    statusLabel.setText(statusLabel.getText()
+                            + String.format("   (%,d sales scanned in %d ms)", snapshot.size(), millis));
+                } catch (ExecutionException e) {
+                    statusLabel.setText("Report failed: " + e.getCause().getMessage());
+                    e.getCause().printStackTrace();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }.execute();
+    }
+
+    private void showRows(List<ReportRow> rows) {
+        tableModel.setRowCount(0);
+        long quantity = 0;
+        double amount = 0;
+        for (ReportRow row : rows) {
+            String label = row.getProductSerial() != 0
+                    ? row.getLabel() + " (S#" + row.getProductSerial() + ")"
+                    : row.getLabel();
+            tableModel.addRow(new Object[]{label, row.getQuantity(), row.getLineCount(),
+                    String.format("%.2f", row.getAmount())});
+            quantity += row.getQuantity();
+            amount += row.getAmount();
+        }
+        statusLabel.setText(String.format("%d groups, %d units, Rs %.2f", rows.size(), quantity, amount));
+    }
+
+    private void updateFilterChoices(SalesSnapshot snapshot) {
+        refill(companyCombo, snapshot.getCompanies());
+        refill(distributorCombo, snapshot.getDistributors());
+    }
+
+    private static void refill(JComboBox<String> combo, List<String> names) {
+        if (combo.getItemCount() == names.size() + 1) return;
+        Object selected = combo.getSelectedItem();
+        combo.removeAllItems();
+        combo.addItem(ALL);
+        names.stream().sorted(String.CASE_INSENSITIVE_ORDER).forEach(combo::addItem);
+        combo.setSelectedItem(selected);
+    }
+
+    private static String selected(JComboBox<String> combo) {
+        Object item = combo.getSelectedItem();
+        return item == null || ALL.equals(item) ? null : item.toString();
+    }
+}
@@ -0,0 +1,192 @@
+package com.pharmacy.gui;
+
+import com.pharmacy.dao.SaleDAO;
+import com.pharmacy.model.Bill;
+import com.pharmacy.model.Sale;
+import com.pharmacy.util.DateUtil;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Takes back some or all of a bill's items (a return, dated today) or cancels the rest of
+ * the bill (a void, dated like the bill). Either way the stock goes back to its batches.
+ */
+public class ReturnDialog extends JDialog {
+    private static final int RETURN_COLUMN = 5;
+
+    private final SaleDAO saleDAO = new SaleDAO();
+
+    private JTextField billField;
+    private JLabel billLabel;
+    private DefaultTableModel tableModel;
+    private JTable table;
+    private JButton returnButton;
+    private JButton voidButton;
+
+    private Bill bill;
+    private List<SaleDAO.ReturnableLine> lines = new ArrayList<>();
+
+    public ReturnDialog(JFrame parent) {
+        super(parent, "Returns / Void", true);
+
+        if (!OwnerAuth.verify(this)) {
+            dispose();
+            return;
+        }
+
+        initializeUI();
+    }
+
+    private void initializeUI() {
+        setSize(800, 500);
+        setLocationRelativeTo(getParent());
+
+        JPanel mainPanel = new JPanel(new BorderLayout(10, 10));
+        mainPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+
+        JPanel top = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        billField = new JTextField(8);
+        JButton findButton = new JButton("Find");
+        findButton.addActionListener(e -> loadBill());
+        billLabel = new JLabel(" ");
+        top.add(new JLabel("Bill #:"));
+        top.add(billField);
+        top.add(findButton);
+        top.add(billLabel);
+        getRootPane().setDefaultButton(findButton);
+        mainPanel.add(top, BorderLayout.NORTH);
+
+        tableModel = new DefaultTableModel(
+                new String[]{"Serial", "Product Name", "Sold", "Returned", "Amount (Rs)", "Return now"}, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return column == RETURN_COLUMN;
+            }
+
+            @Override
+            public Class<?> getColumnClass(int column) {
+                return column == RETURN_COLUMN ? Integer.class : Object.class;
+            }
+        };
+        table = new JTable(tableModel);
+        table.setRowHeight(25);
+        table.getColumnModel().getColumn(1).setPreferredWidth(300);
+        mainPanel.add(new JScrollPane(table), BorderLayout.CENTER);
+
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        returnButton = new JButton("Return selected");
+        returnButton.addActionListener(e -> returnItems());
+        voidButton = new JButton("Void bill");
+        voidButton.addActionListener(e -> voidBill());
+        JButton closeButton = new JButton("Close");
+        closeButton.addActionListener(e -> dispose());
+        buttonPanel.add(returnButton);
+        buttonPanel.add(voidButton);
+        buttonPanel.add(closeButton);
+        mainPanel.add(buttonPanel, BorderLayout.SOUTH);
+
+        setActionsEnabled(false);
+        add(mainPanel);
+    }
+
+    private void loadBill() {
+        int billId;
+        try {
+            billId = Integer.parseInt(billField.getText().trim());
+        } catch (NumberFormatException e) {
+            JOptionPane.showMessageDialog(this, "Bill number must be a number.",
+                "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        bill = saleDAO.getBill(billId);
+        lines = new ArrayList<>();
+        tableModel.setRowCount(0);
+        setActionsEnabled(false);
+        if (bill == null) {
+            billLabel.setText("Bill #" + billId + " not found.");
+            return;
+        }
+        if (bill.getKind() != Bill.Kind.SALE) {
+            billLabel.setText("Bill #" + billId + " is a " + bill.getKind().name().toLowerCase()
+                    + " of bill #" + bill.getOriginalBillId() + ".");
+            return;
+        }
+
+        lines = saleDAO.getReturnableLines(billId);
+        int returnable = 0;
+        for (SaleDAO.ReturnableLine line : lines) {
+            Sale sale = line.getSale();
+            tableModel.addRow(new Object[]{sale.getProductSerial(), sale.getProductName(), sale.getQuantity(),
+                    line.getReturnedQuantity(), String.format("%.2f", sale.getAmount()), 0});
+            returnable += line.getReturnableQuantity();
+        }
+        billLabel.setText(String.format("%s   Rs %.2f", DateUtil.formatDate(bill.getSaleDate()), bill.getTotalAmount())
+                + (returnable == 0 ? "   (fully returned)" : ""));
+        setActionsEnabled(returnable > 0);
+    }
+
+    private void returnItems() {
+        if (table.isEditing()) table.getCellEditor().stopCellEditing();
+
+        Map<Integer, Integer> quantities = new LinkedHashMap<>();
+        for (int row = 0; row < lines.size(); row++) {
+            Object value = tableModel.getValueAt(row, RETURN_COLUMN);
+            int quantity = value == null ? 0 : (Integer) value;
+            SaleDAO.ReturnableLine line = lines.get(row);
+            if (quantity < 0 || quantity > line.getReturnableQuantity()) {
+                JOptionPane.showMessageDialog(this, "Only " + line.getReturnableQuantity() + " of "
+                        + line.getSale().getProductName() + " can be returned.", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            if (quantity > 0) quantities.put(line.getSale().getId(), quantity);
+        }
+        if (quantities.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "Enter how many of each item are coming back.",
+                "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        submit(saleDAO.recordReturnAsync(bill.getId(), quantities, LocalDate.now()), "Return");
+    }
+
+    private void voidBill() {
+        int confirm = JOptionPane.showConfirmDialog(this,
+                "Void bill #" + bill.getId() + "? Everything not yet returned goes back into stock.",
+                "Void bill", JOptionPane.YES_NO_OPTION);
+        if (confirm != JOptionPane.YES_OPTION) return;
+
+        submit(saleDAO.voidBillAsync(bill.getId()), "Void");
+    }
+
+    private void submit(CompletableFuture<SaleDAO.BillRecordResult> future, String what) {
+        setActionsEnabled(false);
+        future.whenComplete((result, error) -> SwingUtilities.invokeLater(() -> {
+            if (error != null) {
+                error.printStackTrace();
+                JOptionPane.showMessageDialog(this, what + " failed: " + error.getMessage(),
+                    "Error", JOptionPane.ERROR_MESSAGE);
+            } else if (!result.isSuccess()) {
+                JOptionPane.showMessageDialog(this, result.getErrorMessage(),
+                    "Error", JOptionPane.ERROR_MESSAGE);
+            } else {
+                JOptionPane.showMessageDialog(this, what + " recorded as bill #" + result.getBillId() + ".",
+                    "Success", JOptionPane.INFORMATION_MESSAGE);
+            }
+            loadBill();
+        }));
+    }
+
+    private void setActionsEnabled(boolean enabled) {
+        returnButton.setEnabled(enabled);
+        voidButton.setEnabled(enabled);
+    }
+}
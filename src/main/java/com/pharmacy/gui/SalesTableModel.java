@@ -0,0 +1,198 @@
+package com.pharmacy.gui;
+
+import com.pharmacy.dao.SaleDAO;
+import com.pharmacy.dao.SalesRollupDAO;
+import com.pharmacy.model.Sale;
+import com.pharmacy.util.DateUtil;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Sales in a date range, newest first, loaded a page at a time as rows become visible.
+ *
+ * The row count and the first row of every day come from the daily rollups, so any row can
+ * be located without reading the rows before it. A page that follows a loaded page continues
+ * from its keyset cursor; other pages seek to their day. Rows not loaded yet render empty
+ * and fill in when their page arrives. Pages are read on a background thread.
+ */
+final class SalesTableModel extends AbstractTableModel implements AutoCloseable {
+    static final int PAGE_SIZE = 200;
+    private static final int MAX_CACHED_PAGES = 32;
+    private static final String[] COLUMNS = {"Date", "Serial", "Product Name", "Quantity", "Amount (Rs)"};
+
+    private final SaleDAO saleDAO = new SaleDAO();
+    private final SalesRollupDAO rollupDAO = new SalesRollupDAO();
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "sales-pages");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Map<Integer, List<Sale>> pages = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<Sale>> eldest) {
+            return size() > MAX_CACHED_PAGES;
+        }
+    };
+    // Cursor where page n starts, known once page n - 1 has been read
+    private final Map<Integer, SaleDAO.PageRequest> cursors = new HashMap<>();
+    private final Set<Integer> loading = new HashSet<>();
+
+    // Newest day first, with the index of its first row
+    private LocalDate[] days = new LocalDate[0];
+    private int[] firstRows = new int[0];
+    private int rowCount;
+
+    private LocalDate from;
+    private LocalDate to;
+    private int productSerial;
+    // Bumped on every range change; results of older loads are dropped
+    private int generation;
+
+    /**
+     * Shows the sales from {@code from} to {@code to}, for one product or, when
+     * {@code productSerial} is 0, for all. {@code onTotals} receives the range totals on
+     * the event thread.
+     */
+    void setRange(LocalDate from, LocalDate to, int productSerial, Consumer<SalesRollupDAO.Totals> onTotals) {
+        this.from = from;
+        this.to = to;
+        this.productSerial = productSerial;
+        int gen = ++generation;
+        pages.clear();
+        cursors.clear();
+        loading.clear();
+        days = new LocalDate[0];
+        firstRows = new int[0];
+        rowCount = 0;
+        fireTableDataChanged();
+
+        loader.execute(() -> {
+            NavigableMap<LocalDate, SalesRollupDAO.Totals> daily = rollupDAO.getDailyTotals(from, to, productSerial);
+            LocalDate[] newDays = new LocalDate[daily.size()];
+            int[] newFirstRows = new int[daily.size()];
+            SalesRollupDAO.Totals totals = new SalesRollupDAO.Totals();
+            int rows = 0;
+            int i = 0;
+            for (Map.Entry<LocalDate, SalesRollupDAO.Totals> e : daily.descendingMap().entrySet()) {
+                newDays[i] = e.getKey();
+                newFirstRows[i++] = rows;
+                rows += e.getValue().getLineCount();
+                totals = plus(totals, e.getValue());
+            }
+            int total = rows;
+            SalesRollupDAO.Totals rangeTotals = totals;
+            SwingUtilities.invokeLater(() -> {
+                if (gen != generation) return;
+                days = newDays;
+                firstRows = newFirstRows;
+                rowCount = total;
+                cursors.put(0, SaleDAO.PageRequest.first(PAGE_SIZE));
+                fireTableDataChanged();
+                if (onTotals != null) onTotals.accept(rangeTotals);
+            });
+        });
+    }
+
+    @Override
+    public void close() {
+        loader.shutdownNow();
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        int page = rowIndex / PAGE_SIZE;
+        List<Sale> sales = pages.get(page);
+        if (sales == null) {
+            requestPage(page);
+            return null;
+        }
+        int offset = rowIndex % PAGE_SIZE;
+        // The rollups and the sales table can disagree briefly around a concurrent write
+        if (offset >= sales.size()) return null;
+        Sale sale = sales.get(offset);
+        return switch (columnIndex) {
+            case 0 -> DateUtil.formatDate(sale.getSaleDate());
+            case 1 -> sale.getProductSerial();
+            case 2 -> sale.getProductName();
+            case 3 -> sale.getQuantity();
+            case 4 -> String.format("%.2f", sale.getAmount());
+            default -> null;
+        };
+    }
+
+    private void requestPage(int page) {
+        if (!loading.add(page)) return;
+        SaleDAO.PageRequest request = cursors.get(page);
+        if (request == null) request = seek(page * PAGE_SIZE);
+        if (request == null) return;
+
+        SaleDAO.PageRequest pageRequest = request;
+        int gen = generation;
+        LocalDate rangeFrom = from;
+        LocalDate rangeTo = to;
+        int serial = productSerial;
+        loader.execute(() -> {
+            SaleDAO.SalePage result = serial == 0
+                    ? saleDAO.getSales(rangeFrom, rangeTo, pageRequest)
+                    : saleDAO.getSalesForProduct(serial, rangeFrom, rangeTo, pageRequest);
+            SwingUtilities.invokeLater(() -> {
+                if (gen != generation) return;
+                loading.remove(page);
+                pages.put(page, result.getSales());
+                if (result.getNext() != null) cursors.put(page + 1, result.getNext());
+                int first = page * PAGE_SIZE;
+                int last = Math.min(rowCount, first + PAGE_SIZE) - 1;
+                if (last >= first) fireTableRowsUpdated(first, last);
+            });
+        });
+    }
+
+    /**
+     * @return a request starting at {@code row}, located through the day index
+     */
+    private SaleDAO.PageRequest seek(int row) {
+        if (days.length == 0) return null;
+        int lo = 0;
+        int hi = firstRows.length - 1;
+        // Last day whose first row is at or before the target row
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (firstRows[mid] <= row) lo = mid;
+            else hi = mid - 1;
+        }
+        return SaleDAO.PageRequest.startingAt(days[lo], row - firstRows[lo], PAGE_SIZE);
+    }
+
+    private static SalesRollupDAO.Totals plus(SalesRollupDAO.Totals a, SalesRollupDAO.Totals b) {
+        return new SalesRollupDAO.Totals(a.getQuantity() + b.getQuantity(), a.getAmount() + b.getAmount(),
+                a.getLineCount() + b.getLineCount(), a.getBillCount() + b.getBillCount());
+    }
+}
@@ -1,27 +1,33 @@
 package com.pharmacy.gui;
 
-import com.pharmacy.dao.SaleDAO;
-import com.pharmacy.dao.SettingsDAO;
-import com.pharmacy.model.Sale;
+import com.pharmacy.dao.SalesRollupDAO;
 import com.pharmacy.util.DateUtil;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
 import java.awt.*;
-import java.util.List;
+import java.text.ParseException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
 
 public class ViewSalesDialog extends JDialog {
+    private static final DateTimeFormatter DATE_FMT =
+            DateTimeFormatter.ofPattern("dd/MM/uuuu").withResolverStyle(ResolverStyle.STRICT);
+
     private JTable salesTable;
-    private DefaultTableModel tableModel;
-    private SaleDAO saleDAO;
-    private SettingsDAO settingsDAO;
+    private SalesTableModel tableModel;
+    private JFormattedTextField fromField;
+    private JFormattedTextField toField;
+    private JTextField serialField;
+    private JLabel rangeLabel;
+    private LocalDate shownFrom;
+    private LocalDate shownTo;
     
     public ViewSalesDialog(JFrame parent) {
         super(parent, "View Sales", true);
-        saleDAO = new SaleDAO();
-        settingsDAO = new SettingsDAO();
         
-        if (!verifyPassword()) {
+        if (!OwnerAuth.verify(this)) {
             dispose();
             return;
         }
@@ -29,26 +35,11 @@ public class ViewSalesDialog extends JDialog {
         initializeUI();
         loadSales();
     }
-    
-    private boolean verifyPassword() {
-        JPasswordField passwordField = new JPasswordField(20);
-        JPanel panel = new JPanel(new BorderLayout());
-        panel.add(new JLabel("Enter Owner Password:"), BorderLayout.NORTH);
-        panel.add(passwordField, BorderLayout.CENTER);
-        
-        int option = JOptionPane.showConfirmDialog(this, panel, "Owner Authentication", 
-            JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
-        
-        if (option == JOptionPane.OK_OPTION) {
-            String password = new String(passwordField.getPassword());
-            if (settingsDAO.verifyPassword(password)) {
-                return true;
-            } else {
-                JOptionPane.showMessageDialog(this, "Wrong Password!", 
-                    "Error", JOptionPane.ERROR_MESSAGE);
-            }
-        }
-        return false;
+
+    @Override
+    public void dispose() {
+        if (tableModel != null) tableModel.close();
+        super.dispose();
     }
     
     private void initializeUI() {
@@ -59,13 +50,7 @@ public class ViewSalesDialog extends JDialog {
         mainPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
         
         // Table
-        String[] columns = {"Date", "Serial", "Product Name", "Quantity", "Amount (Rs)"};
-        tableModel = new DefaultTableModel(columns, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
+        tableModel = new SalesTableModel();
         
         salesTable = new JTable(tableModel);
         salesTable.setRowHeight(25);
@@ -82,20 +67,41 @@ public class ViewSalesDialog extends JDialog {
         JScrollPane scrollPane = new JScrollPane(salesTable);
         mainPanel.add(scrollPane, BorderLayout.CENTER);
         
-        // Summary panel
-        JPanel summaryPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
-        double[] monthlySales = saleDAO.getMonthlySales();
-        double totalSales = 0;
-        for (double sales : monthlySales) {
-            totalSales += sales;
-        }
-        JLabel summaryLabel = new JLabel(String.format("Total Sales: Rs %.2f", totalSales));
+        // Summary and range panel
+        JPanel summaryPanel = new JPanel(new GridLayout(2, 1, 5, 5));
+        SalesRollupDAO rollups = new SalesRollupDAO();
+        LocalDate today = LocalDate.now();
+        double yearSales = rollups.getTotals(SalesRollupDAO.Grain.YEAR, today).getAmount();
+        double totalSales = rollups.getAllTimeTotals().getAmount();
+        JLabel summaryLabel = new JLabel(String.format("Sales %d: Rs %.2f   |   Total Sales: Rs %.2f",
+                today.getYear(), yearSales, totalSales));
         summaryLabel.setFont(new Font("Arial", Font.BOLD, 14));
         summaryPanel.add(summaryLabel);
+
+        JPanel rangePanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        fromField = createDateField(today.withDayOfMonth(1));
+        toField = createDateField(today);
+        serialField = new JTextField(6);
+        serialField.putClientProperty("JTextField.placeholderText", "All");
+        JButton showButton = new JButton("Show");
+        showButton.addActionListener(e -> loadSales());
+        rangePanel.add(new JLabel("From:"));
+        rangePanel.add(fromField);
+        rangePanel.add(new JLabel("To:"));
+        rangePanel.add(toField);
+        rangePanel.add(new JLabel("Product serial:"));
+        rangePanel.add(serialField);
+        rangePanel.add(showButton);
+        rangePanel.add(rangeLabel = new JLabel(" "));
+        summaryPanel.add(rangePanel);
+        getRootPane().setDefaultButton(showButton);
         mainPanel.add(summaryPanel, BorderLayout.NORTH);
         
         // Close button
         JPanel buttonPanel = new JPanel(new FlowLayout());
+        JButton exportButton = new JButton("Export…");
+        exportButton.addActionListener(e -> ExportDialog.exportSales(this, shownFrom, shownTo));
+        buttonPanel.add(exportButton);
         JButton closeButton = new JButton("Close");
         closeButton.addActionListener(e -> dispose());
         buttonPanel.add(closeButton);
@@ -104,19 +110,53 @@ public class ViewSalesDialog extends JDialog {
         add(mainPanel);
     }
     
+    private JFormattedTextField createDateField(LocalDate value) {
+        JFormattedTextField f;
+        try {
+            javax.swing.text.MaskFormatter mask = new javax.swing.text.MaskFormatter("##/##/####");
+            mask.setPlaceholderCharacter('_');
+            f = new JFormattedTextField(mask);
+        } catch (ParseException e) {
+            // Fallback
+            f = new JFormattedTextField();
+        }
+        f.setColumns(10);
+        f.setText(DateUtil.formatDate(value));
+        return f;
+    }
+
     private void loadSales() {
-        tableModel.setRowCount(0);
-        List<Sale> sales = saleDAO.getAllSales();
-        
-        for (Sale sale : sales) {
-            Object[] row = {
-                DateUtil.formatDate(sale.getSaleDate()),
-                sale.getProductSerial(),
-                sale.getProductName(),
-                sale.getQuantity(),
-                String.format("%.2f", sale.getAmount())
-            };
-            tableModel.addRow(row);
+        LocalDate from;
+        LocalDate to;
+        int serial = 0;
+        try {
+            from = LocalDate.parse(fromField.getText().trim(), DATE_FMT);
+            to = LocalDate.parse(toField.getText().trim(), DATE_FMT);
+        } catch (DateTimeParseException e) {
+            JOptionPane.showMessageDialog(this, "Enter both dates as DD/MM/YYYY.",
+                "Error", JOptionPane.ERROR_MESSAGE);
+            return;
         }
+        if (to.isBefore(from)) {
+            JOptionPane.showMessageDialog(this, "'To' must not be before 'From'.",
+                "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        String serialText = serialField.getText().trim();
+        if (!serialText.isEmpty()) {
+            try {
+                serial = Integer.parseInt(serialText);
+            } catch (NumberFormatException e) {
+                JOptionPane.showMessageDialog(this, "Product serial must be a number.",
+                    "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+        }
+
+        shownFrom = from;
+        shownTo = to;
+        rangeLabel.setText("Loading…");
+        tableModel.setRange(from, to, serial, totals -> rangeLabel.setText(
+                String.format("%d sales, Rs %.2f", totals.getLineCount(), totals.getAmount())));
     }
 }
@@ -1,9 +1,10 @@
 package com.pharmacy.gui.panels;
 
+import com.pharmacy.dao.ExpiryIndex;
 import com.pharmacy.dao.ProductDAO;
 import com.pharmacy.dao.SaleDAO;
-import com.pharmacy.model.Product;
-import com.pharmacy.util.DateUtil;
+import com.pharmacy.dao.TopSellersTracker;
+import com.pharmacy.model.Sale;
 
 import javax.swing.*;
 import javax.swing.table.DefaultTableModel;
@@ -21,6 +22,17 @@ public class DashboardPanel extends JPanel {
     private JLabel todayRevenueLabel;
 
     private DefaultTableModel topModel;
+    private JComboBox<String> topPeriodCombo;
+
+    private final ExpiryIndex expiryIndex = ExpiryIndex.getInstance();
+    private final TopSellersTracker topSellers = TopSellersTracker.getInstance();
+
+    // Cursor into the sales feed and today's running totals.
+    private int lastSaleId;
+    private int todaySalesCount;
+    private int todayBillCount;
+    private double todayRevenue;
+    private LocalDate countedOn;
 
     public DashboardPanel() {
         this.productDAO = new ProductDAO();
@@ -47,14 +59,20 @@ public class DashboardPanel extends JPanel {
         JPanel stats = new JPanel(new GridLayout(2, 2, 10, 10));
         stats.add(wrapStat("Total products", totalProductsLabel = new JLabel("-")));
         stats.add(wrapStat("Expiring within 6 months", expiringSoonLabel = new JLabel("-")));
-        stats.add(wrapStat("Today's sales (lines)", todaySalesLabel = new JLabel("-")));
+        stats.add(wrapStat("Today's bills", todaySalesLabel = new JLabel("-")));
         stats.add(wrapStat("Today's revenue", todayRevenueLabel = new JLabel("-")));
         add(stats, BorderLayout.CENTER);
 
         JPanel bottom = new JPanel(new BorderLayout(10, 10));
+        JPanel topHeader = new JPanel(new BorderLayout());
         JLabel topTitle = new JLabel("Top 5 best-selling products");
         topTitle.setFont(topTitle.getFont().deriveFont(Font.BOLD, 14f));
-        bottom.add(topTitle, BorderLayout.NORTH);
+        topHeader.add(topTitle, BorderLayout.WEST);
+        topPeriodCombo = new JComboBox<>(new String[]{"Today", "This month", "All time"});
+        topPeriodCombo.setSelectedIndex(2);
+        topPeriodCombo.addActionListener(e -> showTopSellers());
+        topHeader.add(topPeriodCombo, BorderLayout.EAST);
+        bottom.add(topHeader, BorderLayout.NORTH);
 
         topModel = new DefaultTableModel(new String[]{"Product", "Quantity sold"}, 0) {
             @Override public boolean isCellEditable(int row, int column) { return false; }
@@ -82,25 +100,81 @@ public class DashboardPanel extends JPanel {
         return panel;
     }
 
+    /**
+     * Recounts the sales figures from the database. The expiry index only picks up changes
+     * (building itself on first use); its figures are date-relative, so it needs no rescan.
+     */
     public void refresh() {
-        List<Product> products = productDAO.getAllProducts();
-        int totalProducts = products.size();
-        int expiringSoon = 0;
-        for (Product p : products) {
-            if (DateUtil.isNearExpiry(p.getExpDate())) expiringSoon++;
+        LocalDate today = LocalDate.now();
+
+        expiryIndex.sync();
+
+        var summary = saleDAO.getTodaySalesSummary(today);
+        todaySalesCount = summary.getSalesCount();
+        todayBillCount = summary.getBillCount();
+        todayRevenue = summary.getRevenue();
+        lastSaleId = summary.getLastSaleId();
+        countedOn = today;
+
+        updateLabels();
+        topSellers.reload();
+        showTopSellers();
+    }
+
+    /**
+     * Applies only what changed since the last refresh; cheap when nothing did.
+     */
+    public void refreshChanges() {
+        LocalDate today = LocalDate.now();
+        if (countedOn == null || !countedOn.equals(today)) {
+            // "Today" moved on; the expiry figures are date-relative lookups anyway
+            refresh();
+            return;
         }
+
+        expiryIndex.sync();
+        List<Sale> newSales = saleDAO.getSalesSince(lastSaleId);
+        boolean billsToday = false;
+        for (Sale sale : newSales) {
+            if (today.equals(sale.getSaleDate())) {
+                todaySalesCount++;
+                todayRevenue += sale.getAmount();
+                billsToday |= sale.getBillId() != 0;
+            }
+            lastSaleId = Math.max(lastSaleId, sale.getId());
+        }
+        // Returns leave the bill count alone and voids lower it; the rollup already knows which
+        if (billsToday) {
+            todayBillCount = saleDAO.getTodaySalesSummary(today).getBillCount();
+        }
+
+        updateLabels();
+        if (!newSales.isEmpty()) {
+            topSellers.sync();
+            showTopSellers();
+        }
+    }
+
+    private void updateLabels() {
+        LocalDate today = LocalDate.now();
+        int totalProducts = expiryIndex.size();
+        int expiringSoon = expiryIndex.countNearExpiry(today);
         double pct = totalProducts == 0 ? 0.0 : (expiringSoon * 100.0 / totalProducts);
 
         totalProductsLabel.setText(String.valueOf(totalProducts));
         expiringSoonLabel.setText(expiringSoon + " (" + String.format("%.1f", pct) + "%)");
+        int[] h = expiryIndex.histogram(today, 30, 90, 180);
+        expiringSoonLabel.setToolTipText("Expired: " + h[0] + " | under 30 days: " + h[1]
+                + " | 30-90 days: " + h[2] + " | 90-180 days: " + h[3]);
 
-        var today = saleDAO.getTodaySalesSummary(LocalDate.now());
-        todaySalesLabel.setText(String.valueOf(today.getSalesCount()));
-        todayRevenueLabel.setText("Rs " + String.format("%.2f", today.getRevenue()));
+        todaySalesLabel.setText(todayBillCount + " (" + todaySalesCount + " lines)");
+        todayRevenueLabel.setText("Rs " + String.format("%.2f", todayRevenue));
+    }
 
+    private void showTopSellers() {
+        TopSellersTracker.Period period = TopSellersTracker.Period.values()[topPeriodCombo.getSelectedIndex()];
         topModel.setRowCount(0);
-        var top = saleDAO.getTopSellingProducts(5);
-        for (SaleDAO.TopSellingProduct t : top) {
+        for (TopSellersTracker.Entry t : topSellers.top(period, 5)) {
             topModel.addRow(new Object[]{t.getProductName(), t.getQuantitySold()});
         }
     }
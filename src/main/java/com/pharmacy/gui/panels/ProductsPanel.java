@@ -1,25 +1,40 @@
 package com.pharmacy.gui.panels;
 
+import com.pharmacy.dao.DictionaryCache;
+import com.pharmacy.dao.ExpiryIndex;
 import com.pharmacy.dao.ProductDAO;
+import com.pharmacy.dao.ProductNameIndex;
 import com.pharmacy.gui.AddProductDialog;
 import com.pharmacy.gui.EditProductDialog;
+import com.pharmacy.gui.ExportDialog;
+import com.pharmacy.gui.ImportProductsDialog;
 import com.pharmacy.model.Product;
 import com.pharmacy.util.DateUtil;
 
 import javax.swing.*;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.table.DefaultTableCellRenderer;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class ProductsPanel extends JPanel {
     private static final String ALL = "All";
+    private static final int FUZZY_LIMIT = 50;
+    private static final int EXPIRY_STATUS_COLUMN = 10;
+    private static final String EXPIRED = "Expired";
+    private static final String EXPIRING_SOON = "Expiring soon";
 
     private final JFrame parent;
     private final ProductDAO productDAO;
+    private final ExpiryIndex expiryIndex = ExpiryIndex.getInstance();
 
     private JTextField searchField;
     private JComboBox<String> companyCombo;
@@ -32,6 +47,9 @@ public class ProductsPanel extends JPanel {
 
     private List<Product> allProducts = new ArrayList<>();
     private List<Product> filteredProducts = new ArrayList<>();
+    private Map<Integer, Product> productsBySerial = new HashMap<>();
+    // Change-feed version allProducts reflects; -1 until the first full load.
+    private long loadedVersion = -1;
 
     public ProductsPanel(JFrame parent) {
         this.parent = parent;
@@ -58,13 +76,13 @@ public class ProductsPanel extends JPanel {
 
         gbc.gridx = x++;
         gbc.gridy = 0;
-        bar.add(new JLabel("Search (name):"), gbc);
+        bar.add(new JLabel("Search:"), gbc);
 
         gbc.gridx = x++;
         gbc.fill = GridBagConstraints.HORIZONTAL;
         gbc.weightx = 1.0;
         searchField = new JTextField(24);
-        searchField.putClientProperty("JTextField.placeholderText", "Type product name…");
+        searchField.putClientProperty("JTextField.placeholderText", "Name, salt, company, distributor or batch…");
         bar.add(searchField, gbc);
 
         gbc.gridx = x++;
@@ -101,16 +119,27 @@ public class ProductsPanel extends JPanel {
         JButton addBtn = new JButton("Add");
         addBtn.addActionListener(e -> {
             new AddProductDialog(parent).setVisible(true);
-            refreshData();
+            refreshChanges();
         });
         bar.add(addBtn, gbc);
 
         gbc.gridx = 5;
+        JButton importBtn = new JButton("Import");
+        importBtn.addActionListener(e -> importProducts());
+        bar.add(importBtn, gbc);
+
+        gbc.gridx = 6;
+        JButton exportBtn = new JButton("Export");
+        exportBtn.setToolTipText("Export the stock valuation (CSV / JSON Lines)");
+        exportBtn.addActionListener(e -> ExportDialog.exportStock(SwingUtilities.getWindowAncestor(this)));
+        bar.add(exportBtn, gbc);
+
+        gbc.gridx = 7;
         JButton editBtn = new JButton("Edit");
         editBtn.addActionListener(e -> editSelectedProduct());
         bar.add(editBtn, gbc);
 
-        gbc.gridx = 6;
+        gbc.gridx = 8;
         JButton clearBtn = new JButton("Clear");
         clearBtn.addActionListener(e -> {
             searchField.setText("");
@@ -122,7 +151,7 @@ public class ProductsPanel extends JPanel {
         });
         bar.add(clearBtn, gbc);
 
-        gbc.gridx = 7;
+        gbc.gridx = 9;
         JButton refreshBtn = new JButton("Refresh");
         refreshBtn.addActionListener(e -> refreshData());
         bar.add(refreshBtn, gbc);
@@ -178,9 +207,15 @@ public class ProductsPanel extends JPanel {
                 ? distributorCombo.getSelectedItem().toString()
                 : ALL;
 
+        // Read the version first: anything committed during the load is applied again later
+        loadedVersion = productDAO.getChangeVersion();
         allProducts = productDAO.getAllProducts();
+        productsBySerial = new HashMap<>(allProducts.size() * 2);
+        for (Product p : allProducts) productsBySerial.put(p.getSerial(), p);
+        expiryIndex.sync();
 
-        // Rebuild dropdowns (All + distinct values)
+        // Rebuild dropdowns (All + distinct values) from fresh dictionary counts
+        DictionaryCache.getInstance().reload();
         List<String> companies = productDAO.getDistinctCompanies();
         List<String> distributors = productDAO.getDistinctDistributors();
 
@@ -190,6 +225,105 @@ public class ProductsPanel extends JPanel {
         applyFilters();
     }
 
+    /**
+     * Applies only the products changed since the last load. With no changes this is a
+     * single indexed query, whatever the catalog size.
+     */
+    public void refreshChanges() {
+        if (loadedVersion < 0) {
+            refreshData();
+            return;
+        }
+        ProductDAO.ChangeSet changes = productDAO.getProductsChangedSince(loadedVersion);
+        loadedVersion = changes.getVersion();
+        if (changes.isEmpty()) return;
+        expiryIndex.sync();
+
+        // allProducts is in serial order (getAllProducts), so changes land by binary search
+        for (Product p : changes.getChanged()) {
+            productsBySerial.put(p.getSerial(), p);
+            int i = indexOfSerial(allProducts, p.getSerial());
+            if (i >= 0) {
+                allProducts.set(i, p);
+            } else {
+                allProducts.add(-i - 1, p);
+            }
+            addComboValue(companyCombo, p.getCompany());
+            addComboValue(distributorCombo, p.getDistributor());
+        }
+        for (int serial : changes.getRemovedSerials()) {
+            productsBySerial.remove(serial);
+            int i = indexOfSerial(allProducts, serial);
+            if (i >= 0) allProducts.remove(i);
+        }
+
+        String search = searchField.getText() == null ? "" : searchField.getText().trim();
+        if (!search.isEmpty()) {
+            // Edited rows can change the search ranking; rerun it (cost follows the hit count)
+            applyFilters();
+            return;
+        }
+
+        // Without search text filteredProducts is also in serial order: patch rows in place
+        String company = companyCombo.getSelectedItem() == null ? ALL : companyCombo.getSelectedItem().toString();
+        String distributor = distributorCombo.getSelectedItem() == null ? ALL : distributorCombo.getSelectedItem().toString();
+        int[] expiringSerials = expiringSerialsFilter();
+        boolean lowStockOnly = lowStockOnlyCheck.isSelected();
+
+        List<Integer> touched = new ArrayList<>(changes.getRemovedSerials());
+        for (Product p : changes.getChanged()) touched.add(p.getSerial());
+        for (int serial : touched) {
+            Product p = productsBySerial.get(serial);
+            boolean keep = p != null && matchesFilters(p, company, distributor, expiringSerials, lowStockOnly);
+            int row = indexOfSerial(filteredProducts, serial);
+            if (row >= 0 && keep) {
+                filteredProducts.set(row, p);
+                Object[] values = toRow(p);
+                for (int col = 0; col < values.length; col++) tableModel.setValueAt(values[col], row, col);
+            } else if (row >= 0) {
+                filteredProducts.remove(row);
+                tableModel.removeRow(row);
+            } else if (keep) {
+                filteredProducts.add(-row - 1, p);
+                tableModel.insertRow(-row - 1, toRow(p));
+            }
+        }
+    }
+
+    private static int indexOfSerial(List<Product> products, int serial) {
+        int lo = 0;
+        int hi = products.size() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int s = products.get(mid).getSerial();
+            if (s < serial) {
+                lo = mid + 1;
+            } else if (s > serial) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+
+    // Keeps the combo in the same order as getDistinct*() (ORDER BY, binary collation).
+    private void addComboValue(JComboBox<String> combo, String value) {
+        if (combo == null || value == null || value.trim().isEmpty()) return;
+        String v = value.trim();
+        ComboBoxModel<String> model = combo.getModel();
+        int insertAt = model.getSize();
+        for (int i = 1; i < model.getSize(); i++) {
+            int cmp = model.getElementAt(i).compareTo(v);
+            if (cmp == 0) return;
+            if (cmp > 0) {
+                insertAt = i;
+                break;
+            }
+        }
+        combo.insertItemAt(v, insertAt);
+    }
+
     private void rebuildCombo(JComboBox<String> combo, List<String> values, String selected) {
         if (combo == null) return;
         combo.removeAllItems();
@@ -212,60 +346,110 @@ public class ProductsPanel extends JPanel {
         String search = searchField.getText() == null ? "" : searchField.getText().trim().toLowerCase();
         String company = companyCombo.getSelectedItem() == null ? ALL : companyCombo.getSelectedItem().toString();
         String distributor = distributorCombo.getSelectedItem() == null ? ALL : distributorCombo.getSelectedItem().toString();
-        boolean expiringOnly = expiringOnlyCheck.isSelected();
+        int[] expiringSerials = expiringSerialsFilter();
         boolean lowStockOnly = lowStockOnlyCheck.isSelected();
 
-        filteredProducts = new ArrayList<>();
-        for (Product p : allProducts) {
-            if (!search.isEmpty()) {
-                String name = p.getName() == null ? "" : p.getName().toLowerCase();
-                if (!name.contains(search)) continue;
-            }
-            if (!ALL.equals(company)) {
-                if (p.getCompany() == null || !p.getCompany().equals(company)) continue;
+        // Full-text search returns serials best match first; the table follows that order
+        List<Product> candidates = allProducts;
+        if (expiringSerials != null) {
+            // Start from the expiry index instead of scanning the catalog
+            candidates = new ArrayList<>(expiringSerials.length);
+            for (int serial : expiringSerials) {
+                Product p = productsBySerial.get(serial);
+                if (p != null) candidates.add(p);
             }
-            if (!ALL.equals(distributor)) {
-                if (p.getDistributor() == null || !p.getDistributor().equals(distributor)) continue;
+        }
+        boolean nameScan = false;
+        if (!search.isEmpty()) {
+            List<Integer> ranked = productDAO.searchSerials(search, Math.max(1, allProducts.size()));
+            if (ranked != null && ranked.isEmpty() && search.length() >= 3) {
+                // Nothing matched exactly; try typo-tolerant name/salt matching ("paracetmol")
+                ranked = new ArrayList<>();
+                for (ProductNameIndex.Match m : ProductNameIndex.getInstance().search(search, FUZZY_LIMIT)) {
+                    ranked.add(m.getSerial());
+                }
             }
-            if (expiringOnly) {
-                if (!(DateUtil.isExpired(p.getExpDate()) || DateUtil.isNearExpiry(p.getExpDate()))) continue;
+            if (ranked == null) {
+                nameScan = true;
+            } else {
+                candidates = new ArrayList<>(ranked.size());
+                for (Integer serial : ranked) {
+                    Product p = productsBySerial.get(serial);
+                    if (p != null) candidates.add(p);
+                }
             }
-            if (lowStockOnly) {
-                if (!(p.getQuantity() < 5)) continue;
+        }
+
+        filteredProducts = new ArrayList<>();
+        for (Product p : candidates) {
+            if (nameScan) {
+                String name = p.getName() == null ? "" : p.getName().toLowerCase();
+                if (!name.contains(search)) continue;
             }
+            if (!matchesFilters(p, company, distributor, expiringSerials, lowStockOnly)) continue;
             filteredProducts.add(p);
         }
 
         reloadTable();
     }
 
+    /**
+     * Expired and near-expiry serials in serial order, or null when that filter is off.
+     */
+    private int[] expiringSerialsFilter() {
+        if (!expiringOnlyCheck.isSelected()) return null;
+        expiryIndex.ensureBuilt();
+        return expiryIndex.getExpiredOrNearSerials(LocalDate.now());
+    }
+
+    private static boolean matchesFilters(Product p, String company, String distributor,
+                                          int[] expiringSerials, boolean lowStockOnly) {
+        if (!ALL.equals(company)) {
+            if (p.getCompany() == null || !p.getCompany().equals(company)) return false;
+        }
+        if (!ALL.equals(distributor)) {
+            if (p.getDistributor() == null || !p.getDistributor().equals(distributor)) return false;
+        }
+        if (expiringSerials != null) {
+            if (Arrays.binarySearch(expiringSerials, p.getSerial()) < 0) return false;
+        }
+        if (lowStockOnly) {
+            if (!(p.getQuantity() < 5)) return false;
+        }
+        return true;
+    }
+
     private void reloadTable() {
         tableModel.setRowCount(0);
         for (Product p : filteredProducts) {
-            String expiryStatus = DateUtil.isExpired(p.getExpDate())
-                    ? "Expired"
-                    : (DateUtil.isNearExpiry(p.getExpDate()) ? "Expiring soon" : "Valid");
-            String stockStatus = p.getQuantity() <= 0
-                    ? "Out of stock"
-                    : (p.getQuantity() < 5 ? "Low stock" : "OK");
-
-            tableModel.addRow(new Object[]{
-                    p.getSerial(),
-                    p.getName(),
-                    p.getSalt(),
-                    p.getCompany(),
-                    p.getDistributor(),
-                    p.getBatch(),
-                    p.getQuantity(),
-                    String.format("%.2f", p.getPrice()),
-                    DateUtil.formatDate(p.getMfgDate()),
-                    DateUtil.formatDate(p.getExpDate()),
-                    expiryStatus,
-                    stockStatus
-            });
+            tableModel.addRow(toRow(p));
         }
     }
 
+    private static Object[] toRow(Product p) {
+        String expiryStatus = DateUtil.isExpired(p.getExpDate())
+                ? EXPIRED
+                : (DateUtil.isNearExpiry(p.getExpDate()) ? EXPIRING_SOON : "Valid");
+        String stockStatus = p.getQuantity() <= 0
+                ? "Out of stock"
+                : (p.getQuantity() < 5 ? "Low stock" : "OK");
+
+        return new Object[]{
+                p.getSerial(),
+                p.getName(),
+                p.getSalt(),
+                p.getCompany(),
+                p.getDistributor(),
+                p.getBatch(),
+                p.getQuantity(),
+                String.format("%.2f", p.getPrice()),
+                DateUtil.formatDate(p.getMfgDate()),
+                DateUtil.formatDate(p.getExpDate()),
+                expiryStatus,
+                stockStatus
+        };
+    }
+
     private void editSelectedProduct() {
         int viewRow = table.getSelectedRow();
         if (viewRow < 0) {
@@ -277,7 +461,24 @@ public class ProductsPanel extends JPanel {
 
         Product p = filteredProducts.get(modelRow);
         new EditProductDialog(parent, p).setVisible(true);
-        refreshData();
+        refreshChanges();
+    }
+
+    private void importProducts() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Import Products (CSV / TSV)");
+        chooser.setFileFilter(new FileNameExtensionFilter("CSV / TSV files", "csv", "tsv", "txt"));
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+
+        int merge = JOptionPane.showConfirmDialog(this,
+                "When a row has the same name and batch as an existing product,\n" +
+                        "add its quantity to that product?\n\n(No = skip such rows as duplicates)",
+                "Import Products", JOptionPane.YES_NO_CANCEL_OPTION);
+        if (merge == JOptionPane.CANCEL_OPTION || merge == JOptionPane.CLOSED_OPTION) return;
+
+        new ImportProductsDialog(parent, chooser.getSelectedFile().toPath(), merge == JOptionPane.YES_OPTION)
+                .setVisible(true);
+        refreshChanges();
     }
 
     private class ProductRowRenderer extends DefaultTableCellRenderer {
@@ -292,6 +493,8 @@ public class ProductsPanel extends JPanel {
 
             int modelRow = table.convertRowIndexToModel(row);
             Product p = (modelRow >= 0 && modelRow < filteredProducts.size()) ? filteredProducts.get(modelRow) : null;
+            // Expiry status was worked out once when the row was built; no date math per cell
+            Object expiryStatus = modelRow >= 0 ? tableModel.getValueAt(modelRow, EXPIRY_STATUS_COLUMN) : null;
 
             if (isSelected) {
                 c.setBackground(table.getSelectionBackground());
@@ -300,10 +503,10 @@ public class ProductsPanel extends JPanel {
             }
 
             if (p != null) {
-                if (DateUtil.isExpired(p.getExpDate())) {
+                if (EXPIRED.equals(expiryStatus)) {
                     c.setBackground(Color.RED);
                     c.setForeground(Color.WHITE);
-                } else if (DateUtil.isNearExpiry(p.getExpDate())) {
+                } else if (EXPIRING_SOON.equals(expiryStatus)) {
                     c.setBackground(purple);
                     c.setForeground(Color.WHITE);
                 } else if (p.getQuantity() <= 0) {
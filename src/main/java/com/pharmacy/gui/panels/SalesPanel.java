@@ -1,6 +1,8 @@
 package com.pharmacy.gui.panels;
 
 import com.pharmacy.gui.GenerateBillDialog;
+import com.pharmacy.gui.ReportsDialog;
+import com.pharmacy.gui.ReturnDialog;
 import com.pharmacy.gui.ViewSalesDialog;
 
 import javax.swing.*;
@@ -29,9 +31,15 @@ public class SalesPanel extends JPanel {
         billBtn.addActionListener(e -> new GenerateBillDialog(parent).setVisible(true));
         JButton salesBtn = new JButton("View sales (owner)");
         salesBtn.addActionListener(e -> new ViewSalesDialog(parent).setVisible(true));
+        JButton reportsBtn = new JButton("Reports (owner)");
+        reportsBtn.addActionListener(e -> new ReportsDialog(parent).setVisible(true));
+        JButton returnsBtn = new JButton("Returns / void (owner)");
+        returnsBtn.addActionListener(e -> new ReturnDialog(parent).setVisible(true));
 
         actions.add(billBtn);
         actions.add(salesBtn);
+        actions.add(reportsBtn);
+        actions.add(returnsBtn);
         add(actions, BorderLayout.CENTER);
 
         JLabel hint = new JLabel("Tip: After generating a bill, inventory quantity is reduced automatically.");
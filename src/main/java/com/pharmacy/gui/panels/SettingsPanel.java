@@ -1,5 +1,7 @@
 package com.pharmacy.gui.panels;
 
+import com.pharmacy.dao.ProductCatalogCache;
+import com.pharmacy.dao.SalesRollupDAO;
 import com.pharmacy.dao.SettingsDAO;
 import com.pharmacy.gui.ChangePasswordDialog;
 import com.pharmacy.gui.ThemeManager;
@@ -52,9 +54,74 @@ public class SettingsPanel extends JPanel {
         securityPanel.add(changePassBtn);
         content.add(securityPanel);
 
+        JPanel maintenancePanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        maintenancePanel.setBorder(BorderFactory.createTitledBorder("Maintenance"));
+        JButton rebuildTotalsBtn = new JButton("Rebuild sales totals");
+        rebuildTotalsBtn.setToolTipText("Recompute daily/monthly/yearly sales totals from the sales history");
+        rebuildTotalsBtn.addActionListener(e -> rebuildSalesTotals(rebuildTotalsBtn));
+        maintenancePanel.add(rebuildTotalsBtn);
+        JButton verifyCacheBtn = new JButton("Check product cache");
+        verifyCacheBtn.setToolTipText("Compare the in-memory catalog with the database and repair any difference");
+        verifyCacheBtn.addActionListener(e -> verifyProductCache(verifyCacheBtn));
+        maintenancePanel.add(verifyCacheBtn);
+        content.add(maintenancePanel);
+
         add(content, BorderLayout.CENTER);
     }
 
+    private void rebuildSalesTotals(JButton button) {
+        button.setEnabled(false);
+        new SwingWorker<Boolean, Void>() {
+            @Override
+            protected Boolean doInBackground() {
+                return new SalesRollupDAO().rebuild();
+            }
+
+            @Override
+            protected void done() {
+                button.setEnabled(true);
+                boolean ok;
+                try {
+                    ok = get();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    ok = false;
+                }
+                JOptionPane.showMessageDialog(parent,
+                        ok ? "Sales totals rebuilt." : "Failed to rebuild sales totals.",
+                        "Maintenance", ok ? JOptionPane.INFORMATION_MESSAGE : JOptionPane.ERROR_MESSAGE);
+            }
+        }.execute();
+    }
+
+    private void verifyProductCache(JButton button) {
+        button.setEnabled(false);
+        new SwingWorker<ProductCatalogCache.ConsistencyReport, Void>() {
+            @Override
+            protected ProductCatalogCache.ConsistencyReport doInBackground() {
+                return ProductCatalogCache.getInstance().verifyAgainstDatabase();
+            }
+
+            @Override
+            protected void done() {
+                button.setEnabled(true);
+                ProductCatalogCache.ConsistencyReport report;
+                try {
+                    report = get();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    JOptionPane.showMessageDialog(parent, "Failed to check the product cache.",
+                            "Maintenance", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                String message = report.isConsistent()
+                        ? "Product cache matches the database (" + report.getChecked() + " products)."
+                        : "Repaired " + report.getMismatchedSerials().size() + " cached products that differed from the database.";
+                JOptionPane.showMessageDialog(parent, message, "Maintenance", JOptionPane.INFORMATION_MESSAGE);
+            }
+        }.execute();
+    }
+
     public void loadSettings() {
         String theme = settingsDAO.getUiTheme();
         darkModeCheck.setSelected("dark".equalsIgnoreCase(theme));
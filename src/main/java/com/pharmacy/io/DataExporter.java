@@ -0,0 +1,518 @@
+package com.pharmacy.io;
+
+import com.pharmacy.dao.ExpiryIndex;
+import com.pharmacy.dao.ProductDAO;
+import com.pharmacy.dao.RowVisitor;
+import com.pharmacy.dao.SaleDAO;
+import com.pharmacy.dao.SalesRollupDAO;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Streaming CSV / JSON Lines export of the sales ledger and the stock valuation.
+ *
+ * Rows go from the forward-only cursor of {@link SaleDAO#exportSales} or
+ * {@link ProductDAO#exportStock} into a direct buffer, one value at a time, and the buffer
+ * is written to a {@link FileChannel} whenever it fills. With gzip the buffer is deflated
+ * straight into a second direct buffer. Nothing is collected per row, so memory stays the
+ * same whatever the number of rows.
+ *
+ * CSV has a header line of column names; JSON Lines has one object per line, with SQL
+ * NULL as {@code null}. Dates are written as stored (yyyy-MM-dd). A cancelled or failed
+ * export deletes its file.
+ */
+public class DataExporter {
+    public enum Format {
+        CSV("csv"),
+        JSON_LINES("jsonl");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    private static final int BUFFER_BYTES = 1024 * 1024;
+    private static final int PROGRESS_EVERY_ROWS = 10_000;
+
+    public interface ProgressListener {
+        /**
+         * Called on the exporting thread every {@value #PROGRESS_EVERY_ROWS} rows and once at the end.
+         */
+        void onProgress(Progress progress);
+    }
+
+    public static final class Progress {
+        private final long rows;
+        private final long expectedRows;
+        private final long bytes;
+        private final boolean finished;
+        private final boolean cancelled;
+
+        private Progress(long rows, long expectedRows, long bytes, boolean finished, boolean cancelled) {
+            this.rows = rows;
+            this.expectedRows = expectedRows;
+            this.bytes = bytes;
+            this.finished = finished;
+            this.cancelled = cancelled;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        /**
+         * Row count estimated before the export started (from the sales totals or the
+         * product index).
+         */
+        public long getExpectedRows() {
+            return expectedRows;
+        }
+
+        /**
+         * @return bytes written to the file (compressed size with gzip)
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        public int getPercent() {
+            if (finished || expectedRows == 0) return finished ? 100 : 0;
+            return (int) Math.min(99, rows * 100 / expectedRows);
+        }
+
+        public boolean isFinished() {
+            return finished;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public String toString() {
+            return getPercent() + "% - " + rows + " rows, " + (bytes / 1024) + " KB written";
+        }
+    }
+
+    private final Path file;
+    private final Format format;
+    private final boolean gzip;
+    private ProgressListener listener;
+    private volatile boolean cancelled;
+
+    /**
+     * @param gzip compress the output; the file name is used as given
+     */
+    public DataExporter(Path file, Format format, boolean gzip) {
+        this.file = file.toAbsolutePath().normalize();
+        this.format = format;
+        this.gzip = gzip;
+    }
+
+    public void setProgressListener(ProgressListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Stops at the next row; the partial file is deleted.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Exports the sales dated {@code from} to {@code to} (inclusive) on the calling thread.
+     */
+    public Progress exportSales(LocalDate from, LocalDate to) throws IOException, SQLException {
+        long expected = 0;
+        for (SalesRollupDAO.Totals day : new SalesRollupDAO().getDailyTotals(from, to, SalesRollupDAO.TOTAL).values()) {
+            expected += day.getLineCount();
+        }
+        long expectedRows = expected;
+        return run(expectedRows, visitor -> new SaleDAO().exportSales(from, to, visitor));
+    }
+
+    /**
+     * Exports the stock valuation, one row per product, on the calling thread.
+     */
+    public Progress exportStock() throws IOException, SQLException {
+        ExpiryIndex index = ExpiryIndex.getInstance();
+        index.ensureBuilt();
+        return run(index.size(), visitor -> new ProductDAO().exportStock(visitor));
+    }
+
+    @FunctionalInterface
+    private interface Source {
+        void read(RowVisitor visitor) throws SQLException;
+    }
+
+    private Progress run(long expectedRows, Source source) throws IOException, SQLException {
+        boolean done = false;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             Sink sink = new Sink(channel, gzip)) {
+            long[] rows = {0};
+            RowWriter[] writer = {null};
+            try {
+                source.read(new RowVisitor() {
+                    // Header first, so an empty range still gets one
+                    @Override
+                    public void start(ResultSetMetaData columns) throws SQLException {
+                        try {
+                            writer[0] = new RowWriter(columns, format, sink);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+
+                    @Override
+                    public boolean visit(ResultSet rs) throws SQLException {
+                        if (cancelled) return false;
+                        try {
+                            writer[0].write(rs);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        if (++rows[0] % PROGRESS_EVERY_ROWS == 0 && listener != null) {
+                            listener.onProgress(new Progress(rows[0], expectedRows, sink.written, false, false));
+                        }
+                        return true;
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            sink.finish();
+
+            Progress result = new Progress(rows[0], expectedRows, sink.written, !cancelled, cancelled);
+            done = !cancelled;
+            if (listener != null) listener.onProgress(result);
+            return result;
+        } finally {
+            if (!done) Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Encodes rows of one result set. Column names are encoded once, up front.
+     */
+    private static final class RowWriter {
+        private final Format format;
+        private final Sink sink;
+        private final int columns;
+        private final byte[][] jsonKeys;
+
+        RowWriter(ResultSetMetaData meta, Format format, Sink sink) throws SQLException, IOException {
+            this.format = format;
+            this.sink = sink;
+            this.columns = meta.getColumnCount();
+            this.jsonKeys = new byte[columns][];
+            for (int i = 0; i < columns; i++) {
+                String name = meta.getColumnLabel(i + 1);
+                if (format == Format.CSV) {
+                    if (i > 0) sink.put((byte) ',');
+                    writeCsvText(name);
+                } else {
+                    // {"name": or ,"name":
+                    jsonKeys[i] = ((i == 0 ? "{\"" : ",\"") + name + "\":").getBytes(StandardCharsets.UTF_8);
+                }
+            }
+            if (format == Format.CSV) sink.put((byte) '\n');
+        }
+
+        void write(ResultSet rs) throws SQLException, IOException {
+            for (int i = 0; i < columns; i++) {
+                Object value = rs.getObject(i + 1);
+                if (format == Format.CSV) {
+                    if (i > 0) sink.put((byte) ',');
+                    if (value instanceof Number) {
+                        writeNumber((Number) value);
+                    } else if (value != null) {
+                        writeCsvText(value.toString());
+                    }
+                } else {
+                    sink.put(jsonKeys[i]);
+                    if (value == null) {
+                        sink.putAscii("null");
+                    } else if (value instanceof Number) {
+                        writeNumber((Number) value);
+                    } else {
+                        writeJsonText(value.toString());
+                    }
+                }
+            }
+            if (format == Format.JSON_LINES) sink.put((byte) '}');
+            sink.put((byte) '\n');
+        }
+
+        private void writeNumber(Number n) throws IOException {
+            if (n instanceof Double || n instanceof Float) {
+                double d = n.doubleValue();
+                if (d == Math.rint(d) && Math.abs(d) < 1e15) {
+                    sink.putLong((long) d);
+                } else {
+                    // Plain notation: accounting tools do not all read 1.0E7
+                    sink.putAscii(BigDecimal.valueOf(d).toPlainString());
+                }
+            } else {
+                sink.putLong(n.longValue());
+            }
+        }
+
+        private void writeCsvText(String text) throws IOException {
+            boolean quote = false;
+            for (int i = 0; i < text.length() && !quote; i++) {
+                char c = text.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote) {
+                sink.putUtf8(text, 0, text.length());
+                return;
+            }
+            sink.put((byte) '"');
+            int start = 0;
+            for (int i = 0; i < text.length(); i++) {
+                if (text.charAt(i) == '"') {
+                    sink.putUtf8(text, start, i + 1);
+                    sink.put((byte) '"');
+                    start = i + 1;
+                }
+            }
+            sink.putUtf8(text, start, text.length());
+            sink.put((byte) '"');
+        }
+
+        private void writeJsonText(String text) throws IOException {
+            sink.put((byte) '"');
+            int start = 0;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c >= 0x20 && c != '"' && c != '\\') continue;
+                sink.putUtf8(text, start, i);
+                start = i + 1;
+                switch (c) {
+                    case '"' -> sink.putAscii("\\\"");
+                    case '\\' -> sink.putAscii("\\\\");
+                    case '\n' -> sink.putAscii("\\n");
+                    case '\r' -> sink.putAscii("\\r");
+                    case '\t' -> sink.putAscii("\\t");
+                    default -> sink.putAscii(String.format("\\u%04x", (int) c));
+                }
+            }
+            sink.putUtf8(text, start, text.length());
+            sink.put((byte) '"');
+        }
+    }
+
+    /**
+     * Direct output buffer in front of the channel, optionally gzip-compressing on the way.
+     */
+    private static final class Sink implements AutoCloseable {
+        private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        private final Deflater deflater;
+        private final ByteBuffer compressed;
+        private final CRC32 crc;
+        private long uncompressed;
+        long written;
+
+        Sink(FileChannel channel, boolean gzip) throws IOException {
+            this.channel = channel;
+            if (gzip) {
+                deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+                compressed = ByteBuffer.allocateDirect(BUFFER_BYTES);
+                crc = new CRC32();
+                writeFully(ByteBuffer.wrap(GZIP_HEADER));
+            } else {
+                deflater = null;
+                compressed = null;
+                crc = null;
+            }
+        }
+
+        void put(byte b) throws IOException {
+            if (!buffer.hasRemaining()) flush();
+            buffer.put(b);
+        }
+
+        void put(byte[] bytes) throws IOException {
+            if (buffer.remaining() < bytes.length) flush();
+            buffer.put(bytes);
+        }
+
+        void putAscii(String s) throws IOException {
+            if (buffer.remaining() < s.length()) flush();
+            for (int i = 0; i < s.length(); i++) buffer.put((byte) s.charAt(i));
+        }
+
+        void putLong(long v) throws IOException {
+            if (buffer.remaining() < 20) flush();
+            if (v < 0) {
+                buffer.put((byte) '-');
+                if (v == Long.MIN_VALUE) {
+                    putAscii("9223372036854775808");
+                    return;
+                }
+                v = -v;
+            }
+            int start = buffer.position();
+            do {
+                buffer.put((byte) ('0' + v % 10));
+                v /= 10;
+            } while (v != 0);
+            // Digits came out least significant first
+            for (int i = start, j = buffer.position() - 1; i < j; i++, j--) {
+                byte t = buffer.get(i);
+                buffer.put(i, buffer.get(j));
+                buffer.put(j, t);
+            }
+        }
+
+        /**
+         * UTF-8 encodes {@code s[from, to)} into the buffer.
+         */
+        void putUtf8(String s, int from, int to) throws IOException {
+            for (int i = from; i < to; i++) {
+                if (buffer.remaining() < 4) flush();
+                char c = s.charAt(i);
+                if (c < 0x80) {
+                    buffer.put((byte) c);
+                } else if (c < 0x800) {
+                    buffer.put((byte) (0xc0 | c >> 6));
+                    buffer.put((byte) (0x80 | c & 0x3f));
+                } else if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, s.charAt(++i));
+                    buffer.put((byte) (0xf0 | cp >> 18));
+                    buffer.put((byte) (0x80 | cp >> 12 & 0x3f));
+                    buffer.put((byte) (0x80 | cp >> 6 & 0x3f));
+                    buffer.put((byte) (0x80 | cp & 0x3f));
+                } else if (Character.isSurrogate(c)) {
+                    buffer.put((byte) '?');
+                } else {
+                    buffer.put((byte) (0xe0 | c >> 12));
+                    buffer.put((byte) (0x80 | c >> 6 & 0x3f));
+                    buffer.put((byte) (0x80 | c & 0x3f));
+                }
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            if (deflater == null) {
+                writeFully(buffer);
+            } else {
+                uncompressed += buffer.remaining();
+                crc.update(buffer.duplicate());
+                // The deflater keeps the buffer it is given; hand it a view that clear() cannot refill
+                deflater.setInput(buffer.slice());
+                while (!deflater.needsInput()) drain();
+            }
+            buffer.clear();
+        }
+
+        void finish() throws IOException {
+            flush();
+            if (deflater == null) return;
+            deflater.finish();
+            while (!deflater.finished()) drain();
+            ByteBuffer trailer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            trailer.putInt((int) crc.getValue());
+            trailer.putInt((int) uncompressed);
+            trailer.flip();
+            writeFully(trailer);
+        }
+
+        private void drain() throws IOException {
+            deflater.deflate(compressed);
+            compressed.flip();
+            writeFully(compressed);
+            compressed.clear();
+        }
+
+        private void writeFully(ByteBuffer src) throws IOException {
+            while (src.hasRemaining()) written += channel.write(src);
+        }
+
+        @Override
+        public void close() {
+            if (deflater != null) deflater.end();
+        }
+    }
+
+    /**
+     * Headless entry point:
+     * {@code DataExporter sales|stock <file> [--from yyyy-MM-dd] [--to yyyy-MM-dd] [--jsonl] [--gzip]}.
+     */
+    public static void main(String[] args) {
+        if (args.length < 2 || !("sales".equals(args[0]) || "stock".equals(args[0]))) {
+            System.err.println("Usage: DataExporter sales|stock <file> [--from yyyy-MM-dd] [--to yyyy-MM-dd] [--jsonl] [--gzip]");
+            System.exit(2);
+        }
+
+        LocalDate from = LocalDate.of(1900, 1, 1);
+        LocalDate to = LocalDate.of(9999, 12, 31);
+        Format format = Format.CSV;
+        boolean gzip = false;
+        for (int i = 2; i < args.length; i++) {
+            if ("--from".equals(args[i]) && i + 1 < args.length) {
+                from = LocalDate.parse(args[++i]);
+            } else if ("--to".equals(args[i]) && i + 1 < args.length) {
+                to = LocalDate.parse(args[++i]);
+            } else if ("--jsonl".equals(args[i])) {
+                format = Format.JSON_LINES;
+            } else if ("--gzip".equals(args[i])) {
+                gzip = true;
+            }
+        }
+
+        DataExporter exporter = new DataExporter(Paths.get(args[1]), format, gzip);
+        long[] lastPrint = {0};
+        exporter.setProgressListener(p -> {
+            long now = System.currentTimeMillis();
+            if (p.isFinished() || now - lastPrint[0] >= 1000) {
+                lastPrint[0] = now;
+                System.out.println(p);
+            }
+        });
+        try {
+            if ("sales".equals(args[0])) {
+                exporter.exportSales(from, to);
+            } else {
+                exporter.exportStock();
+            }
+            System.out.println("Exported to " + exporter.getFile());
+        } catch (IOException | SQLException e) {
+            System.err.println("Export failed: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
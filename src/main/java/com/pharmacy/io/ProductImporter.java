@@ -0,0 +1,723 @@
+package com.pharmacy.io;
+
+import com.pharmacy.dao.ProductDAO;
+import com.pharmacy.dao.SettingsDAO;
+import com.pharmacy.model.Product;
+import com.pharmacy.util.DateUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Streaming CSV/TSV stock import.
+ *
+ * Three stages: the calling thread reads the file through a {@link FileChannel} in chunks
+ * cut at line boundaries, a small pool parses and validates chunks in parallel, and the
+ * calling thread writes the parsed rows in file order, {@code batchSize} rows per
+ * transaction. Only a few chunks are in flight at a time, so memory stays bounded
+ * whatever the file size.
+ *
+ * Each committed batch stores a checkpoint in settings in the same transaction. Running
+ * the importer again on the same, unchanged file resumes after the last committed batch.
+ * Rows that fail validation or cannot be written are appended to {@code <file>.errors}
+ * with their line number and reason.
+ *
+ * The first line is a header naming the columns, in any order: name, salt, company,
+ * distributor, batch, purchase_date, mfg_date, exp_date, price, quantity and optionally
+ * serial, which must name an existing product (to update it). Dates are yyyy-MM-dd or
+ * dd/MM/yyyy. Quoted fields may contain the delimiter but not line breaks.
+ */
+public class ProductImporter {
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private static final int CHUNK_BYTES = 4 * 1024 * 1024;
+    private static final int MAX_HEADER_BYTES = 64 * 1024;
+    private static final String CHECKPOINT_PREFIX = "import_checkpoint:";
+    private static final String[] REQUIRED_COLUMNS = {"name", "purchase_date", "exp_date", "price"};
+    private static final DateTimeFormatter DISPLAY_DATE =
+            DateTimeFormatter.ofPattern("dd/MM/uuuu").withResolverStyle(ResolverStyle.STRICT);
+
+    public interface ProgressListener {
+        /**
+         * Called on the importing thread after every committed batch and once at the end.
+         */
+        void onProgress(Progress progress);
+    }
+
+    public static final class Progress {
+        private final long bytesDone;
+        private final long totalBytes;
+        private final long inserted;
+        private final long updated;
+        private final long duplicates;
+        private final long failed;
+        private final long resumedAtLine;
+        private final boolean finished;
+        private final boolean cancelled;
+        private final Path errorFile;
+
+        private Progress(long bytesDone, long totalBytes, long inserted, long updated, long duplicates, long failed,
+                         long resumedAtLine, boolean finished, boolean cancelled, Path errorFile) {
+            this.bytesDone = bytesDone;
+            this.totalBytes = totalBytes;
+            this.inserted = inserted;
+            this.updated = updated;
+            this.duplicates = duplicates;
+            this.failed = failed;
+            this.resumedAtLine = resumedAtLine;
+            this.finished = finished;
+            this.cancelled = cancelled;
+            this.errorFile = errorFile;
+        }
+
+        public long getBytesDone() {
+            return bytesDone;
+        }
+
+        public long getTotalBytes() {
+            return totalBytes;
+        }
+
+        public int getPercent() {
+            return totalBytes == 0 ? 100 : (int) (bytesDone * 100 / totalBytes);
+        }
+
+        public long getInserted() {
+            return inserted;
+        }
+
+        public long getUpdated() {
+            return updated;
+        }
+
+        public long getDuplicates() {
+            return duplicates;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        /**
+         * @return line the run resumed from, or 0 if it started from the beginning
+         */
+        public long getResumedAtLine() {
+            return resumedAtLine;
+        }
+
+        public boolean isFinished() {
+            return finished;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * @return the error file, or null if no row was rejected
+         */
+        public Path getErrorFile() {
+            return errorFile;
+        }
+
+        @Override
+        public String toString() {
+            return getPercent() + "% - inserted " + inserted + ", updated " + updated
+                    + ", duplicates " + duplicates + ", failed " + failed;
+        }
+    }
+
+    private final Path file;
+    private final Path errorFile;
+    private final ProductDAO productDAO = new ProductDAO();
+    private final SettingsDAO settingsDAO = new SettingsDAO();
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private boolean mergeQuantities;
+    private ProgressListener listener;
+    private volatile boolean cancelled;
+
+    // Running totals; restored from the checkpoint when resuming.
+    private long inserted;
+    private long updated;
+    private long duplicates;
+    private long failed;
+    private long resumedAtLine;
+    private long committedOffset;
+    private FileChannel errorChannel;
+    private final StringBuilder pendingErrors = new StringBuilder();
+
+    public ProductImporter(Path file) {
+        this.file = file.toAbsolutePath().normalize();
+        this.errorFile = Paths.get(this.file + ".errors");
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * When set, a row matching an existing product by name and batch adds its quantity to
+     * that product; otherwise such rows are reported as duplicates and skipped.
+     */
+    public void setMergeQuantities(boolean mergeQuantities) {
+        this.mergeQuantities = mergeQuantities;
+    }
+
+    public void setProgressListener(ProgressListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Stops after the batch currently being written. The checkpoint is kept, so a later
+     * run continues from there.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public Path getErrorFile() {
+        return errorFile;
+    }
+
+    /**
+     * Runs the import on the calling thread.
+     *
+     * @throws IOException  if the file cannot be read or has no usable header
+     * @throws SQLException if a batch could not be committed; rerun to resume
+     */
+    public Progress run() throws IOException, SQLException {
+        int parallelism = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        AtomicInteger threadNo = new AtomicInteger();
+        ExecutorService parsers = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread t = new Thread(r, "import-parser-" + threadNo.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long modified = Files.getLastModifiedTime(file).toMillis();
+            Header header = readHeader(channel, size);
+
+            long position = header.dataOffset;
+            long line = 2;
+            Checkpoint checkpoint = Checkpoint.parse(settingsDAO.getSetting(checkpointKey(), null));
+            if (checkpoint != null && checkpoint.size == size && checkpoint.modified == modified) {
+                position = checkpoint.offset;
+                committedOffset = position;
+                line = checkpoint.line;
+                inserted = checkpoint.inserted;
+                updated = checkpoint.updated;
+                duplicates = checkpoint.duplicates;
+                failed = checkpoint.failed;
+                resumedAtLine = line;
+                if (Files.exists(errorFile)) {
+                    appendError(0, "Resumed at line " + line + "; earlier entries after that line may repeat", "");
+                }
+            } else {
+                Files.deleteIfExists(errorFile);
+            }
+
+            List<Product> batch = new ArrayList<>(batchSize);
+            List<ParsedRow> batchRows = new ArrayList<>(batchSize);
+            ArrayDeque<Future<List<ParsedRow>>> inFlight = new ArrayDeque<>();
+            int maxInFlight = parallelism * 2;
+            boolean eof = false;
+
+            while (!cancelled) {
+                while (!eof && inFlight.size() < maxInFlight) {
+                    Chunk chunk = readChunk(channel, position, size, line);
+                    if (chunk == null) {
+                        eof = true;
+                        break;
+                    }
+                    position = chunk.offset + chunk.length;
+                    line += chunk.lineCount;
+                    inFlight.add(parsers.submit(() -> parse(chunk, header)));
+                }
+
+                Future<List<ParsedRow>> next = inFlight.poll();
+                if (next == null) break;
+
+                for (ParsedRow row : await(next)) {
+                    if (row.error != null) {
+                        appendError(row.line, row.error, row.raw);
+                        failed++;
+                        continue;
+                    }
+                    batch.add(row.product);
+                    batchRows.add(row);
+                    if (batch.size() >= batchSize) {
+                        commit(batch, batchRows, row.endOffset, row.line + 1, size, modified);
+                        if (cancelled) break;
+                    }
+                }
+            }
+
+            if (!cancelled) {
+                commit(batch, batchRows, size, line, size, modified);
+                settingsDAO.deleteSetting(checkpointKey());
+            } else if (!batch.isEmpty()) {
+                ParsedRow last = batchRows.get(batchRows.size() - 1);
+                commit(batch, batchRows, last.endOffset, last.line + 1, size, modified);
+            }
+            flushErrors();
+
+            Progress result = progress(cancelled ? committedOffset : size, size, !cancelled);
+            if (listener != null) listener.onProgress(result);
+            return result;
+        } finally {
+            parsers.shutdownNow();
+            if (errorChannel != null) {
+                errorChannel.close();
+                errorChannel = null;
+            }
+        }
+    }
+
+    private void commit(List<Product> batch, List<ParsedRow> batchRows, long offset, long nextLine,
+                        long size, long modified) throws IOException, SQLException {
+        flushErrors();
+        List<ProductDAO.BulkRowResult> results = productDAO.writeProductsWithCheckpoint(
+                batch, mergeQuantities, mergeQuantities, checkpointKey(),
+                written -> checkpointAfter(written, offset, nextLine, size, modified));
+        committedOffset = offset;
+
+        for (int i = 0; i < results.size(); i++) {
+            ProductDAO.BulkRowResult result = results.get(i);
+            ParsedRow row = batchRows.get(i);
+            switch (result.getStatus()) {
+                case INSERTED -> inserted++;
+                case UPDATED -> updated++;
+                case DUPLICATE -> {
+                    duplicates++;
+                    appendError(row.line, "Duplicate of serial " + result.getSerial() +  " (same serial, or same name and batch)", row.raw);
+                }
+                case FAILED -> {
+                    failed++;
+                    appendError(row.line, result.getErrorMessage(), row.raw);
+                }
+            }
+        }
+        batch.clear();
+        batchRows.clear();
+
+        if (listener != null) listener.onProgress(progress(offset, size, false));
+    }
+
+    // Runs inside the batch's transaction, so the stored counts include the batch itself.
+    private String checkpointAfter(List<ProductDAO.BulkRowResult> results, long offset, long nextLine,
+                                   long size, long modified) {
+        long ins = inserted, upd = updated, dup = duplicates, fail = failed;
+        for (ProductDAO.BulkRowResult result : results) {
+            switch (result.getStatus()) {
+                case INSERTED -> ins++;
+                case UPDATED -> upd++;
+                case DUPLICATE -> dup++;
+                case FAILED -> fail++;
+            }
+        }
+        return new Checkpoint(size, modified, offset, nextLine, ins, upd, dup, fail).format();
+    }
+
+    private Progress progress(long bytesDone, long size, boolean finished) {
+        return new Progress(bytesDone, size, inserted, updated, duplicates, failed, resumedAtLine,
+                finished, cancelled, errorChannel != null || Files.exists(errorFile) ? errorFile : null);
+    }
+
+    private String checkpointKey() {
+        return CHECKPOINT_PREFIX + file;
+    }
+
+    private static List<ParsedRow> await(Future<List<ParsedRow>> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while parsing the import file.", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to parse the import file: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    // ---- Stage 1: read ----
+
+    private static final class Chunk {
+        private final long offset;
+        private final byte[] data;
+        private final int length;
+        private final long firstLine;
+        private final long lineCount;
+
+        private Chunk(long offset, byte[] data, int length, long firstLine, long lineCount) {
+            this.offset = offset;
+            this.data = data;
+            this.length = length;
+            this.firstLine = firstLine;
+            this.lineCount = lineCount;
+        }
+    }
+
+    /**
+     * Reads whole lines starting at {@code position}, or returns null at end of file.
+     */
+    private static Chunk readChunk(FileChannel channel, long position, long size, long firstLine) throws IOException {
+        int want = CHUNK_BYTES;
+        while (true) {
+            long remaining = size - position;
+            if (remaining <= 0) return null;
+
+            int len = (int) Math.min(want, remaining);
+            byte[] data = new byte[len];
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) break;
+            }
+
+            boolean lastChunk = position + len >= size;
+            int end = lastChunk ? buffer.position() : lastIndexOf(data, buffer.position(), (byte) '\n') + 1;
+            if (end > 0) {
+                long lines = 0;
+                for (int i = 0; i < end; i++) {
+                    if (data[i] == '\n') lines++;
+                }
+                if (lastChunk && data[end - 1] != '\n') lines++;
+                return new Chunk(position, data, end, firstLine, lines);
+            }
+            // A single line longer than the chunk: read a bigger one.
+            want = want > Integer.MAX_VALUE / 2 ? Integer.MAX_VALUE : want * 2;
+        }
+    }
+
+    private static int lastIndexOf(byte[] data, int length, byte b) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (data[i] == b) return i;
+        }
+        return -1;
+    }
+
+    private static final class Header {
+        private final char delimiter;
+        private final Map<String, Integer> columns;
+        private final long dataOffset;
+
+        private Header(char delimiter, Map<String, Integer> columns, long dataOffset) {
+            this.delimiter = delimiter;
+            this.columns = columns;
+            this.dataOffset = dataOffset;
+        }
+
+        private String get(List<String> fields, String column) {
+            Integer index = columns.get(column);
+            if (index == null || index >= fields.size()) return "";
+            return fields.get(index);
+        }
+    }
+
+    private Header readHeader(FileChannel channel, long size) throws IOException {
+        byte[] data = new byte[(int) Math.min(size, MAX_HEADER_BYTES)];
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) < 0) break;
+        }
+        int newline = -1;
+        for (int i = 0; i < buffer.position(); i++) {
+            if (data[i] == '\n') {
+                newline = i;
+                break;
+            }
+        }
+        if (newline < 0 && buffer.position() < size) throw new IOException("Header line is too long.");
+        int headerEnd = newline < 0 ? buffer.position() : newline;
+
+        String text = new String(data, 0, headerEnd, StandardCharsets.UTF_8);
+        if (text.startsWith("\uFEFF")) text = text.substring(1);
+        if (text.endsWith("\r")) text = text.substring(0, text.length() - 1);
+        if (text.isBlank()) throw new IOException("The file has no header line.");
+
+        String fileName = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        char delimiter = fileName.endsWith(".tsv") || text.indexOf('\t') >= 0 ? '\t' : ',';
+
+        Map<String, Integer> columns = new HashMap<>();
+        List<String> names = splitFields(text, delimiter);
+        for (int i = 0; i < names.size(); i++) {
+            String column = names.get(i).trim().toLowerCase(Locale.ROOT).replace(' ', '_').replace('-', '_');
+            columns.putIfAbsent(column, i);
+        }
+        for (String required : REQUIRED_COLUMNS) {
+            if (!columns.containsKey(required)) {
+                throw new IOException("Missing required column '" + required + "' in header.");
+            }
+        }
+        return new Header(delimiter, columns, newline < 0 ? headerEnd : newline + 1);
+    }
+
+    // ---- Stage 2: parse ----
+
+    private static final class ParsedRow {
+        private final long line;
+        private final long endOffset;
+        private final Product product;
+        private final String error;
+        private final String raw;
+
+        private ParsedRow(long line, long endOffset, Product product, String error, String raw) {
+            this.line = line;
+            this.endOffset = endOffset;
+            this.product = product;
+            this.error = error;
+            this.raw = raw;
+        }
+    }
+
+    private static List<ParsedRow> parse(Chunk chunk, Header header) {
+        List<ParsedRow> rows = new ArrayList<>();
+        long line = chunk.firstLine;
+        int start = 0;
+        while (start < chunk.length) {
+            int end = start;
+            while (end < chunk.length && chunk.data[end] != '\n') end++;
+            int next = Math.min(end + 1, chunk.length);
+            int textEnd = end > start && chunk.data[end - 1] == '\r' ? end - 1 : end;
+
+            String raw = new String(chunk.data, start, textEnd - start, StandardCharsets.UTF_8);
+            if (!raw.isBlank()) {
+                long endOffset = chunk.offset + next;
+                try {
+                    rows.add(new ParsedRow(line, endOffset, toProduct(splitFields(raw, header.delimiter), header), null, raw));
+                } catch (IllegalArgumentException e) {
+                    rows.add(new ParsedRow(line, endOffset, null, e.getMessage(), raw));
+                }
+            }
+            line++;
+            start = next;
+        }
+        return rows;
+    }
+
+    /**
+     * Builds and validates a product with the same rules as {@code AddProductDialog}.
+     */
+    private static Product toProduct(List<String> fields, Header header) {
+        String name = header.get(fields, "name");
+        if (name.isEmpty()) throw new IllegalArgumentException("Name is required.");
+
+        LocalDate purchaseDate = parseDate(header.get(fields, "purchase_date"), "Purchase date");
+        LocalDate expDate = parseDate(header.get(fields, "exp_date"), "EXP date");
+        String mfgText = header.get(fields, "mfg_date");
+        LocalDate mfgDate = mfgText.isEmpty() ? purchaseDate : parseDate(mfgText, "MFG date");
+        if (!DateUtil.isValidDateRange(purchaseDate, expDate)) {
+            throw new IllegalArgumentException("Expiry must be after purchase date.");
+        }
+        if (!DateUtil.isValidDateRange(mfgDate, expDate)) {
+            throw new IllegalArgumentException("Expiry must be after MFG date.");
+        }
+
+        double price = parseNumber(header.get(fields, "price"), "Price");
+        if (price <= 0) throw new IllegalArgumentException("Price must be greater than 0.");
+        String quantityText = header.get(fields, "quantity");
+        int quantity = quantityText.isEmpty() ? 0 : parseInteger(quantityText, "Quantity");
+        if (quantity < 0) throw new IllegalArgumentException("Quantity cannot be negative.");
+        String serialText = header.get(fields, "serial");
+        int serial = serialText.isEmpty() ? 0 : parseInteger(serialText, "Serial");
+
+        Product product = new Product();
+        product.setSerial(serial);
+        product.setName(name);
+        product.setSalt(header.get(fields, "salt"));
+        product.setCompany(header.get(fields, "company"));
+        product.setDistributor(header.get(fields, "distributor"));
+        product.setBatch(header.get(fields, "batch"));
+        product.setPurchaseDate(purchaseDate);
+        product.setMfgDate(mfgDate);
+        product.setExpDate(expDate);
+        product.setPrice(price);
+        product.setQuantity(quantity);
+        return product;
+    }
+
+    private static LocalDate parseDate(String text, String label) {
+        if (text.isEmpty()) throw new IllegalArgumentException(label + " is required.");
+        try {
+            return text.indexOf('/') >= 0 ? LocalDate.parse(text, DISPLAY_DATE) : LocalDate.parse(text);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException(label + " '" + text + "' is not a valid date (YYYY-MM-DD or DD/MM/YYYY).");
+        }
+    }
+
+    private static double parseNumber(String text, String label) {
+        double value;
+        try {
+            value = Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(label + " '" + text + "' is not a number.");
+        }
+        if (!Double.isFinite(value)) throw new IllegalArgumentException(label + " '" + text + "' is not a number.");
+        return value;
+    }
+
+    private static int parseInteger(String text, String label) {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(label + " '" + text + "' is not a whole number.");
+        }
+    }
+
+    static List<String> splitFields(String line, char delimiter) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean wasQuoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"' && field.toString().isBlank()) {
+                field.setLength(0);
+                quoted = true;
+                wasQuoted = true;
+            } else if (c == delimiter) {
+                fields.add(wasQuoted ? field.toString() : field.toString().trim());
+                field.setLength(0);
+                wasQuoted = false;
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) throw new IllegalArgumentException("Unterminated quoted field.");
+        fields.add(wasQuoted ? field.toString() : field.toString().trim());
+        return fields;
+    }
+
+    // ---- Stage 3 helpers: errors and checkpoints ----
+
+    private void appendError(long line, String message, String raw) {
+        pendingErrors.append(line).append('\t')
+                .append(message == null ? "Unknown error" : message.replace('\t', ' ').replace('\n', ' '))
+                .append('\t').append(raw).append('\n');
+    }
+
+    private void flushErrors() throws IOException {
+        if (pendingErrors.length() == 0) return;
+        if (errorChannel == null) {
+            errorChannel = FileChannel.open(errorFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(pendingErrors.toString().getBytes(StandardCharsets.UTF_8));
+        while (bytes.hasRemaining()) errorChannel.write(bytes);
+        pendingErrors.setLength(0);
+    }
+
+    private static final class Checkpoint {
+        private final long size;
+        private final long modified;
+        private final long offset;
+        private final long line;
+        private final long inserted;
+        private final long updated;
+        private final long duplicates;
+        private final long failed;
+
+        private Checkpoint(long size, long modified, long offset, long line,
+                           long inserted, long updated, long duplicates, long failed) {
+            this.size = size;
+            this.modified = modified;
+            this.offset = offset;
+            this.line = line;
+            this.inserted = inserted;
+            this.updated = updated;
+            this.duplicates = duplicates;
+            this.failed = failed;
+        }
+
+        private String format() {
+            return size + "|" + modified + "|" + offset + "|" + line + "|"
+                    + inserted + "|" + updated + "|" + duplicates + "|" + failed;
+        }
+
+        private static Checkpoint parse(String value) {
+            if (value == null) return null;
+            String[] parts = value.split("\\|");
+            if (parts.length != 8) return null;
+            try {
+                long[] v = new long[parts.length];
+                for (int i = 0; i < parts.length; i++) v[i] = Long.parseLong(parts[i]);
+                return new Checkpoint(v[0], v[1], v[2], v[3], v[4], v[5], v[6], v[7]);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Headless entry point: {@code ProductImporter <file> [--merge] [--batch N]}.
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("Usage: ProductImporter <file.csv|file.tsv> [--merge] [--batch N]");
+            System.exit(2);
+        }
+
+        ProductImporter importer = new ProductImporter(Paths.get(args[0]));
+        for (int i = 1; i < args.length; i++) {
+            if ("--merge".equals(args[i])) {
+                importer.setMergeQuantities(true);
+            } else if ("--batch".equals(args[i]) && i + 1 < args.length) {
+                importer.setBatchSize(Integer.parseInt(args[++i]));
+            }
+        }
+
+        long[] lastPrint = {0};
+        importer.setProgressListener(p -> {
+            long now = System.currentTimeMillis();
+            if (p.isFinished() || now - lastPrint[0] >= 1000) {
+                lastPrint[0] = now;
+                System.out.println(p);
+            }
+        });
+        try {
+            Progress result = importer.run();
+            if (result.getResumedAtLine() > 0) {
+                System.out.println("Resumed at line " + result.getResumedAtLine() + ".");
+            }
+            if (result.getErrorFile() != null) {
+                System.out.println("Rejected rows written to " + result.getErrorFile());
+            }
+        } catch (IOException | SQLException e) {
+            System.err.println("Import stopped: " + e.getMessage());
+            System.err.println("Run the same command again to resume.");
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.pharmacy.model;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+public class Bill {
+    public enum Kind {
+        SALE,
+        RETURN,
+        VOID
+    }
+
+    private int id;
+    private Kind kind = Kind.SALE;
+    private int originalBillId;
+    private LocalDateTime createdAt;
+    private LocalDate saleDate;
+    private double totalAmount;
+    private int totalQuantity;
+    private int lineCount;
+    private List<Sale> lines = new ArrayList<>();
+
+    public Bill() {
+    }
+
+    // Getters and Setters
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public void setKind(Kind kind) {
+        this.kind = kind;
+    }
+
+    /**
+     * @return for a return or void, the bill it reverses; otherwise 0
+     */
+    public int getOriginalBillId() {
+        return originalBillId;
+    }
+
+    public void setOriginalBillId(int originalBillId) {
+        this.originalBillId = originalBillId;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDate getSaleDate() {
+        return saleDate;
+    }
+
+    public void setSaleDate(LocalDate saleDate) {
+        this.saleDate = saleDate;
+    }
+
+    public double getTotalAmount() {
+        return totalAmount;
+    }
+
+    public void setTotalAmount(double totalAmount) {
+        this.totalAmount = totalAmount;
+    }
+
+    public int getTotalQuantity() {
+        return totalQuantity;
+    }
+
+    public void setTotalQuantity(int totalQuantity) {
+        this.totalQuantity = totalQuantity;
+    }
+
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    public void setLineCount(int lineCount) {
+        this.lineCount = lineCount;
+    }
+
+    /**
+     * Sale lines of the bill; empty when only the header was loaded.
+     */
+    public List<Sale> getLines() {
+        return lines;
+    }
+
+    public void setLines(List<Sale> lines) {
+        this.lines = lines;
+    }
+}
@@ -34,6 +34,20 @@ public class Product {
         this.mfgDate = purchaseDate;
     }
 
+    public Product(Product other) {
+        this.serial = other.serial;
+        this.name = other.name;
+        this.salt = other.salt;
+        this.company = other.company;
+        this.distributor = other.distributor;
+        this.batch = other.batch;
+        this.purchaseDate = other.purchaseDate;
+        this.mfgDate = other.mfgDate;
+        this.expDate = other.expDate;
+        this.price = other.price;
+        this.quantity = other.quantity;
+    }
+
     // Getters and Setters
     public int getSerial() {
         return serial;
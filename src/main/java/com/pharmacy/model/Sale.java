@@ -4,6 +4,8 @@ import java.time.LocalDate;
 
 public class Sale {
     private int id;
+    private int billId;
+    private int originalSaleId;
     private LocalDate saleDate;
     private int productSerial;
     private String productName;
@@ -31,6 +33,28 @@ public class Sale {
         this.id = id;
     }
 
+    /**
+     * @return for a return/void line (negative quantity), the sale line it reverses; otherwise 0
+     */
+    public int getOriginalSaleId() {
+        return originalSaleId;
+    }
+
+    public void setOriginalSaleId(int originalSaleId) {
+        this.originalSaleId = originalSaleId;
+    }
+
+    /**
+     * @return the bill this line belongs to, or 0 for sales recorded without one
+     */
+    public int getBillId() {
+        return billId;
+    }
+
+    public void setBillId(int billId) {
+        this.billId = billId;
+    }
+
     public LocalDate getSaleDate() {
         return saleDate;
     }
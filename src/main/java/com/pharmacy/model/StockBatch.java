@@ -0,0 +1,83 @@
+package com.pharmacy.model;
+
+import java.time.LocalDate;
+
+public class StockBatch {
+    private int id;
+    private int productSerial;
+    private String batch;
+    private LocalDate purchaseDate;
+    private LocalDate mfgDate;
+    private LocalDate expDate;
+    private int quantity;
+
+    public StockBatch() {
+    }
+
+    public StockBatch(int productSerial, String batch, LocalDate purchaseDate,
+                      LocalDate mfgDate, LocalDate expDate, int quantity) {
+        this.productSerial = productSerial;
+        this.batch = batch;
+        this.purchaseDate = purchaseDate;
+        this.mfgDate = mfgDate;
+        this.expDate = expDate;
+        this.quantity = quantity;
+    }
+
+    // Getters and Setters
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public int getProductSerial() {
+        return productSerial;
+    }
+
+    public void setProductSerial(int productSerial) {
+        this.productSerial = productSerial;
+    }
+
+    public String getBatch() {
+        return batch;
+    }
+
+    public void setBatch(String batch) {
+        this.batch = batch;
+    }
+
+    public LocalDate getPurchaseDate() {
+        return purchaseDate;
+    }
+
+    public void setPurchaseDate(LocalDate purchaseDate) {
+        this.purchaseDate = purchaseDate;
+    }
+
+    public LocalDate getMfgDate() {
+        return mfgDate;
+    }
+
+    public void setMfgDate(LocalDate mfgDate) {
+        this.mfgDate = mfgDate;
+    }
+
+    public LocalDate getExpDate() {
+        return expDate;
+    }
+
+    public void setExpDate(LocalDate expDate) {
+        this.expDate = expDate;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+}